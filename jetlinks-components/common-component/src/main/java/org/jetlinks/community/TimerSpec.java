@@ -24,8 +24,8 @@ import org.springframework.util.Assert;
 import reactor.core.CoreSubscriber;
 import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
 import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
 
 import javax.annotation.Nonnull;
 import javax.validation.constraints.NotBlank;
@@ -36,6 +36,8 @@ import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalUnit;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -652,10 +654,21 @@ public class TimerSpec implements Serializable {
         return timeList;
     }
 
+    /**
+     * 创建定时器,所有定时器共享同一个{@link TimerWheel}进行调度.
+     *
+     * @return 定时器, 值为触发次数
+     */
     public Flux<Long> flux() {
-        return flux(Schedulers.parallel());
+        return new WheelTimerFlux(iterable(), TimerWheel.shared());
     }
 
+    /**
+     * 使用指定的调度器创建定时器,每个定时器单独进行调度.
+     *
+     * @param scheduler 调度器
+     * @return 定时器, 值为触发次数
+     */
     public Flux<Long> flux(Scheduler scheduler) {
         return new TimerFlux(nextDurationBuilder(), scheduler);
     }
@@ -834,6 +847,115 @@ public class TimerSpec implements Serializable {
 
     }
 
+    //每次预先计算的触发时间数量
+    static final int PRECOMPUTE_TIMES = Math.max(1, Integer.getInteger("jetlinks.timer.precompute-times", 16));
+
+    @AllArgsConstructor
+    static class WheelTimerFlux extends Flux<Long> {
+        final TimerIterable iterable;
+        final TimerWheel wheel;
+
+        @Override
+        public void subscribe(@Nonnull CoreSubscriber<? super Long> coreSubscriber) {
+            WheelTimerSubscriber subscriber = new WheelTimerSubscriber(
+                iterable.iterator(ZonedDateTime.now()), wheel, coreSubscriber);
+            coreSubscriber.onSubscribe(subscriber);
+        }
+    }
+
+    static class WheelTimerSubscriber extends TimerWheel.Task implements Subscription {
+        @SuppressWarnings("all")
+        static final AtomicLongFieldUpdater<WheelTimerSubscriber> REQUESTED =
+            AtomicLongFieldUpdater.newUpdater(WheelTimerSubscriber.class, "requested");
+
+        @SuppressWarnings("all")
+        static final AtomicIntegerFieldUpdater<WheelTimerSubscriber> STARTED =
+            AtomicIntegerFieldUpdater.newUpdater(WheelTimerSubscriber.class, "started");
+
+        final Iterator<ZonedDateTime> iterator;
+        final TimerWheel wheel;
+        final CoreSubscriber<? super Long> subscriber;
+        //预先计算的触发时间
+        final Deque<ZonedDateTime> times = new ArrayDeque<>(PRECOMPUTE_TIMES);
+        volatile long requested;
+        volatile int started;
+        long count;
+
+        WheelTimerSubscriber(Iterator<ZonedDateTime> iterator,
+                             TimerWheel wheel,
+                             CoreSubscriber<? super Long> subscriber) {
+            this.iterator = iterator;
+            this.wheel = wheel;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long l) {
+            if (Operators.validate(l)) {
+                Operators.addCap(REQUESTED, this, l);
+                if (STARTED.compareAndSet(this, 0, 1)) {
+                    scheduleNext();
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            wheel.cancel(this);
+        }
+
+        @Override
+        protected void run() {
+            //没有请求时丢弃本次触发
+            if (requested > 0) {
+                if (requested != Long.MAX_VALUE) {
+                    REQUESTED.decrementAndGet(this);
+                }
+                subscriber.onNext(count++);
+            }
+            scheduleNext();
+        }
+
+        void scheduleNext() {
+            if (isCancelled()) {
+                return;
+            }
+            ZonedDateTime next;
+            try {
+                next = nextTime(System.currentTimeMillis());
+            } catch (Throwable error) {
+                wheel.cancel(this);
+                subscriber.onError(error);
+                return;
+            }
+            if (next == null) {
+                wheel.cancel(this);
+                subscriber.onComplete();
+                return;
+            }
+            wheel.schedule(this, next.toInstant().toEpochMilli());
+        }
+
+        //获取下一次触发时间,跳过已经过去的时间
+        private ZonedDateTime nextTime(long now) {
+            for (; ; ) {
+                ZonedDateTime time = times.poll();
+                if (time == null) {
+                    for (int i = 0; i < PRECOMPUTE_TIMES && iterator.hasNext(); i++) {
+                        times.add(iterator.next());
+                    }
+                    if (times.isEmpty()) {
+                        return null;
+                    }
+                    continue;
+                }
+                if (time.toInstant().toEpochMilli() >= now) {
+                    return time;
+                }
+            }
+        }
+    }
+
     public enum Trigger {
         //按周
         week,
@@ -0,0 +1,421 @@
+package org.jetlinks.community;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.utils.TimeUtils;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 分层时间轮,用于统一调度{@link TimerSpec}等定时任务.
+ * <p>
+ * 所有任务注册到同一个时间轮中,由一个线程按固定间隔(tick)推进,同一个tick中到期的任务会合并后批量提交到{@link Schedulers#parallel()}中执行.
+ * <p>
+ * 第一层有{@link #WHEEL_SIZE}个槽,每个槽对应一个tick;更高层每层{@link #LEVEL_SIZE}个槽,到期时间较远的任务放在高层,
+ * 随着时间推进逐层下降到第一层.注册和取消任务的复杂度均为O(1),空闲时只有tick线程定时唤醒.
+ * <p>
+ * 由于按tick推进,任务的实际执行时间可能比预期最多晚一个tick,可通过<code>jetlinks.timer.wheel.tick</code>设置tick间隔.
+ * 可通过JMX(org.jetlinks:type=TimerWheel)查看已注册的任务数量以及调度延迟.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+public final class TimerWheel {
+
+    //tick间隔
+    static final long DEFAULT_TICK = Math.max(1, TimeUtils
+        .parse(System.getProperty("jetlinks.timer.wheel.tick", "50ms"))
+        .toMillis());
+
+    //同一个tick中到期的任务,每批提交到调度器中执行的数量
+    static final int DEFAULT_BATCH_SIZE = Math.max(1, Integer.getInteger("jetlinks.timer.wheel.batch-size", 256));
+
+    //第一层槽数量
+    static final int WHEEL_BITS = 9, WHEEL_SIZE = 1 << WHEEL_BITS, WHEEL_MASK = WHEEL_SIZE - 1;
+
+    //高层每层槽数量
+    static final int LEVEL_BITS = 6, LEVEL_SIZE = 1 << LEVEL_BITS, LEVEL_MASK = LEVEL_SIZE - 1;
+
+    //高层数量
+    static final int LEVELS = 3;
+
+    //时间轮能容纳的最大tick数,超过的任务放到溢出队列中,在最高层转完一圈时重新分配
+    static final long MAX_TICKS = 1L << (WHEEL_BITS + LEVEL_BITS * LEVELS);
+
+    private final String name;
+
+    private final long tick;
+
+    private final int batchSize;
+
+    private final Scheduler scheduler;
+
+    private final long startTime;
+
+    //注册和取消的任务,由tick线程处理
+    private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+
+    private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+
+    private final Bucket[][] levels = new Bucket[LEVELS][LEVEL_SIZE];
+
+    private final Bucket overflow = new Bucket();
+
+    private final Thread thread;
+
+    //已处理的tick
+    private long current;
+
+    //以下为监控指标,只由tick线程修改
+    private volatile long scheduled;
+
+    private volatile long fired;
+
+    private volatile long tickLag;
+
+    private volatile long lastLag;
+
+    private final AtomicLong maxLag = new AtomicLong();
+
+    TimerWheel(String name, long tick, int batchSize, Scheduler scheduler) {
+        this.name = name;
+        this.tick = tick;
+        this.batchSize = batchSize;
+        this.scheduler = scheduler;
+        this.startTime = System.currentTimeMillis();
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new Bucket();
+        }
+        for (Bucket[] level : levels) {
+            for (int i = 0; i < LEVEL_SIZE; i++) {
+                level[i] = new Bucket();
+            }
+        }
+        this.thread = new Thread(this::run, "jetlinks-timer-wheel-" + name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+        registerMbean();
+    }
+
+    /**
+     * @return 全局共享的时间轮
+     */
+    public static TimerWheel shared() {
+        return Holder.SHARED;
+    }
+
+    /**
+     * 注册任务,如果任务已经注册则重新设置到期时间.
+     *
+     * @param task     任务
+     * @param deadline 到期时间戳(毫秒)
+     */
+    public void schedule(Task task, long deadline) {
+        task.deadline = deadline;
+        pending.add(task);
+    }
+
+    /**
+     * 取消任务,取消后任务不会再执行.
+     *
+     * @param task 任务
+     */
+    public void cancel(Task task) {
+        task.cancelled = true;
+        pending.add(task);
+    }
+
+    private void run() {
+        for (; ; ) {
+            try {
+                long target = (System.currentTimeMillis() - startTime) / tick;
+                tickLag = Math.max(0, target - current - 1) * tick;
+                while (current < target) {
+                    advance();
+                }
+                processPending();
+
+                long sleep = startTime + (current + 1) * tick - System.currentTimeMillis();
+                //系统时间被回调时,仍然按tick间隔处理新注册的任务
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Math.min(Math.max(sleep, 0), tick)));
+            } catch (Throwable error) {
+                log.warn("timer wheel [{}] error", name, error);
+            }
+        }
+    }
+
+    private void processPending() {
+        Task task;
+        while ((task = pending.poll()) != null) {
+            if (task.bucket != null) {
+                task.bucket.remove(task);
+                scheduled--;
+            }
+            if (task.cancelled) {
+                continue;
+            }
+            //向上取整,保证不会提前执行.已经到期的任务在下一个tick执行
+            long deadlineTick = (task.deadline - startTime + tick - 1) / tick;
+            task.deadlineTick = Math.max(deadlineTick, current + 1);
+            place(task);
+            scheduled++;
+        }
+    }
+
+    private void advance() {
+        long now = ++current;
+        int idx = (int) (now & WHEEL_MASK);
+        if (idx == 0) {
+            cascade(0, now);
+        }
+        expire(wheel[idx], now);
+    }
+
+    private void cascade(int level, long now) {
+        int idx = (int) ((now >> (WHEEL_BITS + LEVEL_BITS * level)) & LEVEL_MASK);
+        Task task = levels[level][idx].clear();
+        while (task != null) {
+            Task next = task.next;
+            task.next = null;
+            place(task);
+            task = next;
+        }
+        if (idx == 0) {
+            if (level + 1 < LEVELS) {
+                cascade(level + 1, now);
+            } else {
+                task = overflow.clear();
+                while (task != null) {
+                    Task next = task.next;
+                    task.next = null;
+                    place(task);
+                    task = next;
+                }
+            }
+        }
+    }
+
+    private void place(Task task) {
+        long deadlineTick = task.deadlineTick;
+        long delta = deadlineTick - current;
+        Bucket bucket;
+        if (delta < WHEEL_SIZE) {
+            bucket = wheel[(int) (deadlineTick & WHEEL_MASK)];
+        } else if (delta >= MAX_TICKS) {
+            bucket = overflow;
+        } else {
+            int level = 0;
+            int shift = WHEEL_BITS;
+            long span = (long) WHEEL_SIZE << LEVEL_BITS;
+            while (delta >= span) {
+                level++;
+                shift += LEVEL_BITS;
+                span <<= LEVEL_BITS;
+            }
+            bucket = levels[level][(int) ((deadlineTick >> shift) & LEVEL_MASK)];
+        }
+        bucket.add(task);
+    }
+
+    private void expire(Bucket bucket, long now) {
+        Task task = bucket.clear();
+        if (task == null) {
+            return;
+        }
+        List<Task> batch = new ArrayList<>(Math.min(batchSize, 64));
+        while (task != null) {
+            Task next = task.next;
+            task.next = null;
+            if (task.deadlineTick > now) {
+                place(task);
+            } else {
+                scheduled--;
+                fired++;
+                if (!task.cancelled) {
+                    batch.add(task);
+                    if (batch.size() >= batchSize) {
+                        dispatch(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+            task = next;
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    private void dispatch(List<Task> batch) {
+        scheduler.schedule(() -> {
+            long now = System.currentTimeMillis();
+            for (Task task : batch) {
+                long lag = now - task.deadline;
+                lastLag = lag;
+                if (lag > maxLag.get()) {
+                    maxLag.accumulateAndGet(lag, Math::max);
+                }
+                if (task.cancelled) {
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (Throwable error) {
+                    log.warn("execute timer task error", error);
+                }
+            }
+        });
+    }
+
+    /**
+     * 时间轮中的任务,同一个任务同时只会在时间轮中注册一次,执行完成后可以再次注册.
+     */
+    public abstract static class Task {
+        private volatile boolean cancelled;
+
+        //以下字段只由tick线程修改
+        private long deadline;
+        private long deadlineTick;
+        private Bucket bucket;
+        private Task prev, next;
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * 执行任务
+         */
+        protected abstract void run();
+    }
+
+    //槽,双向链表
+    private static class Bucket {
+        private Task head, tail;
+
+        void add(Task task) {
+            task.bucket = this;
+            task.prev = tail;
+            task.next = null;
+            if (tail == null) {
+                head = task;
+            } else {
+                tail.next = task;
+            }
+            tail = task;
+        }
+
+        void remove(Task task) {
+            if (task.prev == null) {
+                head = task.next;
+            } else {
+                task.prev.next = task.next;
+            }
+            if (task.next == null) {
+                tail = task.prev;
+            } else {
+                task.next.prev = task.prev;
+            }
+            task.prev = task.next = null;
+            task.bucket = null;
+        }
+
+        //清空并返回链表头,返回的任务通过next遍历
+        Task clear() {
+            Task task = head;
+            head = tail = null;
+            for (Task t = task; t != null; t = t.next) {
+                t.bucket = null;
+                t.prev = null;
+            }
+            return task;
+        }
+    }
+
+    void registerMbean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("org.jetlinks:type=TimerWheel,name=" + name);
+            mBeanServer.registerMBean(new StandardMBean(new TimerWheelMBeanImpl(), TimerWheelMBean.class), objectName);
+        } catch (Throwable error) {
+            log.warn("registerMBean {} error ", name, error);
+        }
+    }
+
+    private class TimerWheelMBeanImpl implements TimerWheelMBean {
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+
+        @Override
+        public long getScheduled() {
+            return scheduled;
+        }
+
+        @Override
+        public long getFired() {
+            return fired;
+        }
+
+        @Override
+        public long getTickLag() {
+            return tickLag;
+        }
+
+        @Override
+        public long getLastLag() {
+            return lastLag;
+        }
+
+        @Override
+        public long getMaxLag() {
+            return maxLag.get();
+        }
+
+        @Override
+        public void resetMaxLag() {
+            maxLag.set(0);
+        }
+    }
+
+    public interface TimerWheelMBean {
+
+        //tick间隔(毫秒)
+        long getTick();
+
+        //已注册的任务数量
+        long getScheduled();
+
+        //已到期的任务数量
+        long getFired();
+
+        //tick线程落后的时间(毫秒)
+        long getTickLag();
+
+        //最近一次任务实际执行时间与到期时间的差值(毫秒)
+        long getLastLag();
+
+        //任务实际执行时间与到期时间的最大差值(毫秒)
+        long getMaxLag();
+
+        void resetMaxLag();
+    }
+
+    private static class Holder {
+        static final TimerWheel SHARED = new TimerWheel("default", DEFAULT_TICK, DEFAULT_BATCH_SIZE, Schedulers.parallel());
+    }
+}
@@ -16,6 +16,7 @@ import org.hswebframework.web.bean.FastBeanCopier;
 import org.jetlinks.core.metadata.Jsonable;
 import org.jetlinks.core.utils.RecyclerUtils;
 import org.jetlinks.core.utils.SerializeUtils;
+import org.jetlinks.community.codec.BinarySerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +36,7 @@ public class FastSerializableAuthentication extends SimpleAuthentication
             0x90,
             FastSerializableAuthentication.class,
             (ignore) -> new FastSerializableAuthentication());
+        BinarySerializer.register(1, FastSerializableAuthentication.class, FastSerializableAuthentication::new);
     }
 
     public static void load() {
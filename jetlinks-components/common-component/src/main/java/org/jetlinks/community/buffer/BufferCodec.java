@@ -0,0 +1,60 @@
+package org.jetlinks.community.buffer;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * 缓冲区数据编解码器,用于将数据写入到持久化队列中.
+ *
+ * @param <E> 数据类型
+ * @author zhouhao
+ * @since 2.3
+ * @see BufferQueueFactory
+ */
+public interface BufferCodec<E> {
+
+    /**
+     * 创建输出流,写入的数据将写出到指定的缓冲区中
+     *
+     * @param buffer 缓冲区
+     * @return 输出流
+     */
+    ObjectOutput createOutput(ByteBuf buffer) throws IOException;
+
+    /**
+     * 创建输入流,从指定的缓冲区中读取数据
+     *
+     * @param buffer 缓冲区
+     * @return 输入流
+     */
+    ObjectInput createInput(ByteBuf buffer) throws IOException;
+
+    /**
+     * 写出数据
+     *
+     * @param element 数据
+     * @param output  输出流
+     */
+    void write(E element, ObjectOutput output) throws IOException;
+
+    /**
+     * 读取数据
+     *
+     * @param input 输入流
+     * @return 数据
+     */
+    E read(ObjectInput input) throws IOException, ClassNotFoundException;
+
+    /**
+     * 估算数据占用的内存大小
+     *
+     * @param element 数据
+     * @return 内存大小
+     */
+    default int getMemory(E element) {
+        return 4096;
+    }
+}
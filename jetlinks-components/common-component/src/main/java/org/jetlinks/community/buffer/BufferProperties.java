@@ -29,6 +29,12 @@ public class BufferProperties {
     //消费策略 默认先进先出
     private ConsumeStrategy strategy = ConsumeStrategy.FIFO;
 
+    //存储方式,默认为MVStore文件队列.写入量较大时建议使用segment
+    private BufferStorage storage = BufferStorage.mvstore;
+
+    //写入分片数量,大于0时多线程写入将分散到不同的分片中,适用于写入线程较多的场景.
+    private int stripes = 0;
+
     //淘汰策略
     private BufferEvictionSpec eviction = new BufferEvictionSpec();
 
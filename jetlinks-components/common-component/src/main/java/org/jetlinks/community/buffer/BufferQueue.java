@@ -0,0 +1,80 @@
+package org.jetlinks.community.buffer;
+
+import java.util.Collection;
+
+/**
+ * 缓冲区持久化队列,{@link PersistenceBuffer}通过此接口存取溢出到磁盘的数据.
+ * <p>
+ * 具体的存储实现由{@link BufferQueueFactory}创建,见{@link BufferStorage}.
+ *
+ * @param <E> 数据类型
+ * @author zhouhao
+ * @since 2.3
+ */
+public interface BufferQueue<E> extends Iterable<E> {
+
+    /**
+     * 写入数据到队列尾部
+     *
+     * @param element 数据
+     * @return 是否写入成功
+     */
+    boolean offer(E element);
+
+    /**
+     * 批量写入数据到队列尾部
+     *
+     * @param elements 数据
+     * @return 是否写入成功
+     */
+    default boolean addAll(Collection<? extends E> elements) {
+        boolean changed = false;
+        for (E element : elements) {
+            changed |= offer(element);
+        }
+        return changed;
+    }
+
+    /**
+     * 获取并删除队列头部的数据
+     *
+     * @return 数据, 队列为空时返回<code>null</code>
+     */
+    E poll();
+
+    /**
+     * 获取并删除队列头部(最旧)的数据
+     *
+     * @return 数据, 队列为空时返回<code>null</code>
+     */
+    default E removeFirst() {
+        return poll();
+    }
+
+    /**
+     * 获取并删除队列尾部(最新)的数据
+     *
+     * @return 数据, 队列为空时返回<code>null</code>
+     */
+    E removeLast();
+
+    /**
+     * @return 队列中的数据量
+     */
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 将数据刷新到磁盘
+     */
+    void flush();
+
+    /**
+     * 关闭队列,关闭后不能再进行读写操作
+     */
+    void close();
+
+}
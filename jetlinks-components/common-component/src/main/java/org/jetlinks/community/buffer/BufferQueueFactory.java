@@ -0,0 +1,38 @@
+package org.jetlinks.community.buffer;
+
+import java.nio.file.Path;
+
+/**
+ * 缓冲区持久化队列工厂,用于扩展{@link PersistenceBuffer}的存储方式.
+ *
+ * @author zhouhao
+ * @since 2.3
+ * @see BufferStorage
+ */
+public interface BufferQueueFactory {
+
+    /**
+     * 创建持久化队列
+     *
+     * @param directory   存储目录
+     * @param name        队列名称
+     * @param concurrency 文件操作并行度
+     * @param codec       数据编解码器
+     * @param <E>         数据类型
+     * @return 持久化队列
+     */
+    <E> BufferQueue<E> create(Path directory,
+                              String name,
+                              int concurrency,
+                              BufferCodec<E> codec);
+
+    /**
+     * 判断指定的目录中是否已经存在此队列的数据
+     *
+     * @param directory 存储目录
+     * @param name      队列名称
+     * @return 是否存在
+     */
+    boolean exists(Path directory, String name);
+
+}
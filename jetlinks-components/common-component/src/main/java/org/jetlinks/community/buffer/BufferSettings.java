@@ -60,6 +60,12 @@ public class BufferSettings {
 
     private final ConsumeStrategy strategy;
 
+    //文件队列存储方式
+    private final BufferQueueFactory storage;
+
+    //写入分片数量,大于0时写入的数据将先暂存到分片中,避免多线程写入时竞争同一个锁.
+    private final int stripes;
+
     public static BufferSettings create(String filePath, String fileName) {
         return new BufferSettings(
             filePath,
@@ -72,7 +78,9 @@ public class BufferSettings {
             Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
             5,
             1,
-            ConsumeStrategy.FIFO);
+            ConsumeStrategy.FIFO,
+            BufferStorage.mvstore,
+            0);
     }
 
     public static BufferSettings create(BufferProperties properties) {
@@ -93,7 +101,9 @@ public class BufferSettings {
                                   parallelism,
                                   maxRetryTimes,
                                   fileConcurrency,
-                                  strategy);
+                                  strategy,
+                                  storage,
+                                  stripes);
     }
 
     public BufferSettings bufferSize(int bufferSize) {
@@ -106,7 +116,9 @@ public class BufferSettings {
                                   parallelism,
                                   maxRetryTimes,
                                   fileConcurrency,
-                                  strategy);
+                                  strategy,
+                                  storage,
+                                  stripes);
     }
 
     public BufferSettings bufferTimeout(Duration bufferTimeout) {
@@ -119,7 +131,9 @@ public class BufferSettings {
                                   parallelism,
                                   maxRetryTimes,
                                   fileConcurrency,
-                                  strategy);
+                                  strategy,
+                                  storage,
+                                  stripes);
     }
 
     public BufferSettings parallelism(int parallelism) {
@@ -132,7 +146,9 @@ public class BufferSettings {
                                   parallelism,
                                   maxRetryTimes,
                                   fileConcurrency,
-                                  strategy);
+                                  strategy,
+                                  storage,
+                                  stripes);
     }
 
     public BufferSettings maxRetry(int maxRetryTimes) {
@@ -145,7 +161,9 @@ public class BufferSettings {
                                   parallelism,
                                   maxRetryTimes,
                                   fileConcurrency,
-                                  strategy);
+                                  strategy,
+                                  storage,
+                                  stripes);
     }
 
     public BufferSettings retryWhenError(Predicate<Throwable> retryWhenError) {
@@ -158,7 +176,9 @@ public class BufferSettings {
                                   parallelism,
                                   maxRetryTimes,
                                   fileConcurrency,
-                                  strategy);
+                                  strategy,
+                                  storage,
+                                  stripes);
     }
 
     public BufferSettings fileConcurrency(int fileConcurrency) {
@@ -171,7 +191,9 @@ public class BufferSettings {
                                   parallelism,
                                   maxRetryTimes,
                                   fileConcurrency,
-                                  strategy);
+                                  strategy,
+                                  storage,
+                                  stripes);
     }
 
     public BufferSettings strategy(ConsumeStrategy strategy) {
@@ -184,7 +206,39 @@ public class BufferSettings {
                                   parallelism,
                                   maxRetryTimes,
                                   fileConcurrency,
-                                  strategy);
+                                  strategy,
+                                  storage,
+                                  stripes);
+    }
+
+    public BufferSettings storage(BufferQueueFactory storage) {
+        return new BufferSettings(filePath,
+                                  fileName,
+                                  eviction,
+                                  retryWhenError,
+                                  bufferSize,
+                                  bufferTimeout,
+                                  parallelism,
+                                  maxRetryTimes,
+                                  fileConcurrency,
+                                  strategy,
+                                  Objects.requireNonNull(storage),
+                                  stripes);
+    }
+
+    public BufferSettings stripes(int stripes) {
+        return new BufferSettings(filePath,
+                                  fileName,
+                                  eviction,
+                                  retryWhenError,
+                                  bufferSize,
+                                  bufferTimeout,
+                                  parallelism,
+                                  maxRetryTimes,
+                                  fileConcurrency,
+                                  strategy,
+                                  storage,
+                                  stripes);
     }
 
     public BufferSettings properties(BufferProperties properties) {
@@ -197,7 +251,9 @@ public class BufferSettings {
                                   properties.getParallelism(),
                                   properties.getMaxRetryTimes(),
                                   properties.getFileConcurrency(),
-                                  properties.getStrategy()
+                                  properties.getStrategy(),
+                                  properties.getStorage(),
+                                  properties.getStripes()
                                   );
     }
 
@@ -0,0 +1,67 @@
+package org.jetlinks.community.buffer;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 内置的缓冲区存储方式
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+public enum BufferStorage implements BufferQueueFactory {
+
+    //基于MVStore的文件队列
+    mvstore {
+        @Override
+        public <E> BufferQueue<E> create(Path directory, String name, int concurrency, BufferCodec<E> codec) {
+            return MVStoreBufferQueue.create(directory, name, concurrency, codec);
+        }
+
+        @Override
+        public boolean exists(Path directory, String name) {
+            return Files.isRegularFile(directory.resolve(name));
+        }
+    },
+    //基于内存映射文件的分段追加日志,适用于写入量较大的场景
+    segment {
+        @Override
+        public <E> BufferQueue<E> create(Path directory, String name, int concurrency, BufferCodec<E> codec) {
+            return new SegmentedLogQueue<>(directory.resolve(name + SegmentedLogQueue.DIRECTORY_SUFFIX),
+                                           SegmentedLogQueue.DEFAULT_SEGMENT_SIZE,
+                                           codec);
+        }
+
+        @Override
+        public boolean exists(Path directory, String name) {
+            return Files.isDirectory(directory.resolve(name + SegmentedLogQueue.DIRECTORY_SUFFIX));
+        }
+    };
+
+    /**
+     * 根据文件识别存储方式,用于恢复历史数据.
+     *
+     * @param file 文件或者目录
+     * @return 存储方式
+     */
+    public static BufferStorage of(File file) {
+        return file.isDirectory() && file.getName().endsWith(SegmentedLogQueue.DIRECTORY_SUFFIX)
+            ? segment
+            : mvstore;
+    }
+
+    /**
+     * 根据文件获取队列名称,用于恢复历史数据.
+     *
+     * @param file 文件或者目录
+     * @return 队列名称
+     */
+    public static String queueName(File file) {
+        String name = file.getName();
+        if (of(file) == segment) {
+            return name.substring(0, name.length() - SegmentedLogQueue.DIRECTORY_SUFFIX.length());
+        }
+        return name;
+    }
+}
@@ -0,0 +1,180 @@
+package org.jetlinks.community.buffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import lombok.AllArgsConstructor;
+import lombok.SneakyThrows;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.BasicDataType;
+import org.jetlinks.core.cache.FileQueue;
+import org.jetlinks.core.cache.FileQueueProxy;
+
+import javax.annotation.Nonnull;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * 基于{@link FileQueue}(MVStore)的持久化队列
+ *
+ * @param <E> 数据类型
+ * @author zhouhao
+ * @since 2.3
+ */
+@AllArgsConstructor
+class MVStoreBufferQueue<E> implements BufferQueue<E> {
+
+    private final FileQueue<E> queue;
+
+    static <E> MVStoreBufferQueue<E> create(Path directory, String name, int concurrency, BufferCodec<E> codec) {
+        CodecDataType<E> dataType = new CodecDataType<>(codec);
+        FileQueue<E> queue;
+        if (concurrency > 1) {
+            queue = FileQueue
+                .<E>builder()
+                .name(name)
+                .path(directory)
+                .option("valueType", dataType)
+                .option("concurrency", concurrency)
+                .build();
+        } else {
+            queue = FileQueue
+                .<E>builder()
+                .name(name)
+                .path(directory)
+                .option("valueType", dataType)
+                .build();
+        }
+        return new MVStoreBufferQueue<>(wrap(queue));
+    }
+
+    static <E> FileQueue<E> wrap(FileQueue<E> queue) {
+        return new FileQueueProxy<E>(queue) {
+            @Override
+            public void clear() {
+                super.flush();
+            }
+        };
+    }
+
+    @Override
+    public boolean offer(E element) {
+        return queue.offer(element);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> elements) {
+        return queue.addAll(elements);
+    }
+
+    @Override
+    public E poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public E removeFirst() {
+        return queue.removeFirst();
+    }
+
+    @Override
+    public E removeLast() {
+        return queue.removeLast();
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public void flush() {
+        queue.flush();
+    }
+
+    @Override
+    public void close() {
+        queue.close();
+    }
+
+    @Override
+    @Nonnull
+    public Iterator<E> iterator() {
+        return queue.iterator();
+    }
+
+    @AllArgsConstructor
+    static class CodecDataType<E> extends BasicDataType<E> {
+        private final BufferCodec<E> codec;
+
+        @Override
+        public int compare(E a, E b) {
+            return 0;
+        }
+
+        @Override
+        public int getMemory(E obj) {
+            return codec.getMemory(obj);
+        }
+
+        @Override
+        @SneakyThrows
+        public void write(WriteBuffer buff, E data) {
+            ByteBuf buffer = ByteBufAllocator.DEFAULT.buffer();
+            try (ObjectOutput output = codec.createOutput(buffer)) {
+                codec.write(data, output);
+                output.flush();
+                buff.put(buffer.nioBuffer());
+            } finally {
+                ReferenceCountUtil.safeRelease(buffer);
+            }
+        }
+
+        @Override
+        @SneakyThrows
+        public void write(WriteBuffer buff, Object obj, int len) {
+            ByteBuf buffer = ByteBufAllocator.DEFAULT.buffer();
+            try (ObjectOutput output = codec.createOutput(buffer)) {
+                for (int i = 0; i < len; i++) {
+                    @SuppressWarnings("all")
+                    E data = ((E) Array.get(obj, i));
+                    codec.write(data, output);
+                }
+                output.flush();
+                buff.put(buffer.nioBuffer());
+            } finally {
+                ReferenceCountUtil.safeRelease(buffer);
+            }
+        }
+
+        @Override
+        @SneakyThrows
+        public void read(ByteBuffer buff, Object obj, int len) {
+            try (ObjectInput input = codec.createInput(Unpooled.wrappedBuffer(buff))) {
+                for (int i = 0; i < len; i++) {
+                    Array.set(obj, i, codec.read(input));
+                }
+            }
+        }
+
+        @Override
+        @SneakyThrows
+        public E read(ByteBuffer buff) {
+            try (ObjectInput input = codec.createInput(Unpooled.wrappedBuffer(buff))) {
+                return codec.read(input);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E[] createStorage(int size) {
+            return (E[]) new Object[size];
+        }
+    }
+}
@@ -2,16 +2,11 @@ package org.jetlinks.community.buffer;
 
 import com.google.common.collect.Collections2;
 import io.netty.buffer.*;
-import io.netty.util.ReferenceCountUtil;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import org.apache.commons.lang3.exception.ExceptionUtils;
-import org.h2.mvstore.WriteBuffer;
-import org.h2.mvstore.type.BasicDataType;
-import org.jetlinks.core.cache.FileQueue;
-import org.jetlinks.core.cache.FileQueueProxy;
 import org.jetlinks.core.utils.SerializeUtils;
 import org.jetlinks.community.codec.Serializers;
 import org.jetlinks.community.utils.FormatUtils;
@@ -33,12 +28,13 @@ import javax.management.StandardMBean;
 import java.io.*;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Array;
-import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
@@ -52,6 +48,7 @@ import java.util.stream.Collectors;
  * 支持持久化的缓存批量操作工具,用于支持数据的批量操作,如批量写入数据到数据库等.
  * <p>
  * 数据将保存在一个文件队列里,如果写入速度跟不上,数据将会尝试写入到本地文件中.
+ * 文件队列的存储方式可通过{@link BufferSettings#storage(BufferQueueFactory)}指定,见{@link BufferStorage}.
  *
  * <pre>{@code
  *
@@ -104,20 +101,23 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
     @Getter
     private String name = "unknown";
 
-    //死队列,存储无法完成操作的数据
-    private FileQueue<Buf<T>> queue;
+    //数据队列,存储等待处理的数据
+    private BufferQueue<Buf<T>> queue;
 
     //死队列,存储无法完成操作的数据
-    private FileQueue<Buf<T>> deadQueue;
+    private BufferQueue<Buf<T>> deadQueue;
 
     //缓冲数据处理器,实际处理缓冲数据的逻辑,比如写入数据库.
     private final BiFunction<Collection<Buffered<T>>, FlushContext<T>, Mono<Boolean>> handler;
 
     //缓冲区大小,超过此大小将执行 handler 处理逻辑
-    private BufferSettings settings;
+    private volatile BufferSettings settings;
     //缓冲区
     private volatile Collection<Buf<T>> buffer;
 
+    //写入分片,开启后写入的数据先暂存到分片中,达到缓冲区大小后直接执行写出
+    private Stripe[] stripes;
+
     //反序列化时指定快速实例化
     private final Supplier<Externalizable> instanceBuilder;
 
@@ -218,15 +218,6 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
         return this;
     }
 
-    static <T> FileQueue<Buf<T>> wrap(FileQueue<Buf<T>> queue) {
-        return new FileQueueProxy<Buf<T>>(queue) {
-            @Override
-            public void clear() {
-                super.flush();
-            }
-        };
-    }
-
     private static String getSafeFileName(String fileName) {
         return fileName.replaceAll("[\\s\\\\/:*?\"<>|]", "_");
     }
@@ -236,30 +227,65 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
         String fileName = getSafeFileName(settings.getFileName());
         Path path = Paths.get(filePath);
 
-        BufDataType dataType = new BufDataType();
+        BufferQueueFactory storage = settings.getStorage();
+        BufCodec codec = newCodec();
 
         //数据队列
-        this.queue = wrap(FileQueue
-                              .<Buf<T>>builder()
-                              .name(fileName)
-                              .path(path)
-                              .option("valueType", dataType)
-                              .option("concurrency", settings.getFileConcurrency())
-                              .build());
-        this.remainder = queue.size();
+        this.queue = storage.create(path, fileName, settings.getFileConcurrency(), codec);
         //死队列,用于存放失败的数据
-        this.deadQueue = wrap(FileQueue
-                                  .<Buf<T>>builder()
-                                  .name(fileName + ".dead")
-                                  .path(path)
-                                  .option("valueType", dataType)
-                                  .build());
+        this.deadQueue = storage.create(path, fileName + ".dead", 1, codec);
+        //切换了存储方式,导入旧的MVStore文件队列中的数据
+        if (storage != BufferStorage.mvstore) {
+            migrate(path, fileName, queue);
+            migrate(path, fileName + ".dead", deadQueue);
+        }
+        this.remainder = queue.size();
         this.deadSize = this.deadQueue.size();
         this.buffer = newBuffer();
+        this.stripes = newStripes();
         initScheduler();
         registerMbean();
     }
 
+    @SuppressWarnings("unchecked")
+    private Stripe[] newStripes() {
+        int size = settings.getStripes();
+        if (size <= 0) {
+            return null;
+        }
+        Stripe[] stripes = (Stripe[]) Array.newInstance(Stripe.class, size);
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        return stripes;
+    }
+
+    @SneakyThrows
+    private void migrate(Path path, String fileName, BufferQueue<Buf<T>> target) {
+        if (!BufferStorage.mvstore.exists(path, fileName)) {
+            return;
+        }
+        BufferQueue<Buf<T>> old = BufferStorage.mvstore.create(path, fileName, 1, newCodec());
+        long size;
+        try {
+            size = transfer(old, target);
+        } finally {
+            old.close();
+        }
+        Files.deleteIfExists(path.resolve(fileName));
+        logger.info("migrate {} data from file queue {} to {}", size, fileName, settings.getStorage());
+    }
+
+    private static <T> long transfer(BufferQueue<T> source, BufferQueue<T> target) {
+        long size = 0;
+        for (T data : source) {
+            if (target.offer(data)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
     private void initScheduler() {
         shutdownScheduler();
         this.writer = settings.getFileConcurrency() > 1
@@ -306,7 +332,7 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
     }
 
     private void dead(Buf<T> buf) {
-        if (deadQueue.add(buf)) {
+        if (deadQueue.offer(buf)) {
             // DEAD_SZIE.incrementAndGet(this);
         }
     }
@@ -335,7 +361,7 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
     }
 
     private void write(Buf<T> data) {
-        FileQueue<Buf<T>> queue = this.queue;
+        BufferQueue<Buf<T>> queue = this.queue;
         if (isDisposed()) {
             boolean flushNow;
             try {
@@ -354,6 +380,13 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
         monitor.in();
         // REMAINDER.incrementAndGet(this);
 
+        Stripe[] stripes = this.stripes;
+        if (stripes != null) {
+            //按线程分片,同一个线程总是写入到同一个分片,避免竞争.
+            stripes[(int) (Thread.currentThread().getId() % stripes.length)].add(data);
+            return;
+        }
+
         queue.offer(data);
 
         drain();
@@ -364,7 +397,8 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
 
     //异步写入数据到buffer
     public Mono<Void> writeAsync(T data) {
-        if (isDisposed()) {
+        //分片写入不会阻塞,直接在当前线程写入
+        if (isDisposed() || stripes != null) {
             return Mono.fromRunnable(() -> write(data));
         }
         return Mono
@@ -375,7 +409,7 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
 
     //异步写入数据到buffer
     public Mono<Void> writeAsync(Collection<T> data) {
-        if (isDisposed()) {
+        if (isDisposed() || stripes != null) {
             return Mono.fromRunnable(() -> data.forEach(this::write));
         }
         return Mono
@@ -434,6 +468,11 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
             Collection<Buf<T>> remainders = BUFFER.getAndSet(this, newBuffer());
             //写出内存中的数据
             queue.addAll(remainders);
+            if (stripes != null) {
+                for (Stripe stripe : stripes) {
+                    queue.addAll(stripe.take());
+                }
+            }
             queue.close();
             deadQueue.close();
             queue = null;
@@ -449,7 +488,19 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
     }
 
     public long size() {
-        return queue == null || disposed ? 0 : queue.size() + buffer().size();
+        return queue == null || disposed ? 0 : queue.size() + buffer().size() + stripeSize();
+    }
+
+    private long stripeSize() {
+        Stripe[] stripes = this.stripes;
+        if (stripes == null) {
+            return 0;
+        }
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
     }
 
     public long size(BufferType type) {
@@ -488,11 +539,115 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
             && started) {
             flush();
         }
+        Stripe[] stripes = this.stripes;
+        if (stripes != null && started) {
+            for (Stripe stripe : stripes) {
+                if (stripe.isTimeout()) {
+                    flushStripe(stripe.take());
+                }
+            }
+        }
+    }
+
+    //写出分片中的数据,如果当前正在写出的任务超过了并行度,则写入到文件队列中等待处理.
+    //写出操作在reader线程中执行,避免在写入数据的线程中执行写出逻辑.
+    private void flushStripe(List<Buf<T>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        //先占用并行度,避免多个分片同时写出超过并行度
+        if (started && tryReserve()) {
+            try {
+                reader.schedule(() -> flush(batch, true));
+                return;
+            } catch (RejectedExecutionException e) {
+                WIP.decrementAndGet(this);
+            }
+        }
+        try {
+            writer.schedule(() -> {
+                queue.addAll(batch);
+                drain();
+                settings.getEviction().tryEviction(this);
+            });
+        } catch (RejectedExecutionException e) {
+            //已经停止,放回缓冲区中
+            buffer().addAll(batch);
+            if (isDisposed()) {
+                flush();
+            }
+        }
+    }
+
+    //占用一个并行度,成功后需要在写出完成后释放
+    private boolean tryReserve() {
+        for (; ; ) {
+            int wip = WIP.get(this);
+            if (wip >= settings.getParallelism()) {
+                return false;
+            }
+            if (WIP.compareAndSet(this, wip, wip + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 写入分片,每个分片独立加锁,多个线程写入时分散到不同的分片中.
+     */
+    class Stripe {
+        private List<Buf<T>> staging = new ArrayList<>(settings.getBufferSize());
+        private long firstWriteTime;
+
+        void add(Buf<T> data) {
+            List<Buf<T>> batch = null;
+            synchronized (this) {
+                if (staging.isEmpty()) {
+                    firstWriteTime = System.currentTimeMillis();
+                }
+                staging.add(data);
+                if (staging.size() >= settings.getBufferSize()) {
+                    batch = staging;
+                    staging = new ArrayList<>(settings.getBufferSize());
+                }
+            }
+            if (batch != null) {
+                flushStripe(batch);
+            }
+        }
+
+        synchronized List<Buf<T>> take() {
+            if (staging.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Buf<T>> batch = staging;
+            staging = new ArrayList<>(settings.getBufferSize());
+            return batch;
+        }
+
+        synchronized boolean isTimeout() {
+            return !staging.isEmpty()
+                && System.currentTimeMillis() - firstWriteTime >= settings.getBufferTimeout().toMillis();
+        }
+
+        synchronized int size() {
+            return staging.size();
+        }
     }
 
     private final Set<FlushSubscriber> flushing = ConcurrentHashMap.newKeySet();
 
     private void flush(Collection<Buf<T>> c) {
+        flush(c, false);
+    }
+
+    /**
+     * 写出数据
+     *
+     * @param c        数据
+     * @param reserved 是否已经占用了并行度
+     */
+    private void flush(Collection<Buf<T>> c, boolean reserved) {
         try {
             lastFlushTime = System.currentTimeMillis();
             if (c.isEmpty()) {
@@ -500,7 +655,7 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
                 return;
             }
             // wip++
-            FlushSubscriber subscriber = new FlushSubscriber(c);
+            FlushSubscriber subscriber = new FlushSubscriber(c, reserved);
             handler
                 .apply(Collections.unmodifiableCollection(c), subscriber)
                 .subscribe(subscriber);
@@ -514,14 +669,17 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
     class FlushSubscriber extends BaseSubscriber<Boolean> implements FlushContext<T> {
         final Collection<Buf<T>> buffer;
         final long startWith = System.currentTimeMillis();
+        //已经占用了并行度,订阅时不再增加wip
+        final boolean reserved;
 
         @Override
         public void error(Throwable e) {
             lastError = e;
         }
 
-        public FlushSubscriber(Collection<Buf<T>> buffer) {
+        public FlushSubscriber(Collection<Buf<T>> buffer, boolean reserved) {
             this.buffer = buffer;
+            this.reserved = reserved;
         }
 
         @Override
@@ -533,7 +691,9 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
         @Override
         protected void hookOnSubscribe(@Nonnull Subscription subscription) {
             flushing.add(this);
-            WIP.incrementAndGet(PersistenceBuffer.this);
+            if (!reserved) {
+                WIP.incrementAndGet(PersistenceBuffer.this);
+            }
             super.hookOnSubscribe(subscription);
         }
 
@@ -689,7 +849,7 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
 
         synchronized (this) {
             c = buffer();
-            if (c.size() == settings.getBufferSize() - 1) {
+            if (c.size() >= settings.getBufferSize() - 1) {
                 BUFFER.compareAndSet(this, c, newBuffer());
                 flush = true;
             }
@@ -796,30 +956,28 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
         if (fileName.startsWith("../")) {
             return 0;
         }
-        if (Objects.equals(fileName, settings.getFileName()) ||
-            Objects.equals(fileName, settings.getFileName() + ".dead")) {
+        File file = new File(settings.getFilePath(), fileName);
+        if (!file.exists()) {
             return 0;
         }
-        File file = new File(settings.getFilePath(), fileName);
-        if (!file.isFile() || !file.exists()) {
+        String queueName = BufferStorage.queueName(file);
+        if (Objects.equals(queueName, settings.getFileName()) ||
+            Objects.equals(queueName, settings.getFileName() + ".dead")) {
             return 0;
         }
-        BufDataType dataType = newType();
-        //数据队列
-        FileQueue<Buf<T>> _queue = wrap(
-            FileQueue
-                .<Buf<T>>builder()
-                .name(fileName)
-                .path(Paths.get(settings.getFilePath()))
-                .option("valueType", dataType)
-                .build());
+        //根据文件识别存储方式,支持从MVStore文件队列或者分段日志中恢复数据
+        BufferStorage storage = BufferStorage.of(file);
+        BufferQueue<Buf<T>> _queue = storage.create(Paths.get(settings.getFilePath()),
+                                                    queueName,
+                                                    1,
+                                                    newCodec());
         try {
-            long size = _queue.size();
+            long size;
             if (dead) {
-                queue.addAll(_queue);
+                size = transfer(_queue, queue);
                 PersistenceBuffer.REMAINDER.addAndGet(this, size);
             } else {
-                deadQueue.addAll(_queue);
+                size = transfer(_queue, deadQueue);
                 PersistenceBuffer.DEAD_SZIE.addAndGet(this, size);
             }
             return size;
@@ -828,85 +986,43 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
         }
     }
 
-    BufDataType newType() {
-        return new BufDataType();
+    BufCodec newCodec() {
+        return new BufCodec();
     }
 
-    class BufDataType extends BasicDataType<Buf<T>> {
+    class BufCodec implements BufferCodec<Buf<T>> {
 
         @Override
-        public int compare(Buf<T> a, Buf<T> b) {
-            return 0;
+        public ObjectOutput createOutput(ByteBuf buffer) {
+            return PersistenceBuffer.this.createOutput(buffer);
         }
 
         @Override
-        public int getMemory(Buf<T> obj) {
-            if (obj.data instanceof MemoryUsage) {
-                return ((MemoryUsage) obj.data).usage();
-            }
-            if (obj.data instanceof String) {
-                return ((String) obj.data).length() * 2;
-            }
-            return 4096;
+        public ObjectInput createInput(ByteBuf buffer) {
+            return PersistenceBuffer.this.createInput(buffer);
         }
 
         @Override
-        @SneakyThrows
-        public void write(WriteBuffer buff, Buf<T> data) {
-            ByteBuf buffer = ByteBufAllocator.DEFAULT.buffer();
-            try (ObjectOutput output = createOutput(buffer)) {
-                data.writeExternal(output);
-                output.flush();
-                buff.put(buffer.nioBuffer());
-            } finally {
-                ReferenceCountUtil.safeRelease(buffer);
-            }
-        }
-
-        @Override
-        @SneakyThrows
-        public void write(WriteBuffer buff, Object obj, int len) {
-            ByteBuf buffer = ByteBufAllocator.DEFAULT.buffer();
-            try (ObjectOutput output = createOutput(buffer)) {
-                for (int i = 0; i < len; i++) {
-                    @SuppressWarnings("all")
-                    Buf<T> buf = ((Buf<T>) Array.get(obj, i));
-                    buf.writeExternal(output);
-                }
-                output.flush();
-                buff.put(buffer.nioBuffer());
-            } finally {
-                ReferenceCountUtil.safeRelease(buffer);
-            }
-
-        }
-
-        @Override
-        @SneakyThrows
-        public void read(ByteBuffer buff, Object obj, int len) {
-            try (ObjectInput input = createInput(Unpooled.wrappedBuffer(buff))) {
-                for (int i = 0; i < len; i++) {
-                    Buf<T> data = new Buf<>(instanceBuilder);
-                    data.readExternal(input);
-                    Array.set(obj, i, data);
-                }
-            }
+        public void write(Buf<T> data, ObjectOutput output) throws IOException {
+            data.writeExternal(output);
         }
 
         @Override
-        @SneakyThrows
-        public Buf<T> read(ByteBuffer buff) {
+        public Buf<T> read(ObjectInput input) throws IOException, ClassNotFoundException {
             Buf<T> data = new Buf<>(instanceBuilder);
-            try (ObjectInput input = createInput(Unpooled.wrappedBuffer(buff))) {
-                data.readExternal(input);
-            }
+            data.readExternal(input);
             return data;
         }
 
-
         @Override
-        public Buf<T>[] createStorage(int size) {
-            return new Buf[size];
+        public int getMemory(Buf<T> obj) {
+            if (obj.data instanceof MemoryUsage) {
+                return ((MemoryUsage) obj.data).usage();
+            }
+            if (obj.data instanceof String) {
+                return ((String) obj.data).length() * 2;
+            }
+            return 4096;
         }
     }
 
@@ -1038,10 +1154,18 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
 
             return Arrays
                 .stream(files)
-                .map(file -> file.getName() + " " + FormatUtils.formatDataSize(file.length()))
+                .map(file -> file.getName() + " " + FormatUtils.formatDataSize(dataSize(file)))
                 .collect(Collectors.toList());
         }
 
+        private long dataSize(File file) {
+            if (!file.isDirectory()) {
+                return file.length();
+            }
+            File[] children = file.listFiles();
+            return children == null ? 0 : Arrays.stream(children).mapToLong(File::length).sum();
+        }
+
         @Override
         public void flush() {
             buffer.queue.flush();
@@ -1072,12 +1196,14 @@ public class PersistenceBuffer<T extends Serializable> implements EvictionContex
                                      ",bufferTimeout: %s" +
                                      ",parallelism: %s" +
                                      ",maxRetryTimes: %s" +
-                                     ",fileConcurrency: %s" + "\nEviction:%s ",
+                                     ",fileConcurrency: %s" +
+                                     ",storage: %s" + "\nEviction:%s ",
                                  buffer.settings.getBufferSize(),
                                  buffer.settings.getBufferTimeout(),
                                  buffer.settings.getParallelism(),
                                  buffer.settings.getMaxRetryTimes(),
                                  buffer.settings.getFileConcurrency(),
+                                 buffer.settings.getStorage(),
                                  buffer.settings.getEviction());
         }
 
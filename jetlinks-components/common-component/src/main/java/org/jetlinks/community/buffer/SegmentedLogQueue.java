@@ -0,0 +1,502 @@
+package org.jetlinks.community.buffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.PlatformDependent;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 基于内存映射文件的分段追加日志队列.
+ * <p>
+ * 数据按顺序追加写入到固定大小的分段文件中,读取时通过读取游标顺序消费,
+ * 当一个分段中的数据全部被消费后,直接删除整个分段文件,不需要像B树那样维护索引和页合并.
+ * <p>
+ * 分段文件格式:
+ * <pre>
+ * [magic:int][version:int]
+ * [length:int][payload:bytes][length:int]
+ * ...
+ * [0:int]
+ * </pre>
+ * 每条记录的首尾均记录了数据长度,用于支持从尾部删除数据({@link #removeLast()}).
+ * 读取游标保存在独立的<code>cursor</code>文件中.
+ *
+ * @param <E> 数据类型
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+class SegmentedLogQueue<E> implements BufferQueue<E> {
+
+    static final String DIRECTORY_SUFFIX = ".segments";
+
+    static final int DEFAULT_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    static final String CURSOR_FILE = "cursor";
+
+    private static final int MAGIC = 0x4A4C5351;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    //记录首尾的长度字段
+    private static final int RECORD_OVERHEAD = 8;
+
+    //结束标记
+    private static final int END_MARK_SIZE = 4;
+
+    private static final int MAX_CACHED_ENCODE_BUFFER = 1024 * 1024;
+
+    private static final FastThreadLocal<ByteBuf> ENCODE_BUFFER = new FastThreadLocal<ByteBuf>() {
+        @Override
+        protected ByteBuf initialValue() {
+            return Unpooled.buffer(4096);
+        }
+    };
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final BufferCodec<E> codec;
+
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    //读取游标
+    private final MappedByteBuffer cursor;
+
+    private Segment readSegment;
+
+    private int readPosition;
+
+    private Segment writeSegment;
+
+    private volatile int size;
+
+    private boolean closed;
+
+    @SneakyThrows
+    SegmentedLogQueue(Path directory, int segmentSize, BufferCodec<E> codec) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.codec = codec;
+        Files.createDirectories(directory);
+        try (FileChannel channel = FileChannel.open(directory.resolve(CURSOR_FILE),
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            this.cursor = channel.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        }
+        load();
+    }
+
+    private void load() throws IOException {
+        long cursorSegment = cursor.getLong(0);
+        int cursorPosition = cursor.getInt(8);
+
+        List<Long> ids;
+        try (Stream<Path> stream = Files.list(directory)) {
+            ids = stream
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                .map(name -> name.substring(0, name.length() - SEGMENT_SUFFIX.length()))
+                .filter(name -> name.chars().allMatch(Character::isDigit))
+                .map(Long::parseLong)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        int total = 0;
+        for (Long id : ids) {
+            Path file = segmentFile(id);
+            //游标之前的分段已经消费完成
+            if (id < cursorSegment) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            Segment segment = Segment.open(id, file);
+            if (segment == null) {
+                log.warn("segment file [{}] is corrupted,skip it", file);
+                Files.move(file, file.resolveSibling(file.getFileName() + ".corrupt"),
+                           StandardCopyOption.REPLACE_EXISTING);
+                continue;
+            }
+            int position = HEADER_SIZE;
+            if (segments.isEmpty()) {
+                readSegment = segment;
+                if (id == cursorSegment && cursorPosition > HEADER_SIZE && cursorPosition < segment.capacity()) {
+                    position = cursorPosition;
+                }
+                readPosition = position;
+            }
+            total += segment.scan(position);
+            segments.put(id, segment);
+        }
+        if (segments.isEmpty()) {
+            Segment segment = Segment.create(cursorSegment, segmentFile(cursorSegment), segmentSize);
+            segments.put(segment.id, segment);
+            readSegment = segment;
+            readPosition = HEADER_SIZE;
+        }
+        writeSegment = segments.lastEntry().getValue();
+        size = total;
+        saveCursor();
+    }
+
+    private Path segmentFile(long id) {
+        return directory.resolve(String.format("%020d", id) + SEGMENT_SUFFIX);
+    }
+
+    private void saveCursor() {
+        cursor.putLong(0, readSegment.id);
+        cursor.putInt(8, readPosition);
+    }
+
+    @SneakyThrows
+    private ByteBuf encode(E element) {
+        ByteBuf buffer = ENCODE_BUFFER.get();
+        buffer.clear();
+        try (ObjectOutput output = codec.createOutput(buffer)) {
+            codec.write(element, output);
+            output.flush();
+        }
+        return buffer;
+    }
+
+    @SneakyThrows
+    private E decode(byte[] data) {
+        try (ObjectInput input = codec.createInput(Unpooled.wrappedBuffer(data))) {
+            return codec.read(input);
+        }
+    }
+
+    @Override
+    public boolean offer(E element) {
+        ByteBuf encoded = encode(element);
+        try {
+            int length = encoded.readableBytes();
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                Segment segment = ensureWritable(length);
+                MappedByteBuffer buffer = segment.buffer;
+                int position = segment.limit;
+                ((Buffer) buffer).position(position + 4);
+                buffer.put(encoded.array(), encoded.arrayOffset() + encoded.readerIndex(), length);
+                buffer.putInt(position + 4 + length, length);
+                buffer.putInt(position + RECORD_OVERHEAD + length, 0);
+                //最后写入头部长度,作为记录写入完成的标记
+                buffer.putInt(position, length);
+                segment.limit = position + RECORD_OVERHEAD + length;
+                size++;
+            }
+            return true;
+        } finally {
+            if (encoded.capacity() > MAX_CACHED_ENCODE_BUFFER) {
+                ENCODE_BUFFER.set(Unpooled.buffer(4096));
+            }
+        }
+    }
+
+    private Segment ensureWritable(int length) {
+        int required = length + RECORD_OVERHEAD + END_MARK_SIZE;
+        Segment segment = writeSegment;
+        if (segment.limit + required > segment.capacity()) {
+            segment = Segment.create(segment.id + 1,
+                                     segmentFile(segment.id + 1),
+                                     Math.max(segmentSize, HEADER_SIZE + required));
+            segments.put(segment.id, segment);
+            writeSegment = segment;
+        }
+        return segment;
+    }
+
+    @Override
+    public E poll() {
+        byte[] data;
+        synchronized (this) {
+            data = readFirst();
+        }
+        return data == null ? null : decode(data);
+    }
+
+    private byte[] readFirst() {
+        if (closed) {
+            return null;
+        }
+        while (true) {
+            Segment segment = readSegment;
+            if (readPosition < segment.limit) {
+                byte[] data = segment.read(readPosition);
+                readPosition += data.length + RECORD_OVERHEAD;
+                size--;
+                saveCursor();
+                return data;
+            }
+            if (segment == writeSegment) {
+                return null;
+            }
+            //分段已经消费完成,移动游标后删除整个分段
+            readSegment = segments.higherEntry(segment.id).getValue();
+            readPosition = HEADER_SIZE;
+            saveCursor();
+            segments.remove(segment.id);
+            segment.delete();
+        }
+    }
+
+    @Override
+    public E removeLast() {
+        byte[] data;
+        synchronized (this) {
+            data = readLast();
+        }
+        return data == null ? null : decode(data);
+    }
+
+    private byte[] readLast() {
+        if (closed) {
+            return null;
+        }
+        while (true) {
+            Segment segment = writeSegment;
+            int start = segment == readSegment ? readPosition : HEADER_SIZE;
+            if (segment.limit > start) {
+                int length = segment.buffer.getInt(segment.limit - 4);
+                int position = segment.limit - length - RECORD_OVERHEAD;
+                byte[] data = segment.read(position);
+                segment.buffer.putInt(position, 0);
+                segment.limit = position;
+                size--;
+                return data;
+            }
+            if (segment == readSegment) {
+                return null;
+            }
+            //分段中已经没有数据,删除分段并回退到上一个分段
+            writeSegment = segments.lowerEntry(segment.id).getValue();
+            segments.remove(segment.id);
+            segment.delete();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        writeSegment.buffer.force();
+        cursor.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            segment.release();
+        }
+        cursor.force();
+        closed = true;
+        segments.clear();
+        release(cursor);
+    }
+
+    @Override
+    @Nonnull
+    public Iterator<E> iterator() {
+        return new SegmentIterator();
+    }
+
+    private static void release(MappedByteBuffer buffer) {
+        try {
+            PlatformDependent.freeDirectBuffer(buffer);
+        } catch (Throwable ignore) {
+            //等待GC释放
+        }
+    }
+
+    class SegmentIterator implements Iterator<E> {
+        private Segment segment;
+        private int position;
+        private byte[] next;
+
+        SegmentIterator() {
+            synchronized (SegmentedLogQueue.this) {
+                segment = readSegment;
+                position = readPosition;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                synchronized (SegmentedLogQueue.this) {
+                    next = advance();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] data = next;
+            next = null;
+            return decode(data);
+        }
+
+        private byte[] advance() {
+            while (!closed && !segment.deleted) {
+                //数据已经被消费
+                if (segment == readSegment && position < readPosition) {
+                    position = readPosition;
+                }
+                if (position < segment.limit) {
+                    byte[] data = segment.read(position);
+                    position += data.length + RECORD_OVERHEAD;
+                    return data;
+                }
+                Map.Entry<Long, Segment> nextSegment = segments.higherEntry(segment.id);
+                if (nextSegment == null) {
+                    return null;
+                }
+                segment = nextSegment.getValue();
+                position = HEADER_SIZE;
+            }
+            return null;
+        }
+    }
+
+    static class Segment {
+        private final long id;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        //写入位置
+        private int limit;
+        private boolean deleted;
+
+        private Segment(long id, Path file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        @SneakyThrows
+        static Segment create(long id, Path file, int capacity) {
+            try (FileChannel channel = FileChannel.open(file,
+                                                        StandardOpenOption.CREATE,
+                                                        StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                Segment segment = new Segment(id, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+                segment.buffer.putInt(0, MAGIC);
+                segment.buffer.putInt(4, VERSION);
+                segment.buffer.putInt(HEADER_SIZE, 0);
+                segment.limit = HEADER_SIZE;
+                return segment;
+            }
+        }
+
+        static Segment open(long id, Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file,
+                                                        StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                long fileSize = channel.size();
+                if (fileSize < HEADER_SIZE + END_MARK_SIZE || fileSize > Integer.MAX_VALUE) {
+                    return null;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    release(buffer);
+                    return null;
+                }
+                return new Segment(id, file, buffer);
+            }
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        /**
+         * 读取指定位置的记录
+         *
+         * @param position 记录开始位置
+         * @return 记录数据
+         */
+        byte[] read(int position) {
+            byte[] data = new byte[buffer.getInt(position)];
+            ((Buffer) buffer).position(position + 4);
+            buffer.get(data);
+            return data;
+        }
+
+        /**
+         * 从指定位置开始扫描记录,确定写入位置.
+         *
+         * @param position 开始位置
+         * @return 记录数量
+         */
+        int scan(int position) {
+            int count = 0;
+            int capacity = capacity();
+            while (position + RECORD_OVERHEAD + END_MARK_SIZE <= capacity) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + RECORD_OVERHEAD + END_MARK_SIZE + length > capacity) {
+                    break;
+                }
+                //未完整写入的记录
+                if (buffer.getInt(position + 4 + length) != length) {
+                    break;
+                }
+                position += length + RECORD_OVERHEAD;
+                count++;
+            }
+            limit = position;
+            if (position + END_MARK_SIZE <= capacity) {
+                buffer.putInt(position, 0);
+            }
+            return count;
+        }
+
+        void release() {
+            SegmentedLogQueue.release(buffer);
+        }
+
+        @SneakyThrows
+        void delete() {
+            deleted = true;
+            release();
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,893 @@
+package org.jetlinks.community.codec;
+
+import lombok.AllArgsConstructor;
+import lombok.SneakyThrows;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 紧凑的二进制序列化器.
+ * <p>
+ * 与FST相比,不会在每个流中写出类描述信息:
+ * <ul>
+ *     <li>数字类型使用变长编码(zigzag varint)</li>
+ *     <li>常用类型(字符串,数字,集合,Map等)使用固定的类型标记</li>
+ *     <li>通过{@link #register(int, Class, Supplier)}注册的类型仅写出类型ID,读取时直接通过工厂创建实例</li>
+ *     <li>未注册的类型在同一个流中只写出一次类名</li>
+ *     <li>读写缓冲区在关闭流后回收复用</li>
+ * </ul>
+ * 读取时会根据流的头部识别数据格式,兼容读取由FST或者JDK序列化的数据,用于平滑迁移.
+ * <p>
+ * 使用<code>java -Djetlinks.object.serializer.type=binary</code>将其设置为默认的序列化器.
+ *
+ * @author zhouhao
+ * @since 2.3
+ * @see Serializers#binary()
+ */
+public class BinarySerializer implements ObjectSerializer {
+
+    //流头部标记
+    static final byte[] MAGIC = {(byte) 0xBE, (byte) 0x4A, 1};
+
+    static final byte
+        NULL = 0,
+        TRUE = 1,
+        FALSE = 2,
+        BYTE = 3,
+        SHORT = 4,
+        INT = 5,
+        LONG = 6,
+        FLOAT = 7,
+        DOUBLE = 8,
+        CHAR = 9,
+        STRING = 10,
+        BYTES = 11,
+        BIG_DECIMAL = 12,
+        BIG_INTEGER = 13,
+        DATE = 14,
+        ARRAY_LIST = 15,
+        HASH_MAP = 16,
+        LINKED_HASH_MAP = 17,
+        HASH_SET = 18,
+        LINKED_HASH_SET = 19,
+        OBJECT_ARRAY = 20,
+        ENUM = 21,
+        REGISTERED = 22,
+        EXTERNALIZABLE = 23,
+        SERIALIZABLE = 24;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final Map<Class<?>, Registration> REGISTRATIONS = new ConcurrentHashMap<>();
+
+    private static final Map<Integer, Registration> REGISTRATIONS_BY_ID = new ConcurrentHashMap<>();
+
+    private static final Map<String, Class<?>> CLASSES = new ConcurrentHashMap<>();
+
+    private static final Map<Class<?>, Constructor<?>> CONSTRUCTORS = new ConcurrentHashMap<>();
+
+    //可复用的读写缓冲区,流关闭时归还,与线程无关
+    private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(
+        Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    private final ClassLoader classLoader;
+
+    //用于读取旧格式的数据
+    private final ObjectSerializer fallback;
+
+    BinarySerializer(ClassLoader classLoader, ObjectSerializer fallback) {
+        this.classLoader = classLoader;
+        this.fallback = fallback;
+    }
+
+    /**
+     * 注册类型,注册后序列化时仅写出类型ID,反序列化时使用工厂创建实例,不再通过反射创建.
+     * <p>
+     * 类型ID一旦使用不能修改,否则将无法读取已经持久化的数据.需要在读取数据前注册,通常在类型的静态代码块中注册.
+     * <p>
+     * 已使用的类型ID: 1:FastSerializableAuthentication,2:SystemEvent,3:DefaultAlarmHandler.TriggerCache,4:DefaultAlarmHandler.RelieveCache
+     *
+     * @param id      类型ID
+     * @param type    类型
+     * @param factory 实例工厂
+     * @param <T>     类型
+     */
+    public static <T extends Externalizable> void register(int id, Class<T> type, Supplier<? extends T> factory) {
+        Registration registration = new Registration(id, type, factory);
+        Registration old = REGISTRATIONS_BY_ID.putIfAbsent(id, registration);
+        if (old != null && old.type != type) {
+            throw new IllegalArgumentException("type id [" + id + "] already registered by " + old.type);
+        }
+        REGISTRATIONS.put(type, registration);
+    }
+
+    @Override
+    @SneakyThrows
+    public ObjectInput createInput(InputStream stream) {
+        PushbackInputStream pushback = new PushbackInputStream(stream, MAGIC.length);
+        byte[] header = new byte[MAGIC.length];
+        int len = 0, read;
+        while (len < header.length && (read = pushback.read(header, len, header.length - len)) > 0) {
+            len += read;
+        }
+        if (len == MAGIC.length && Arrays.equals(header, MAGIC)) {
+            return new Input(this, pushback);
+        }
+        if (len > 0) {
+            pushback.unread(header, 0, len);
+        }
+        //JDK序列化
+        if (len >= 2 && header[0] == (byte) 0xAC && header[1] == (byte) 0xED) {
+            return Serializers.jdk().createInput(pushback);
+        }
+        return fallback.createInput(pushback);
+    }
+
+    @Override
+    @SneakyThrows
+    public ObjectOutput createOutput(OutputStream stream) {
+        Output output = new Output(stream);
+        output.write(MAGIC, 0, MAGIC.length);
+        return output;
+    }
+
+    Class<?> loadClass(String name) {
+        return CLASSES.computeIfAbsent(name, this::loadClass0);
+    }
+
+    @SneakyThrows
+    private Class<?> loadClass0(String name) {
+        return Class.forName(name, false, classLoader);
+    }
+
+    @SneakyThrows
+    static Object newInstance(Class<?> type) {
+        Constructor<?> constructor = CONSTRUCTORS.computeIfAbsent(type, BinarySerializer::getConstructor);
+        return constructor.newInstance();
+    }
+
+    @SneakyThrows
+    private static Constructor<?> getConstructor(Class<?> type) {
+        Constructor<?> constructor = type.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor;
+    }
+
+    @AllArgsConstructor
+    static class Registration {
+        final int id;
+        final Class<?> type;
+        final Supplier<?> factory;
+    }
+
+    static byte[] takeBuffer() {
+        byte[] buffer = BUFFERS.poll();
+        return buffer == null ? new byte[BUFFER_SIZE] : buffer;
+    }
+
+    static void releaseBuffer(byte[] buffer) {
+        BUFFERS.offer(buffer);
+    }
+
+    static class Output implements ObjectOutput {
+        private final OutputStream stream;
+        private byte[] buffer;
+        private int position;
+        //已经写出的类型,同一个流中只写出一次类名
+        private Map<Class<?>, Integer> classes;
+
+        Output(OutputStream stream) {
+            this.stream = stream;
+            this.buffer = takeBuffer();
+        }
+
+        private void ensure(int size) throws IOException {
+            if (position + size > buffer.length) {
+                flushBuffer();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (position > 0) {
+                stream.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeString(String value) throws IOException {
+            int len = value.length();
+            writeVarInt(len);
+            for (int i = 0; i < len; i++) {
+                char c = value.charAt(i);
+                ensure(3);
+                if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[position++] = (byte) (0xC0 | (c >> 6));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    buffer[position++] = (byte) (0xE0 | (c >> 12));
+                    buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void writeTag(byte tag) throws IOException {
+            ensure(1);
+            buffer[position++] = tag;
+        }
+
+        private void writeClass(Class<?> type) throws IOException {
+            if (classes == null) {
+                classes = new IdentityHashMap<>();
+            }
+            Integer index = classes.get(type);
+            if (index != null) {
+                writeVarInt(index + 1);
+                return;
+            }
+            classes.put(type, classes.size());
+            writeVarInt(0);
+            writeString(type.getName());
+        }
+
+        @Override
+        public void writeObject(Object obj) throws IOException {
+            if (obj == null) {
+                writeTag(NULL);
+                return;
+            }
+            Class<?> type = obj.getClass();
+            if (type == String.class) {
+                writeTag(STRING);
+                writeString((String) obj);
+            } else if (type == Integer.class) {
+                writeTag(INT);
+                writeInt((Integer) obj);
+            } else if (type == Long.class) {
+                writeTag(LONG);
+                writeLong((Long) obj);
+            } else if (type == Double.class) {
+                writeTag(DOUBLE);
+                writeDouble((Double) obj);
+            } else if (type == Float.class) {
+                writeTag(FLOAT);
+                writeFloat((Float) obj);
+            } else if (type == Boolean.class) {
+                writeTag((Boolean) obj ? TRUE : FALSE);
+            } else if (type == Short.class) {
+                writeTag(SHORT);
+                writeShort((Short) obj);
+            } else if (type == Byte.class) {
+                writeTag(BYTE);
+                writeByte((Byte) obj);
+            } else if (type == Character.class) {
+                writeTag(CHAR);
+                writeChar((Character) obj);
+            } else if (type == byte[].class) {
+                byte[] bytes = (byte[]) obj;
+                writeTag(BYTES);
+                writeVarInt(bytes.length);
+                write(bytes);
+            } else if (type == BigDecimal.class) {
+                writeTag(BIG_DECIMAL);
+                writeString(obj.toString());
+            } else if (type == BigInteger.class) {
+                writeTag(BIG_INTEGER);
+                writeString(obj.toString());
+            } else if (type == Date.class) {
+                writeTag(DATE);
+                writeLong(((Date) obj).getTime());
+            } else if (type == ArrayList.class) {
+                writeTag(ARRAY_LIST);
+                writeCollection((Collection<?>) obj);
+            } else if (type == HashMap.class) {
+                writeTag(HASH_MAP);
+                writeMap((Map<?, ?>) obj);
+            } else if (type == LinkedHashMap.class) {
+                writeTag(LINKED_HASH_MAP);
+                writeMap((Map<?, ?>) obj);
+            } else if (type == HashSet.class) {
+                writeTag(HASH_SET);
+                writeCollection((Collection<?>) obj);
+            } else if (type == LinkedHashSet.class) {
+                writeTag(LINKED_HASH_SET);
+                writeCollection((Collection<?>) obj);
+            } else if (type == Object[].class) {
+                Object[] array = (Object[]) obj;
+                writeTag(OBJECT_ARRAY);
+                writeVarInt(array.length);
+                for (Object o : array) {
+                    writeObject(o);
+                }
+            } else if (obj instanceof Enum) {
+                writeTag(ENUM);
+                writeClass(((Enum<?>) obj).getDeclaringClass());
+                writeString(((Enum<?>) obj).name());
+            } else if (obj instanceof Externalizable) {
+                Registration registration = REGISTRATIONS.get(type);
+                if (registration != null) {
+                    writeTag(REGISTERED);
+                    writeVarInt(registration.id);
+                } else {
+                    writeTag(EXTERNALIZABLE);
+                    writeClass(type);
+                }
+                ((Externalizable) obj).writeExternal(this);
+            } else {
+                writeSerializable(obj);
+            }
+        }
+
+        private void writeCollection(Collection<?> collection) throws IOException {
+            writeVarInt(collection.size());
+            for (Object o : collection) {
+                writeObject(o);
+            }
+        }
+
+        private void writeMap(Map<?, ?> map) throws IOException {
+            writeVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeObject(entry.getKey());
+                writeObject(entry.getValue());
+            }
+        }
+
+        private void writeSerializable(Object obj) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+                output.writeObject(obj);
+            }
+            writeTag(SERIALIZABLE);
+            writeVarInt(bytes.size());
+            flushBuffer();
+            bytes.writeTo(stream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensure(1);
+            buffer[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(@SuppressWarnings("all") byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(@SuppressWarnings("all") byte[] b, int off, int len) throws IOException {
+            if (len > buffer.length - position) {
+                flushBuffer();
+                if (len > buffer.length) {
+                    stream.write(b, off, len);
+                    return;
+                }
+            }
+            System.arraycopy(b, off, buffer, position, len);
+            position += len;
+        }
+
+        @Override
+        public void writeBoolean(boolean v) throws IOException {
+            write(v ? 1 : 0);
+        }
+
+        @Override
+        public void writeByte(int v) throws IOException {
+            write(v);
+        }
+
+        @Override
+        public void writeShort(int v) throws IOException {
+            writeVarInt(((short) v << 1) ^ ((short) v >> 31));
+        }
+
+        @Override
+        public void writeChar(int v) throws IOException {
+            writeVarInt(v & 0xFFFF);
+        }
+
+        @Override
+        public void writeInt(int v) throws IOException {
+            writeVarInt((v << 1) ^ (v >> 31));
+        }
+
+        @Override
+        public void writeLong(long v) throws IOException {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+
+        @Override
+        public void writeFloat(float v) throws IOException {
+            int bits = Float.floatToIntBits(v);
+            ensure(4);
+            buffer[position++] = (byte) (bits >>> 24);
+            buffer[position++] = (byte) (bits >>> 16);
+            buffer[position++] = (byte) (bits >>> 8);
+            buffer[position++] = (byte) bits;
+        }
+
+        @Override
+        public void writeDouble(double v) throws IOException {
+            long bits = Double.doubleToLongBits(v);
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (bits >>> shift);
+            }
+        }
+
+        @Override
+        public void writeBytes(@SuppressWarnings("all") String s) throws IOException {
+            int len = s.length();
+            for (int i = 0; i < len; i++) {
+                write(s.charAt(i));
+            }
+        }
+
+        @Override
+        public void writeChars(@SuppressWarnings("all") String s) throws IOException {
+            int len = s.length();
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                write(c >>> 8);
+                write(c);
+            }
+        }
+
+        @Override
+        public void writeUTF(@SuppressWarnings("all") String s) throws IOException {
+            writeString(s);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            stream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer == null) {
+                return;
+            }
+            try {
+                flush();
+                stream.close();
+            } finally {
+                releaseBuffer(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    static class Input implements ObjectInput {
+        private final BinarySerializer serializer;
+        private final InputStream stream;
+        private byte[] buffer;
+        private int position, limit;
+        //已经读取的类型
+        private List<Class<?>> classes;
+
+        Input(BinarySerializer serializer, InputStream stream) {
+            this.serializer = serializer;
+            this.stream = stream;
+            this.buffer = takeBuffer();
+        }
+
+        //确保缓冲区中至少有指定数量的数据
+        private void require(int size) throws IOException {
+            if (limit - position >= size) {
+                return;
+            }
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            while (limit < size) {
+                int read = stream.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                limit += read;
+            }
+        }
+
+        private int readVarInt() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = readByte();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new StreamCorruptedException("malformed varint");
+        }
+
+        private long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new StreamCorruptedException("malformed varint");
+        }
+
+        private String readString() throws IOException {
+            int len = readVarInt();
+            char[] chars = new char[len];
+            for (int i = 0; i < len; i++) {
+                int b = readByte() & 0xFF;
+                if (b < 0x80) {
+                    chars[i] = (char) b;
+                } else if ((b & 0xE0) == 0xC0) {
+                    chars[i] = (char) (((b & 0x1F) << 6) | (readByte() & 0x3F));
+                } else {
+                    int b2 = readByte() & 0x3F;
+                    int b3 = readByte() & 0x3F;
+                    chars[i] = (char) (((b & 0x0F) << 12) | (b2 << 6) | b3);
+                }
+            }
+            return new String(chars);
+        }
+
+        private Class<?> readClass() throws IOException {
+            if (classes == null) {
+                classes = new ArrayList<>(4);
+            }
+            int index = readVarInt();
+            if (index > 0) {
+                return classes.get(index - 1);
+            }
+            Class<?> type = serializer.loadClass(readString());
+            classes.add(type);
+            return type;
+        }
+
+        @Override
+        @SuppressWarnings("all")
+        public Object readObject() throws ClassNotFoundException, IOException {
+            byte tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case BYTE:
+                    return readByte();
+                case SHORT:
+                    return readShort();
+                case INT:
+                    return readInt();
+                case LONG:
+                    return readLong();
+                case FLOAT:
+                    return readFloat();
+                case DOUBLE:
+                    return readDouble();
+                case CHAR:
+                    return readChar();
+                case STRING:
+                    return readString();
+                case BYTES: {
+                    byte[] bytes = new byte[readVarInt()];
+                    readFully(bytes);
+                    return bytes;
+                }
+                case BIG_DECIMAL:
+                    return new BigDecimal(readString());
+                case BIG_INTEGER:
+                    return new BigInteger(readString());
+                case DATE:
+                    return new Date(readLong());
+                case ARRAY_LIST: {
+                    int size = readVarInt();
+                    return readCollection(new ArrayList<>(size), size);
+                }
+                case HASH_MAP: {
+                    int size = readVarInt();
+                    return readMap(new HashMap<>(size * 4 / 3 + 1), size);
+                }
+                case LINKED_HASH_MAP: {
+                    int size = readVarInt();
+                    return readMap(new LinkedHashMap<>(size * 4 / 3 + 1), size);
+                }
+                case HASH_SET: {
+                    int size = readVarInt();
+                    return readCollection(new HashSet<>(size * 4 / 3 + 1), size);
+                }
+                case LINKED_HASH_SET: {
+                    int size = readVarInt();
+                    return readCollection(new LinkedHashSet<>(size * 4 / 3 + 1), size);
+                }
+                case OBJECT_ARRAY: {
+                    Object[] array = new Object[readVarInt()];
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = readObject();
+                    }
+                    return array;
+                }
+                case ENUM: {
+                    Class type = readClass();
+                    return Enum.valueOf(type, readString());
+                }
+                case REGISTERED: {
+                    int id = readVarInt();
+                    Registration registration = REGISTRATIONS_BY_ID.get(id);
+                    if (registration == null) {
+                        throw new StreamCorruptedException("unregistered type id:" + id);
+                    }
+                    Externalizable obj = (Externalizable) registration.factory.get();
+                    obj.readExternal(this);
+                    return obj;
+                }
+                case EXTERNALIZABLE: {
+                    Externalizable obj = (Externalizable) newInstance(readClass());
+                    obj.readExternal(this);
+                    return obj;
+                }
+                case SERIALIZABLE: {
+                    byte[] bytes = new byte[readVarInt()];
+                    readFully(bytes);
+                    try (ObjectInputStream input = new ClassLoaderObjectInputStream(
+                        new ByteArrayInputStream(bytes), serializer.classLoader)) {
+                        return input.readObject();
+                    }
+                }
+                default:
+                    throw new StreamCorruptedException("unknown type tag:" + tag);
+            }
+        }
+
+        private Collection<Object> readCollection(Collection<Object> collection, int size)
+            throws IOException, ClassNotFoundException {
+            for (int i = 0; i < size; i++) {
+                collection.add(readObject());
+            }
+            return collection;
+        }
+
+        private Map<Object, Object> readMap(Map<Object, Object> map, int size)
+            throws IOException, ClassNotFoundException {
+            for (int i = 0; i < size; i++) {
+                map.put(readObject(), readObject());
+            }
+            return map;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit) {
+                if (limit == buffer.length) {
+                    position = limit = 0;
+                }
+                int read = stream.read(buffer, limit, buffer.length - limit);
+                if (read <= 0) {
+                    return -1;
+                }
+                limit += read;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(@SuppressWarnings("all") byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+
+        @Override
+        public int read(@SuppressWarnings("all") byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int available = limit - position;
+            if (available > 0) {
+                int size = Math.min(available, len);
+                System.arraycopy(buffer, position, b, off, size);
+                position += size;
+                return size;
+            }
+            return stream.read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            int available = limit - position;
+            if (n <= available) {
+                position += (int) n;
+                return n;
+            }
+            position = limit;
+            return available + stream.skip(n - available);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return limit - position + stream.available();
+        }
+
+        @Override
+        public void readFully(@SuppressWarnings("all") byte[] b) throws IOException {
+            readFully(b, 0, b.length);
+        }
+
+        @Override
+        public void readFully(@SuppressWarnings("all") byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int read = read(b, off, len);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                off += read;
+                len -= read;
+            }
+        }
+
+        @Override
+        public int skipBytes(int n) throws IOException {
+            return (int) skip(n);
+        }
+
+        @Override
+        public boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            require(1);
+            return buffer[position++];
+        }
+
+        @Override
+        public int readUnsignedByte() throws IOException {
+            return readByte() & 0xFF;
+        }
+
+        @Override
+        public short readShort() throws IOException {
+            int v = readVarInt();
+            return (short) ((v >>> 1) ^ -(v & 1));
+        }
+
+        @Override
+        public int readUnsignedShort() throws IOException {
+            return readShort() & 0xFFFF;
+        }
+
+        @Override
+        public char readChar() throws IOException {
+            return (char) readVarInt();
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            int v = readVarInt();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        @Override
+        public float readFloat() throws IOException {
+            require(4);
+            int bits = ((buffer[position] & 0xFF) << 24)
+                | ((buffer[position + 1] & 0xFF) << 16)
+                | ((buffer[position + 2] & 0xFF) << 8)
+                | (buffer[position + 3] & 0xFF);
+            position += 4;
+            return Float.intBitsToFloat(bits);
+        }
+
+        @Override
+        public double readDouble() throws IOException {
+            require(8);
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (buffer[position++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        //与DataInputStream一致,按单字节字符读取一行,不包含行结束符
+        @Override
+        public String readLine() throws IOException {
+            StringBuilder builder = null;
+            for (; ; ) {
+                int c = read();
+                if (c < 0) {
+                    return builder == null ? null : builder.toString();
+                }
+                if (builder == null) {
+                    builder = new StringBuilder();
+                }
+                if (c == '\n') {
+                    return builder.toString();
+                }
+                if (c == '\r') {
+                    int next = read();
+                    if (next >= 0 && next != '\n') {
+                        position--;
+                    }
+                    return builder.toString();
+                }
+                builder.append((char) c);
+            }
+        }
+
+        @Override
+        public String readUTF() throws IOException {
+            return readString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer == null) {
+                return;
+            }
+            try {
+                stream.close();
+            } finally {
+                releaseBuffer(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    static class ClassLoaderObjectInputStream extends ObjectInputStream {
+        private final ClassLoader classLoader;
+
+        ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
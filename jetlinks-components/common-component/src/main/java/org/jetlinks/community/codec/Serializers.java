@@ -48,10 +48,18 @@ public class Serializers {
         }
     };
 
+    //紧凑的二进制格式,兼容读取FST格式的数据
+    private static final ObjectSerializer BINARY = new BinarySerializer(Serializers.class.getClassLoader(), FST);
+
     private static final ObjectSerializer DEFAULT;
 
     static {
-        DEFAULT = System.getProperty("jetlinks.object.serializer.type", "fst").equals("fst") ? FST : JDK;
+        String type = System.getProperty("jetlinks.object.serializer.type", "fst");
+        if ("binary".equals(type)) {
+            DEFAULT = BINARY;
+        } else {
+            DEFAULT = "fst".equals(type) ? FST : JDK;
+        }
     }
 
     public static ObjectSerializer jdk() {
@@ -62,6 +70,10 @@ public class Serializers {
         return FST;
     }
 
+    public static ObjectSerializer binary() {
+        return BINARY;
+    }
+
 
     public static ObjectSerializer getDefault() {
         return DEFAULT;
@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.Setter;
 import org.jetlinks.core.utils.SerializeUtils;
 import org.jetlinks.community.Operation;
+import org.jetlinks.community.codec.BinarySerializer;
 
 import java.io.Externalizable;
 import java.io.IOException;
@@ -15,6 +16,10 @@ import java.io.ObjectOutput;
 public class SystemEvent implements Externalizable {
     private static final long serialVersionUID = 1L;
 
+    static {
+        BinarySerializer.register(2, SystemEvent.class, SystemEvent::new);
+    }
+
     private Level level;
 
     private String code;
@@ -2,6 +2,9 @@ package org.jetlinks.community.elastic.search.index;
 
 import reactor.core.publisher.Mono;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * es 索引策略
  *
@@ -25,6 +28,18 @@ public interface ElasticSearchIndexStrategy {
      */
     String getIndexForSave(String index);
 
+    /**
+     * 根据数据时间获取用于保存数据的索引
+     *
+     * @param index     原始索引名
+     * @param timestamp 数据时间,小于等于0时表示没有时间
+     * @return 索引名
+     * @since 2.3
+     */
+    default String getIndexForSave(String index, long timestamp) {
+        return getIndexForSave(index);
+    }
+
     /**
      * 获取用于搜索的索引
      *
@@ -33,6 +48,19 @@ public interface ElasticSearchIndexStrategy {
      */
     String getIndexForSearch(String index);
 
+    /**
+     * 获取指定时间范围内用于搜索的索引,按时间划分索引的策略可以只返回时间范围内的索引.
+     *
+     * @param index 原始索引名
+     * @param from  开始时间,没有时为{@link Long#MIN_VALUE}
+     * @param to    结束时间,没有时为{@link Long#MAX_VALUE}
+     * @return 索引名
+     * @since 2.3
+     */
+    default Mono<List<String>> getIndexForSearch(String index, long from, long to) {
+        return Mono.just(Collections.singletonList(getIndexForSearch(index)));
+    }
+
     /**
      * 更新索引
      *
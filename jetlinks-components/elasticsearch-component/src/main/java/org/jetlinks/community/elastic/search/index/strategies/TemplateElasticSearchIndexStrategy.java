@@ -4,21 +4,61 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.GetIndexTemplatesRequest;
 import org.elasticsearch.client.indices.PutIndexTemplateRequest;
 import org.jetlinks.community.elastic.search.index.ElasticSearchIndexMetadata;
 import org.jetlinks.community.elastic.search.index.ElasticSearchIndexProperties;
 import org.jetlinks.community.elastic.search.service.reactive.ReactiveElasticsearchClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 public abstract class TemplateElasticSearchIndexStrategy extends AbstractElasticSearchIndexStrategy {
 
+    //索引目录刷新间隔
+    static final long CATALOG_REFRESH_INTERVAL = Long.getLong("elasticsearch.index.catalog-refresh-interval", 60_000L);
+
+    //按时间范围查询时,最多查询的索引数量,超过时使用别名查询
+    static final int MAX_SEARCH_INDEXES = Integer.getInteger("elasticsearch.index.max-search-indexes", 64);
+
+    //设备时间可能比服务器时间快,数据会保存到比数据时间更早的索引中
+    static final long SEARCH_TIME_TOLERANCE = Long.getLong("elasticsearch.index.search-time-tolerance", 10 * 60 * 1000L);
+
+    //数据时间最多比服务器时间晚多久,超过时(设备时钟错误)使用当前时间,避免创建大量历史索引
+    static final long MAX_LATENESS = Long.getLong("elasticsearch.index.max-lateness", 7 * 24 * 60 * 60 * 1000L);
+
+    //提前创建下一个时间分区索引的检查间隔
+    static final long PRE_CREATE_INTERVAL = Long.getLong("elasticsearch.index.pre-create-interval", 10 * 60 * 1000L);
+
+    //在下一个时间分区开始前多久创建索引
+    static final long PRE_CREATE_AHEAD = Long.getLong("elasticsearch.index.pre-create-ahead", 60 * 60 * 1000L);
+
+    //别名对应的实际索引
+    private final Map<String, IndexCatalog> catalogs = new ConcurrentHashMap<>();
+
+    //当前时间分区的索引
+    private final Map<String, IndexPeriod> periods = new ConcurrentHashMap<>();
+
+    //已经创建的索引
+    private final Set<String> createdIndexes = ConcurrentHashMap.newKeySet();
+
+    //已经提前创建的索引
+    private final Set<String> preCreated = ConcurrentHashMap.newKeySet();
+
+    private volatile Disposable preCreateTask;
+
     public TemplateElasticSearchIndexStrategy(String id, ReactiveElasticsearchClient client, ElasticSearchIndexProperties properties) {
         super(id, client, properties);
     }
@@ -43,9 +83,235 @@ public abstract class TemplateElasticSearchIndexStrategy extends AbstractElastic
         return getAlias(index);
     }
 
+    /**
+     * 根据数据时间获取保存数据的索引,按时间划分的索引将数据保存到数据时间所在的索引中.
+     * <p>
+     * 没有时间,或者时间比当前时间快太多或者慢太多时(设备时钟错误),使用当前时间.
+     */
+    @Override
+    public String getIndexForSave(String index, long timestamp) {
+        long now = System.currentTimeMillis();
+        if (timestamp <= 0
+            || timestamp > now + SEARCH_TIME_TOLERANCE
+            || timestamp < now - MAX_LATENESS) {
+            timestamp = now;
+        }
+        IndexPeriod period = periods.get(index);
+        if (period != null && period.contains(timestamp)) {
+            return period.index;
+        }
+        LocalDate date = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+        LocalDate start = getPeriodStart(date);
+        LocalDate next = start == null ? null : getNextPeriodStart(start);
+        if (next == null) {
+            return getIndexForSave(index);
+        }
+        period = new IndexPeriod(getIndexForPeriod(index, start), toMillis(start), toMillis(next));
+        //只缓存当前时间所在的分区,避免补录历史数据时覆盖
+        if (period.contains(now)) {
+            periods.put(index, period);
+        }
+        return period.index;
+    }
+
+    /**
+     * 获取日期所在时间分区的开始日期,不按时间划分索引时返回null.
+     *
+     * @param date 日期
+     * @return 分区开始日期
+     */
+    protected LocalDate getPeriodStart(LocalDate date) {
+        return null;
+    }
+
+    /**
+     * 获取下一个时间分区的开始日期,不按时间划分索引时返回null.
+     *
+     * @param periodStart 分区开始日期
+     * @return 下一个分区开始日期
+     */
+    protected LocalDate getNextPeriodStart(LocalDate periodStart) {
+        return null;
+    }
+
+    /**
+     * 获取时间分区对应的实际索引名,默认不按时间划分,返回当前保存数据的索引.
+     *
+     * @param index       原始索引名
+     * @param periodStart 分区开始日期
+     * @return 索引名
+     */
+    protected String getIndexForPeriod(String index, LocalDate periodStart) {
+        return getIndexForSave(index);
+    }
+
+    /**
+     * 从实际索引名的后缀中解析时间分区的开始日期,无法解析时返回null.
+     *
+     * @param suffix 索引后缀,如: 2023-01
+     * @return 分区开始日期
+     */
+    protected LocalDate parsePeriod(String suffix) {
+        return null;
+    }
+
+    /**
+     * 获取实际索引对应的时间区间,不按时间划分的索引返回null.
+     *
+     * @param index         原始索引名
+     * @param concreteIndex 实际索引名
+     * @return [开始时间, 结束时间)
+     */
+    protected long[] getIndexTimeRange(String index, String concreteIndex) {
+        String prefix = wrapIndex(index) + "_";
+        if (!concreteIndex.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            LocalDate start = parsePeriod(concreteIndex.substring(prefix.length()));
+            LocalDate next = start == null ? null : getNextPeriodStart(start);
+            if (next == null) {
+                return null;
+            }
+            return new long[]{toMillis(start), toMillis(next)};
+        } catch (Throwable ignore) {
+            return null;
+        }
+    }
+
+    private static long toMillis(LocalDate date) {
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 根据索引目录,只查询时间范围内的索引.
+     */
+    @Override
+    public Mono<List<String>> getIndexForSearch(String index, long from, long to) {
+        if (from == Long.MIN_VALUE && to == Long.MAX_VALUE) {
+            return Mono.just(Collections.singletonList(getIndexForSearch(index)));
+        }
+        return getCatalog(index)
+            .map(catalog -> selectIndexes(index,
+                                          catalog,
+                                          from == Long.MIN_VALUE ? from : from - SEARCH_TIME_TOLERANCE,
+                                          to == Long.MAX_VALUE ? to : to + SEARCH_TIME_TOLERANCE));
+    }
+
+    private boolean isInRange(String index, String concreteIndex, long from, long to) {
+        long[] range = getIndexTimeRange(index, concreteIndex);
+        return range == null || (range[1] > from && range[0] <= to);
+    }
+
+    private List<String> selectIndexes(String index, IndexCatalog catalog, long from, long to) {
+        List<String> alias = Collections.singletonList(getIndexForSearch(index));
+        if (catalog.indexes.isEmpty()) {
+            return alias;
+        }
+        Set<String> indexes = new LinkedHashSet<>();
+        for (String concreteIndex : catalog.indexes) {
+            if (isInRange(index, concreteIndex, from, to)) {
+                indexes.add(concreteIndex);
+            }
+        }
+        //目录刷新前创建的新索引
+        String current = getIndexForSave(index);
+        if (isInRange(index, current, from, to)) {
+            indexes.add(current);
+        }
+        //选中了全部索引时直接使用别名
+        if (indexes.size() > MAX_SEARCH_INDEXES || indexes.size() >= catalog.indexes.size()) {
+            return alias;
+        }
+        return new ArrayList<>(indexes);
+    }
+
+    private Mono<IndexCatalog> getCatalog(String index) {
+        String alias = getAlias(index);
+        IndexCatalog catalog = catalogs.get(alias);
+        if (catalog == null) {
+            return loadCatalog(alias);
+        }
+        if (catalog.isExpired() && catalog.refreshing.compareAndSet(false, true)) {
+            loadCatalog(alias)
+                .doFinally(ignore -> catalog.refreshing.set(false))
+                .subscribe();
+        }
+        return Mono.just(catalog);
+    }
+
+    private Mono<IndexCatalog> loadCatalog(String alias) {
+        return client
+            .getAliases(new GetAliasesRequest(alias))
+            .map(response -> new IndexCatalog(response.getAliases().keySet()))
+            .onErrorResume(err -> {
+                log.warn("load index catalog [{}] error", alias, err);
+                return Mono.empty();
+            })
+            .defaultIfEmpty(new IndexCatalog(Collections.emptySet()))
+            .doOnNext(catalog -> catalogs.put(alias, catalog));
+    }
+
+    /**
+     * 提前创建下一个时间分区的索引,避免在切换分区后第一次写入数据时创建索引.
+     */
+    protected Mono<Void> createNextIndexes() {
+        LocalDate start = getPeriodStart(LocalDate.now());
+        if (start == null) {
+            return Mono.empty();
+        }
+        LocalDate next = getNextPeriodStart(start);
+        if (next == null || toMillis(next) - System.currentTimeMillis() > PRE_CREATE_AHEAD) {
+            return Mono.empty();
+        }
+        return Flux
+            .fromIterable(createdIndexes)
+            .map(index -> getIndexForPeriod(index, next))
+            .filter(preCreated::add)
+            .concatMap(index -> this
+                .indexExists(index)
+                .filter(exists -> !exists)
+                //根据模版创建索引
+                .flatMap(ignore -> client.createIndex(new CreateIndexRequest(index)))
+                .doOnNext(ignore -> log.debug("pre create elasticsearch index [{}]", index))
+                .onErrorResume(err -> {
+                    preCreated.remove(index);
+                    log.warn("pre create elasticsearch index [{}] error", index, err);
+                    return Mono.empty();
+                }))
+            .then();
+    }
+
+    private void startPreCreate() {
+        if (getPeriodStart(LocalDate.now()) == null || preCreateTask != null) {
+            return;
+        }
+        synchronized (this) {
+            if (preCreateTask != null) {
+                return;
+            }
+            preCreateTask = Flux
+                .interval(Duration.ofMillis(PRE_CREATE_INTERVAL), Duration.ofMillis(PRE_CREATE_INTERVAL))
+                .onBackpressureDrop()
+                .concatMap(ignore -> createNextIndexes()
+                    .onErrorResume(err -> Mono.empty()))
+                .subscribe();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Disposable task = preCreateTask;
+        if (task != null) {
+            task.dispose();
+        }
+    }
+
     @Override
     public Mono<ElasticSearchIndexMetadata> putIndex(ElasticSearchIndexMetadata metadata) {
         String saveIndex = getIndexForSave(metadata.getIndex());
+        createdIndexes.add(wrapIndex(metadata.getIndex()));
+        startPreCreate();
         return client
             .putTemplate(createIndexTemplateRequest(metadata))
             //修改当前索引
@@ -86,4 +352,34 @@ public abstract class TemplateElasticSearchIndexStrategy extends AbstractElastic
                          .get(0)
                          .mappings())));
     }
+
+    static class IndexCatalog {
+        private final Set<String> indexes;
+        private final long loadTime = System.currentTimeMillis();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        IndexCatalog(Set<String> indexes) {
+            this.indexes = new TreeSet<>(indexes);
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - loadTime > CATALOG_REFRESH_INTERVAL;
+        }
+    }
+
+    static class IndexPeriod {
+        private final String index;
+        private final long start;
+        private final long end;
+
+        IndexPeriod(String index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean contains(long timestamp) {
+            return timestamp >= start && timestamp < end;
+        }
+    }
 }
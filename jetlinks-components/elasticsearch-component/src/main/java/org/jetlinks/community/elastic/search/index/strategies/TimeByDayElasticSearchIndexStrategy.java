@@ -23,10 +23,30 @@ public class TimeByDayElasticSearchIndexStrategy extends TemplateElasticSearchIn
 
     @Override
     public String getIndexForSave(String index) {
-        LocalDate now = LocalDate.now();
+        return getIndexForSave(index, System.currentTimeMillis());
+    }
+
+    @Override
+    protected LocalDate getPeriodStart(LocalDate date) {
+        return date;
+    }
+
+    @Override
+    protected LocalDate getNextPeriodStart(LocalDate periodStart) {
+        return periodStart.plusDays(1);
+    }
+
+    @Override
+    protected String getIndexForPeriod(String index, LocalDate periodStart) {
         String idx = wrapIndex(index);
-        return idx + "_" + now.getYear()
-            + "-" + (now.getMonthValue() < 10 ? "0" : "") + now.getMonthValue()
-            + "-" + (now.getDayOfMonth() < 10 ? "0" : "") + now.getDayOfMonth();
+        return idx + "_" + periodStart.getYear()
+            + "-" + (periodStart.getMonthValue() < 10 ? "0" : "") + periodStart.getMonthValue()
+            + "-" + (periodStart.getDayOfMonth() < 10 ? "0" : "") + periodStart.getDayOfMonth();
+    }
+
+    @Override
+    protected LocalDate parsePeriod(String suffix) {
+        // 2023-01-01
+        return LocalDate.parse(suffix);
     }
 }
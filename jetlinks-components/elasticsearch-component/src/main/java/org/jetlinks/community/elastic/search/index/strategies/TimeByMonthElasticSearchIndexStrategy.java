@@ -19,8 +19,34 @@ public class TimeByMonthElasticSearchIndexStrategy extends TemplateElasticSearch
 
     @Override
     public String getIndexForSave(String index) {
-        LocalDate now = LocalDate.now();
+        return getIndexForSave(index, System.currentTimeMillis());
+    }
+
+    @Override
+    protected LocalDate getPeriodStart(LocalDate date) {
+        return date.withDayOfMonth(1);
+    }
+
+    @Override
+    protected LocalDate getNextPeriodStart(LocalDate periodStart) {
+        return periodStart.plusMonths(1);
+    }
+
+    @Override
+    protected String getIndexForPeriod(String index, LocalDate periodStart) {
         String idx = wrapIndex(index);
-        return idx + "_" + now.getYear() + "-" + now.getMonthValue();
+        return idx + "_" + periodStart.getYear() + "-" + periodStart.getMonthValue();
+    }
+
+    @Override
+    protected LocalDate parsePeriod(String suffix) {
+        // 2023-1
+        int idx = suffix.indexOf('-');
+        if (idx <= 0) {
+            return null;
+        }
+        return LocalDate.of(Integer.parseInt(suffix.substring(0, idx)),
+                            Integer.parseInt(suffix.substring(idx + 1)),
+                            1);
     }
 }
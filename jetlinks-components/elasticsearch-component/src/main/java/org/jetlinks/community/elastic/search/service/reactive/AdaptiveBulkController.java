@@ -0,0 +1,222 @@
+package org.jetlinks.community.elastic.search.service.reactive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.rest.RestStatus;
+import org.jetlinks.community.buffer.PersistenceBuffer;
+import org.jetlinks.community.utils.ErrorUtils;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ElasticSearch写入自适应控制,类似TCP拥塞控制(AIMD),根据写入耗时,拒绝(429)以及积压的数据量
+ * 动态调整每次批量写入的数量和并行度.
+ * <ul>
+ *     <li>写入被拒绝: 并行度减半,批量大小减少1/4.</li>
+ *     <li>平均耗时超过目标耗时: 并行度减1,批量大小减少1/10.</li>
+ *     <li>耗时正常并且有积压: 每完成一轮(并行度个)请求,并行度加1,批量大小增加1/4.</li>
+ * </ul>
+ * 两次减少之间至少间隔一次平均耗时,避免同一批并行请求的结果重复减少.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+class AdaptiveBulkController {
+
+    private final PersistenceBuffer<?> writer;
+
+    private final ElasticSearchBufferProperties.Adaptive config;
+
+    private int batchSize;
+
+    private int parallelism;
+
+    //平均耗时
+    private volatile double latency;
+
+    private long lastDecreaseTime;
+
+    private int completedSinceIncrease;
+
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder increases = new LongAdder();
+    private final LongAdder decreases = new LongAdder();
+
+    private ObjectName objectName;
+
+    AdaptiveBulkController(PersistenceBuffer<?> writer, ElasticSearchBufferProperties properties) {
+        this.writer = writer;
+        this.config = properties.getAdaptive();
+        reset(properties);
+    }
+
+    synchronized void reset(ElasticSearchBufferProperties properties) {
+        this.batchSize = clamp(properties.getSize(), config.getMinSize(), config.getMaxSize());
+        this.parallelism = clamp(properties.getParallelism(), config.getMinParallelism(), config.getMaxParallelism());
+        apply();
+    }
+
+    /**
+     * 批量写入完成
+     *
+     * @param latency  耗时(毫秒)
+     * @param rejected 是否有数据被拒绝
+     */
+    synchronized void complete(long latency, boolean rejected) {
+        this.latency = this.latency == 0 ? latency : this.latency * 0.8 + latency * 0.2;
+        long now = System.currentTimeMillis();
+        long target = config.getTargetLatency().toMillis();
+
+        if (rejected) {
+            rejections.increment();
+            decrease(now, parallelism / 2, batchSize * 3 / 4);
+            return;
+        }
+        if (this.latency > target) {
+            decrease(now, parallelism - 1, batchSize * 9 / 10);
+            return;
+        }
+        //没有积压,无需增加
+        if (writer.size() <= batchSize) {
+            completedSinceIncrease = 0;
+            return;
+        }
+        if (++completedSinceIncrease >= parallelism) {
+            completedSinceIncrease = 0;
+            int newParallelism = Math.min(config.getMaxParallelism(), parallelism + 1);
+            int newBatchSize = Math.min(config.getMaxSize(), batchSize + Math.max(1, batchSize / 4));
+            if (newParallelism != parallelism || newBatchSize != batchSize) {
+                parallelism = newParallelism;
+                batchSize = newBatchSize;
+                increases.increment();
+                apply();
+            }
+        }
+    }
+
+    /**
+     * 批量写入失败
+     *
+     * @param error 错误
+     */
+    void error(Throwable error) {
+        if (isOverload(error)) {
+            complete((long) latency, true);
+        }
+    }
+
+    static boolean isOverload(Throwable error) {
+        if (error instanceof ElasticsearchException) {
+            RestStatus status = ((ElasticsearchException) error).status();
+            return status == RestStatus.TOO_MANY_REQUESTS || status == RestStatus.SERVICE_UNAVAILABLE;
+        }
+        return ErrorUtils.hasException(error, TimeoutException.class);
+    }
+
+    private void decrease(long now, int newParallelism, int newBatchSize) {
+        completedSinceIncrease = 0;
+        if (now - lastDecreaseTime < latency) {
+            return;
+        }
+        lastDecreaseTime = now;
+        newParallelism = Math.max(config.getMinParallelism(), newParallelism);
+        newBatchSize = Math.max(config.getMinSize(), newBatchSize);
+        if (newParallelism != parallelism || newBatchSize != batchSize) {
+            parallelism = newParallelism;
+            batchSize = newBatchSize;
+            decreases.increment();
+            apply();
+        }
+    }
+
+    private void apply() {
+        int size = batchSize, parallelism = this.parallelism;
+        log.debug("adjust elasticsearch writer batch size:{},parallelism:{},latency:{}ms", size, parallelism, (long) latency);
+        writer.settings(settings -> settings.bufferSize(size).parallelism(parallelism));
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    void registerMbean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("org.jetlinks:type=ElasticSearchWriter,name=default");
+            mBeanServer.registerMBean(new StandardMBean(new AdaptiveMBeanImpl(), AdaptiveMBean.class), objectName);
+        } catch (Throwable error) {
+            log.warn("registerMBean ElasticSearchWriter error ", error);
+        }
+    }
+
+    void unregisterMbean() {
+        try {
+            if (objectName != null) {
+                MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Throwable ignore) {
+        }
+    }
+
+    private class AdaptiveMBeanImpl implements AdaptiveMBean {
+
+        @Override
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        @Override
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        @Override
+        public long getLatency() {
+            return (long) latency;
+        }
+
+        @Override
+        public long getBacklog() {
+            return writer.size();
+        }
+
+        @Override
+        public long getRejections() {
+            return rejections.sum();
+        }
+
+        @Override
+        public long getIncreases() {
+            return increases.sum();
+        }
+
+        @Override
+        public long getDecreases() {
+            return decreases.sum();
+        }
+    }
+
+    public interface AdaptiveMBean {
+
+        int getBatchSize();
+
+        int getParallelism();
+
+        long getLatency();
+
+        long getBacklog();
+
+        long getRejections();
+
+        long getIncreases();
+
+        long getDecreases();
+    }
+}
@@ -0,0 +1,122 @@
+package org.jetlinks.community.elastic.search.service.reactive;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.elasticsearch.rest.RestStatus;
+import org.jetlinks.community.utils.ObjectMappers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量写入结果,只解析每条数据的状态和错误信息.
+ *
+ * @author zhouhao
+ * @see ReactiveElasticsearchClient#bulk(java.util.function.Function, boolean, java.time.Duration)
+ * @since 2.3
+ */
+@Getter
+@AllArgsConstructor
+public class BulkResult {
+
+    private final List<Item> items;
+
+    @SneakyThrows
+    public static BulkResult parse(byte[] body) {
+        try (JsonParser parser = ObjectMappers.JSON_MAPPER.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return new BulkResult(Collections.emptyList());
+            }
+            List<Item> items = Collections.emptyList();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("items".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                    items = parseItems(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new BulkResult(items);
+        }
+    }
+
+    private static List<Item> parseItems(JsonParser parser) throws IOException {
+        List<Item> items = new ArrayList<>();
+        // [{"index":{...}},{"index":{...}}]
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Item item = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                parser.nextToken();
+                item = parseItem(parser);
+            }
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    private static Item parseItem(JsonParser parser) throws IOException {
+        String index = null, id = null, reason = null;
+        int status = 0;
+        JsonNode error = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "_index":
+                    index = parser.getValueAsString();
+                    break;
+                case "_id":
+                    id = parser.getValueAsString();
+                    break;
+                case "status":
+                    status = parser.getIntValue();
+                    break;
+                case "error":
+                    error = parser.readValueAsTree();
+                    if (error != null) {
+                        reason = error.isObject()
+                            ? "[type=" + error.path("type").asText() + ", reason=" + error.path("reason").asText() + "]"
+                            : error.asText();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new Item(index, id, status, error == null ? null : error.toString(), reason);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Item {
+        private final String index;
+        private final String id;
+        private final int status;
+        //原始错误信息
+        private final String error;
+        private final String failureMessage;
+
+        public boolean isFailed() {
+            return error != null;
+        }
+
+        public RestStatus status() {
+            return RestStatus.fromCode(status);
+        }
+
+        @Override
+        public String toString() {
+            return "{\"_index\":\"" + index + "\",\"_id\":\"" + id + "\",\"status\":" + status
+                + (error == null ? "" : ",\"error\":" + error) + "}";
+        }
+    }
+}
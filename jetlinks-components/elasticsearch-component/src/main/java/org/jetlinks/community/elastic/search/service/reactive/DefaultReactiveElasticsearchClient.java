@@ -2,6 +2,8 @@ package org.jetlinks.community.elastic.search.service.reactive;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import lombok.Generated;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -88,6 +90,7 @@ import org.elasticsearch.search.suggest.Suggest;
 import org.elasticsearch.tasks.TaskId;
 import org.elasticsearch.xcontent.*;
 import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
 import org.springframework.data.elasticsearch.client.ClientLogger;
 import org.springframework.data.elasticsearch.client.ElasticsearchHost;
 import org.springframework.data.elasticsearch.client.NoReachableHostException;
@@ -107,6 +110,7 @@ import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.ClientRequest;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -138,6 +142,8 @@ public class DefaultReactiveElasticsearchClient implements ReactiveElasticsearch
     private final RequestCreator requestCreator;
     private Supplier<HttpHeaders> headersSupplier = () -> HttpHeaders.EMPTY;
 
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
+
     /**
      * Create a new {@link org.springframework.data.elasticsearch.client.reactive.DefaultReactiveElasticsearchClient} using the given {@link HostProvider} to obtain server
      * connections and the given {@link RequestCreator}.
@@ -574,6 +580,30 @@ public class DefaultReactiveElasticsearchClient implements ReactiveElasticsearch
                                                                                         .publishNext();
     }
 
+    @Override
+    public Mono<BulkResult> bulk(Function<ByteBufAllocator, ByteBuf> body, boolean refresh, Duration timeout) {
+        String logId = ClientLogger.newLogId();
+        Request request = new Request(HttpMethod.POST.name(), "/_bulk");
+        request.addParameter("timeout", timeout.toMillis() + "ms");
+        if (refresh) {
+            request.addParameter("refresh", "true");
+        }
+        return execute(webClient -> sendRequest(webClient, logId, request, headersSupplier.get())
+            .contentType(MediaType.APPLICATION_JSON)
+            //每次请求时才创建请求体,发送后由WebClient释放
+            .body(BodyInserters.fromDataBuffers(
+                Mono.fromSupplier(() -> bufferFactory.wrap(body.apply(bufferFactory.getByteBufAllocator())))))
+            .exchangeToMono(response -> {
+                if (response.statusCode().is2xxSuccessful()) {
+                    ClientLogger.logRawResponse(logId, response.statusCode());
+                    return response
+                        .body(BodyExtractors.toMono(byte[].class))
+                        .map(BulkResult::parse);
+                }
+                return Mono.from(readResponseBody(logId, request, response, BulkResult.class));
+            }));
+    }
+
     @Override
     public Mono<BulkByScrollResponse> reindex(HttpHeaders headers, ReindexRequest reindexRequest) {
         return sendRequest(reindexRequest, requestCreator.reindex(), BulkByScrollResponse.class, headers).next();
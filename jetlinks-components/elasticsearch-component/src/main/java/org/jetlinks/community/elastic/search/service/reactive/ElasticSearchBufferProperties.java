@@ -3,9 +3,10 @@ package org.jetlinks.community.elastic.search.service.reactive;
 import lombok.Getter;
 import lombok.Setter;
 import org.jetlinks.community.buffer.BufferProperties;
-import org.jetlinks.community.buffer.BufferProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+
 @Getter
 @Setter
 @ConfigurationProperties(prefix = "elasticsearch.buffer")
@@ -17,4 +18,24 @@ public class ElasticSearchBufferProperties extends BufferProperties {
     }
 
     private boolean refreshWhenWrite = false;
-}
\ No newline at end of file
+
+    //根据写入耗时自动调整批量大小和并行度
+    private Adaptive adaptive = new Adaptive();
+
+    @Getter
+    @Setter
+    public static class Adaptive {
+        private boolean enabled = true;
+
+        //目标写入耗时
+        private Duration targetLatency = Duration.ofMillis(800);
+
+        private int minSize = 200;
+
+        private int maxSize = 10000;
+
+        private int minParallelism = 1;
+
+        private int maxParallelism = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+    }
+}
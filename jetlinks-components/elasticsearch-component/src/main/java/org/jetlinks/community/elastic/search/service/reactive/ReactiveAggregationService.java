@@ -24,6 +24,7 @@ import org.jetlinks.community.Interval;
 import org.jetlinks.community.elastic.search.index.ElasticSearchIndexManager;
 import org.jetlinks.community.elastic.search.service.AggregationService;
 import org.jetlinks.community.elastic.search.utils.ElasticSearchConverter;
+import org.jetlinks.community.elastic.search.utils.QueryTimeRange;
 import org.jetlinks.community.timeseries.query.*;
 import org.jetlinks.reactor.ql.utils.CastUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,6 +36,7 @@ import reactor.core.publisher.Mono;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -185,20 +187,23 @@ public class ReactiveAggregationService implements AggregationService {
             }
         }
 
+        //只查询时间范围内的索引
+        QueryTimeRange range = QueryTimeRange.of(queryParam);
+        long from = range == null ? Long.MIN_VALUE : range.getFrom();
+        long to = range == null ? Long.MAX_VALUE : range.getTo();
         return Flux
             .fromArray(index)
-            .flatMap(idx -> Mono.zip(indexManager.getIndexStrategy(idx), Mono.just(idx)))
+            .concatMap(idx -> indexManager
+                .getIndexStrategy(idx)
+                .flatMap(strategy -> strategy.getIndexForSearch(idx, from, to)))
+            .flatMapIterable(Function.identity())
+            .distinct()
             .collectList()
-            .flatMap(strategy -> this
+            .flatMap(indexes -> this
                 .createSearchSourceBuilder(queryParam, index[0])
                 .map(builder -> {
                          aggs.forEach(builder.size(0)::aggregation);
-                         return new SearchRequest(strategy
-                                                      .stream()
-                                                      .map(tp2 -> tp2
-                                                          .getT1()
-                                                          .getIndexForSearch(tp2.getT2()))
-                                                      .toArray(String[]::new))
+                         return new SearchRequest(indexes.toArray(new String[0]))
                              .indicesOptions(ReactiveElasticSearchService.indexOptions)
                              .source(builder);
                      }
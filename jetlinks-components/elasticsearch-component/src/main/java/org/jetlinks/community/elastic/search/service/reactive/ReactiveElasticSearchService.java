@@ -1,6 +1,10 @@
 package org.jetlinks.community.elastic.search.service.reactive;
 
-import com.google.common.collect.Collections2;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.SneakyThrows;
@@ -8,23 +12,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.Version;
-import org.elasticsearch.action.bulk.BulkItemResponse;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.MultiSearchRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.IndicesOptions;
-import org.elasticsearch.action.support.WriteRequest;
-import org.elasticsearch.common.Strings;
-import org.elasticsearch.core.TimeValue;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.reindex.BulkByScrollResponse;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
-import org.elasticsearch.xcontent.XContentType;
 import org.hswebframework.ezorm.core.param.QueryParam;
 import org.hswebframework.utils.time.DateFormatter;
 import org.hswebframework.utils.time.DefaultDateFormatter;
@@ -36,9 +32,11 @@ import org.jetlinks.core.trace.MonoTracer;
 import org.jetlinks.core.utils.SerializeUtils;
 import org.jetlinks.community.elastic.search.index.ElasticSearchIndexManager;
 import org.jetlinks.community.elastic.search.index.ElasticSearchIndexMetadata;
+import org.jetlinks.community.elastic.search.index.ElasticSearchIndexStrategy;
 import org.jetlinks.community.elastic.search.service.ElasticSearchService;
 import org.jetlinks.community.elastic.search.utils.ElasticSearchConverter;
 import org.jetlinks.community.elastic.search.utils.QueryParamTranslator;
+import org.jetlinks.community.elastic.search.utils.QueryTimeRange;
 import org.jetlinks.community.utils.ErrorUtils;
 import org.jetlinks.community.utils.ObjectMappers;
 import org.jetlinks.community.utils.SystemUtils;
@@ -63,6 +61,8 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
@@ -97,6 +97,8 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
 
     private PersistenceBuffer<Buffer> writer;
 
+    private AdaptiveBulkController controller;
+
     @Getter
     @Setter
     private ElasticSearchBufferProperties buffer;
@@ -338,6 +340,9 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
     @PreDestroy
     public void shutdown() {
         writer.stop();
+        if (controller != null) {
+            controller.unregisterMbean();
+        }
     }
 
     @Override
@@ -347,6 +352,11 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
             .settings(bufferSettings -> bufferSettings.properties(buffer))
             .start();
 
+        if (buffer.getAdaptive().isEnabled()) {
+            controller = new AdaptiveBulkController(writer, buffer);
+            controller.registerMbean();
+        }
+
         //最后 shutdown
         SpringApplication
             .getShutdownHandlers()
@@ -382,7 +392,9 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
             .retryWhenError(e -> {
                 if (e instanceof ElasticsearchException) {
                     ElasticsearchException elasticsearchException = (ElasticsearchException) e;
-                    if (elasticsearchException.status() == RestStatus.BAD_GATEWAY) {
+                    if (elasticsearchException.status() == RestStatus.BAD_GATEWAY
+                        || elasticsearchException.status() == RestStatus.TOO_MANY_REQUESTS
+                        || elasticsearchException.status() == RestStatus.SERVICE_UNAVAILABLE) {
                         return true;
                     }
                 }
@@ -404,28 +416,45 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
         List<Buffered<Buffer>> list = bufferFlux instanceof List
             ? ((List<Buffered<Buffer>>) bufferFlux)
             : new ArrayList<>(bufferFlux);
-        int size = list.size();
+        long startWith = System.currentTimeMillis();
         return this
-            .doSave0(Collections2.transform(list, Buffered::getData))
-            .map(response -> {
+            //未找到索引策略的数据不会写入,响应结果按顺序对应过滤后的数据
+            .resolveIndexes(list, Buffered::getData)
+            .flatMap(lst -> this
+                .doBulk(lst, Buffered::getData)
+                .map(response -> Tuples.of(lst, response)))
+            .doOnError(error -> {
+                if (controller != null) {
+                    controller.error(error);
+                }
+            })
+            .map(tp2 -> {
+                List<Tuple2<String, Buffered<Buffer>>> saved = tp2.getT1();
+                BulkResult response = tp2.getT2();
+                int size = saved.size();
                 boolean hasError = false;
-                BulkItemResponse[] arr = response.getItems();
+                boolean rejected = false;
+                List<BulkResult.Item> arr = response.getItems();
                 Set<String> errors = null;
                 //响应数量不一致?
-                if (arr.length != size) {
+                if (arr.size() != size) {
                     log.warn("ElasticSearch response item size not equals to buffer size," +
                                  " response size:{}, buffer size:{}",
-                             arr.length,
+                             arr.size(),
                              size);
                 }
-                for (int i = 0; i < arr.length; i++) {
-                    BulkItemResponse item = arr[i];
-                    Buffered<Buffer> buffered = size > i ? list.get(i) : null;
-                    HttpStatus status = HttpStatus.resolve(item.status().getStatus());
+                for (int i = 0; i < arr.size(); i++) {
+                    BulkResult.Item item = arr.get(i);
+                    Buffered<Buffer> buffered = size > i ? saved.get(i).getT2() : null;
+                    HttpStatus status = HttpStatus.resolve(item.getStatus());
                     if ((status == null || !status.is2xxSuccessful())) {
                         hasError = true;
-                        if (null != item.getFailure()) {
-                            context.error(new BusinessException.NoStackTrace(item.getFailure().getMessage()));
+                        //es写入队列已满
+                        if (status == HttpStatus.TOO_MANY_REQUESTS) {
+                            rejected = true;
+                        }
+                        if (item.isFailed()) {
+                            context.error(new BusinessException.NoStackTrace(item.getFailureMessage()));
                         }
                         if (log.isInfoEnabled()) {
                             String msg = item.getFailureMessage();
@@ -435,7 +464,7 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
                             if (msg == null || errors.add(msg)) {
                                 log.info("write elasticsearch data [{}] failed: {}",
                                          buffered,
-                                         Strings.toString(item));
+                                         item);
                             }
                         }
                         //失败
@@ -455,6 +484,9 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
                         buffered.retry(false);
                     }
                 }
+                if (controller != null) {
+                    controller.complete(System.currentTimeMillis() - startWith, rejected);
+                }
                 //有任何错误,则触发重试
                 return hasError;
             });
@@ -468,53 +500,123 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
         RestStatus.NOT_FOUND,
         RestStatus.METHOD_NOT_ALLOWED);
 
-    private boolean isDead(Buffered<Buffer> buffered, BulkItemResponse response) {
+    private boolean isDead(Buffered<Buffer> buffered, BulkResult.Item response) {
         return buffer.isExceededRetryCount(buffered.getRetryTimes()) ||
             //快速失败,不再重试
             deadStatus.contains(response.status());
     }
 
-    protected Mono<BulkResponse> doSave0(Collection<Buffer> buffers) {
+    protected Mono<BulkResult> doSave0(Collection<Buffer> buffers) {
+        return this
+            .resolveIndexes(buffers, Function.identity())
+            .flatMap(lst -> doBulk(lst, Function.identity()));
+    }
+
+    /**
+     * 获取每条数据需要保存到的索引,未找到索引策略的数据将被过滤
+     *
+     * @param data   数据
+     * @param getter 获取数据中的Buffer
+     * @return 索引和数据, 与data的顺序相同
+     */
+    private <T> Mono<List<Tuple2<String, T>>> resolveIndexes(Collection<T> data, Function<T, Buffer> getter) {
+        if (data.isEmpty()) {
+            return Mono.empty();
+        }
+        Set<String> indexes = new HashSet<>();
+        for (T t : data) {
+            indexes.add(getter.apply(t).index);
+        }
         return Flux
-            .fromIterable(buffers)
-            .groupBy(Buffer::getIndex, Integer.MAX_VALUE)
-            .flatMap(group -> {
-                String index = group.key();
-                return this
-                    .getIndexForSave(index)
-                    .flatMapMany(realIndex -> group
-                        .map(buffer -> {
-                            try {
-                                IndexRequest request;
-                                if (buffer.id != null) {
-                                    request = new IndexRequest(realIndex).id(buffer.id);
-                                } else {
-                                    request = new IndexRequest(realIndex);
-                                }
-                                if (getRestClient().serverVersion().before(Version.V_7_0_0)) {
-                                    @SuppressWarnings("all")
-                                    IndexRequest ignore = request.type("_doc");
-                                }
-                                request.source(buffer.payload, XContentType.JSON);
-                                return request;
-                            } finally {
-                                buffer.release();
-                            }
-                        }));
-            })
-            .collectList()
-            .filter(CollectionUtils::isNotEmpty)
-            .flatMap(lst -> {
-                BulkRequest request = new BulkRequest();
-                request.timeout(TimeValue.timeValueSeconds(9));
-                if (buffer.isRefreshWhenWrite()) {
-                    request.setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+            .fromIterable(indexes)
+            .flatMap(index -> indexManager
+                .getIndexStrategy(index)
+                .map(strategy -> Tuples.of(index, strategy)))
+            .collectMap(Tuple2::getT1, Tuple2::getT2)
+            .flatMap(strategies -> {
+                //保持与data相同的顺序,响应结果按顺序对应每一条数据
+                List<Tuple2<String, T>> lst = new ArrayList<>(data.size());
+                for (T t : data) {
+                    Buffer buffer = getter.apply(t);
+                    ElasticSearchIndexStrategy strategy = strategies.get(buffer.index);
+                    if (strategy != null) {
+                        //根据数据时间获取索引,补录或者重试的数据也能保存到正确的索引中
+                        lst.add(Tuples.of(strategy.getIndexForSave(buffer.index, buffer.timestamp), t));
+                    }
                 }
-                lst.forEach(request::add);
-                return restClient.bulk(request);
+                return lst.isEmpty() ? Mono.empty() : Mono.just(lst);
             });
     }
 
+    private <T> Mono<BulkResult> doBulk(List<Tuple2<String, T>> lst, Function<T, Buffer> getter) {
+        boolean typed = getRestClient().serverVersion().before(Version.V_7_0_0);
+        return restClient.bulk(alloc -> encodeBulk(alloc, lst, getter, typed),
+                               buffer.isRefreshWhenWrite(),
+                               BULK_TIMEOUT);
+    }
+
+    static final Duration BULK_TIMEOUT = Duration.ofSeconds(9);
+
+    static final byte[] ACTION_INDEX = "{\"index\":{\"_index\":".getBytes(StandardCharsets.UTF_8);
+    static final byte[] ACTION_TYPE = ",\"_type\":\"_doc\"".getBytes(StandardCharsets.UTF_8);
+    static final byte[] ACTION_ID = ",\"_id\":".getBytes(StandardCharsets.UTF_8);
+    static final byte[] ACTION_END = "}}\n".getBytes(StandardCharsets.UTF_8);
+    static final ByteBuf NEW_LINE = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(new byte[]{'\n'}));
+
+    /**
+     * 构造批量写入请求体: 每条数据一行操作一行数据,数据直接引用已经编码好的payload,不再进行复制.
+     */
+    static <T> ByteBuf encodeBulk(ByteBufAllocator alloc,
+                                  List<Tuple2<String, T>> buffers,
+                                  Function<T, Buffer> getter,
+                                  boolean typed) {
+        CompositeByteBuf body = alloc.compositeBuffer(buffers.size() * 2 + 1);
+        try {
+            boolean first = true;
+            for (Tuple2<String, T> tp2 : buffers) {
+                Buffer buffer = getter.apply(tp2.getT2());
+                ByteBuf action = alloc.buffer(64 + tp2.getT1().length() + (buffer.id == null ? 0 : buffer.id.length()));
+                //上一条数据的换行
+                if (!first) {
+                    action.writeByte('\n');
+                }
+                first = false;
+                action.writeBytes(ACTION_INDEX);
+                writeJsonString(action, tp2.getT1());
+                if (typed) {
+                    action.writeBytes(ACTION_TYPE);
+                }
+                if (buffer.id != null) {
+                    action.writeBytes(ACTION_ID);
+                    writeJsonString(action, buffer.id);
+                }
+                action.writeBytes(ACTION_END);
+                body.addComponent(true, action);
+                body.addComponent(true, Unpooled.wrappedBuffer(buffer.payload));
+            }
+            body.addComponent(true, NEW_LINE.duplicate());
+            return body;
+        } catch (Throwable error) {
+            body.release();
+            throw error;
+        }
+    }
+
+    @SneakyThrows
+    private static void writeJsonString(ByteBuf buf, String value) {
+        for (int i = 0, len = value.length(); i < len; i++) {
+            char c = value.charAt(i);
+            //包含需要转义的字符
+            if (c < 0x20 || c >= 0x7f || c == '"' || c == '\\') {
+                buf.writeBytes(ObjectMappers.JSON_MAPPER.writeValueAsBytes(value));
+                return;
+            }
+        }
+        buf.writeByte('"');
+        ByteBufUtil.writeAscii(buf, value);
+        buf.writeByte('"');
+    }
+
 
     @Getter
     public static class Buffer implements Externalizable, MemoryUsage {
@@ -522,6 +624,8 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
 
         String index;
         String id;
+        //数据时间,用于确定保存到哪个索引
+        long timestamp;
         byte[] payload;
 
         @SneakyThrows
@@ -534,19 +638,23 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
                 FastBeanCopier.copy(payload, HashMap::new);
             Object id = data.get("id");
             buffer.id = id == null ? null : String.valueOf(id);
+            Object timestamp = data.get("timestamp");
+            if (timestamp instanceof Number) {
+                buffer.timestamp = ((Number) timestamp).longValue();
+            } else if (timestamp instanceof Date) {
+                buffer.timestamp = ((Date) timestamp).getTime();
+            }
             buffer.payload = ObjectMappers.JSON_MAPPER.writeValueAsBytes(data);
             return buffer;
         }
 
-        void release() {
-
-        }
-
         @Override
         public void writeExternal(ObjectOutput out) throws IOException {
             out.writeUTF(index);
             SerializeUtils.writeNullableUTF(id, out);
-            out.writeInt(payload.length);
+            //长度取反表示包含数据时间,兼容旧版本的缓冲数据
+            out.writeInt(~payload.length);
+            out.writeLong(timestamp);
             out.write(payload);
         }
 
@@ -555,6 +663,10 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
             index = in.readUTF();
             id = SerializeUtils.readNullableUTF(in);
             int length = in.readInt();
+            if (length < 0) {
+                length = ~length;
+                timestamp = in.readLong();
+            }
             payload = new byte[length];
             in.readFully(payload);
         }
@@ -565,18 +677,22 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
         }
     }
 
-    private Mono<String> getIndexForSave(String index) {
+    private Mono<String> getIndexForSearch(String index) {
         return indexManager
             .getIndexStrategy(index)
-            .map(strategy -> strategy.getIndexForSave(index));
+            .map(strategy -> strategy.getIndexForSearch(index));
 
     }
 
-    private Mono<String> getIndexForSearch(String index) {
+    //根据查询条件中的时间范围获取需要查询的索引
+    private Flux<String> getIndexForSearch(String index, QueryTimeRange range) {
+        if (range == null) {
+            return getIndexForSearch(index).flux();
+        }
         return indexManager
             .getIndexStrategy(index)
-            .map(strategy -> strategy.getIndexForSearch(index));
-
+            .flatMap(strategy -> strategy.getIndexForSearch(index, range.getFrom(), range.getTo()))
+            .flatMapIterable(Function.identity());
     }
 
     protected Mono<Integer> doSave(Collection<Buffer> buffers) {
@@ -589,7 +705,7 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
             })
             .map(response -> {
                 int success = 0;
-                for (BulkItemResponse item : response.getItems()) {
+                for (BulkResult.Item item : response.getItems()) {
                     if (!item.isFailed()) {
                         success++;
                     }
@@ -625,8 +741,10 @@ public class ReactiveElasticSearchService implements ElasticSearchService, Comma
     protected Mono<SearchRequest> createSearchRequest(QueryParam queryParam, List<ElasticSearchIndexMetadata> indexes) {
 
         SearchSourceBuilder builder = ElasticSearchConverter.convertSearchSourceBuilder(queryParam, indexes.get(0));
+        QueryTimeRange range = QueryTimeRange.of(queryParam);
         return Flux.fromIterable(indexes)
-                   .flatMap(index -> getIndexForSearch(index.getIndex()))
+                   .concatMap(index -> getIndexForSearch(index.getIndex(), range))
+                   .distinct()
                    .collectList()
                    .map(indexList ->
                             new SearchRequest(indexList.toArray(new String[0]))
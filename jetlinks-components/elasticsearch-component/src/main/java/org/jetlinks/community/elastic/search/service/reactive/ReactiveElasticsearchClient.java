@@ -11,8 +11,13 @@ import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.function.Function;
+
 public interface ReactiveElasticsearchClient extends
     org.springframework.data.elasticsearch.client.reactive.ReactiveElasticsearchClient
     , org.springframework.data.elasticsearch.client.reactive.ReactiveElasticsearchClient.Indices {
@@ -28,4 +33,17 @@ public interface ReactiveElasticsearchClient extends
     Mono<AcknowledgedResponse> updateTemplate(PutIndexTemplateRequest request);
 
     Version serverVersion();
+
+    /**
+     * 批量写入已经编码好的数据,请求体直接写入Netty缓冲区,不再创建IndexRequest和BulkRequest.
+     * <p>
+     * 连接失败重试时会重新调用body创建请求体.
+     *
+     * @param body    请求体(NDJSON)构造器
+     * @param refresh 是否立即刷新
+     * @param timeout 超时时间
+     * @return 写入结果
+     * @since 2.3
+     */
+    Mono<BulkResult> bulk(Function<ByteBufAllocator, ByteBuf> body, boolean refresh, Duration timeout);
 }
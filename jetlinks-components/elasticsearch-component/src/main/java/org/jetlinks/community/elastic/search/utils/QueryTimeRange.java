@@ -0,0 +1,131 @@
+package org.jetlinks.community.elastic.search.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.commons.collections4.CollectionUtils;
+import org.hswebframework.ezorm.core.param.QueryParam;
+import org.hswebframework.ezorm.core.param.Term;
+import org.hswebframework.ezorm.core.param.TermType;
+import org.jetlinks.core.metadata.types.DateTimeType;
+
+import java.util.List;
+
+/**
+ * 从查询条件中提取时间范围,用于按时间划分的索引只查询时间范围内的索引.
+ * <p>
+ * 只处理使用and连接的btw,gt,gte,lt,lte,eq条件,无法确定范围时返回null.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Getter
+@AllArgsConstructor
+public class QueryTimeRange {
+
+    public static final String DEFAULT_COLUMN = "timestamp";
+
+    //开始时间,没有时为Long.MIN_VALUE
+    private final long from;
+
+    //结束时间,没有时为Long.MAX_VALUE
+    private final long to;
+
+    public boolean hasFrom() {
+        return from != Long.MIN_VALUE;
+    }
+
+    public boolean hasTo() {
+        return to != Long.MAX_VALUE;
+    }
+
+    public static QueryTimeRange of(QueryParam param) {
+        return of(param, DEFAULT_COLUMN);
+    }
+
+    public static QueryTimeRange of(QueryParam param, String column) {
+        if (param == null || CollectionUtils.isEmpty(param.getTerms())) {
+            return null;
+        }
+        List<Term> terms = param.getTerms();
+        //顶层存在or条件,无法确定时间范围
+        for (int i = 1; i < terms.size(); i++) {
+            if (terms.get(i).getType() == Term.Type.or) {
+                return null;
+            }
+        }
+        long[] range = {Long.MIN_VALUE, Long.MAX_VALUE};
+        if (!extract(terms, column, range)) {
+            return null;
+        }
+        return new QueryTimeRange(range[0], range[1]);
+    }
+
+    private static boolean extract(List<Term> terms, String column, long[] range) {
+        boolean matched = false;
+        for (Term term : terms) {
+            if (CollectionUtils.isNotEmpty(term.getTerms())) {
+                List<Term> nested = term.getTerms();
+                boolean and = true;
+                for (int i = 1; i < nested.size(); i++) {
+                    if (nested.get(i).getType() == Term.Type.or) {
+                        and = false;
+                        break;
+                    }
+                }
+                //嵌套条件中包含or时忽略,只会查询更多的索引
+                if (and) {
+                    matched |= extract(nested, column, range);
+                }
+            }
+            if (!column.equals(term.getColumn())
+                || term.getValue() == null
+                || CollectionUtils.isNotEmpty(term.getOptions())) {
+                continue;
+            }
+            try {
+                matched |= apply(term, range);
+            } catch (Throwable ignore) {
+                //无法转换的时间忽略此条件
+            }
+        }
+        return matched;
+    }
+
+    private static boolean apply(Term term, long[] range) {
+        String termType = term.getTermType();
+        if (TermType.btw.equals(termType)) {
+            List<Object> values = TermCommonUtils.convertToList(term.getValue());
+            if (values.size() < 2) {
+                return false;
+            }
+            Object from = values.get(0), to = values.get(1);
+            if (from != null) {
+                range[0] = Math.max(range[0], convert(from));
+            }
+            if (to != null) {
+                range[1] = Math.min(range[1], convert(to));
+            }
+            return true;
+        }
+        if (TermType.gt.equals(termType) || TermType.gte.equals(termType)) {
+            range[0] = Math.max(range[0], convert(term.getValue()));
+            return true;
+        }
+        if (TermType.lt.equals(termType) || TermType.lte.equals(termType)) {
+            range[1] = Math.min(range[1], convert(term.getValue()));
+            return true;
+        }
+        if (TermType.eq.equals(termType)) {
+            long time = convert(term.getValue());
+            range[0] = Math.max(range[0], time);
+            range[1] = Math.min(range[1], time);
+            return true;
+        }
+        return false;
+    }
+
+    private static long convert(Object value) {
+        return DateTimeType.GLOBAL.convert(value).getTime();
+    }
+
+}
@@ -0,0 +1,325 @@
+package org.jetlinks.community.gateway;
+
+import lombok.Getter;
+import org.jetlinks.community.gateway.monitor.DeviceGatewayMonitor;
+import org.jetlinks.community.utils.TimeUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 设备网关连接准入控制,用于防止大量设备同时重连(如服务重启)时,认证和会话注册压垮缓存和数据库.
+ * <ul>
+ *     <li>令牌桶: 限制每秒接入的连接数量,没有令牌时立即拒绝.</li>
+ *     <li>并发限制: 限制同时进行认证的连接数量,超过时进入等待队列,队列已满或者等待超时时拒绝.</li>
+ *     <li>执行超时: 认证执行超时时拒绝并释放并发数,避免认证卡住时后续连接一直等待.</li>
+ * </ul>
+ * 被拒绝的连接应该在{@link #nextRejectDelay()}后再断开,使设备的重连时间分散开.
+ *
+ * <pre>{@code
+ *  admission
+ *     .execute(authenticate(connection))
+ *     .onErrorResume(DeviceGatewayAdmission::isRejected, err -> reject(connection))
+ * }</pre>
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+public class DeviceGatewayAdmission {
+
+    @SuppressWarnings("all")
+    private static final AtomicIntegerFieldUpdater<DeviceGatewayAdmission> WIP =
+        AtomicIntegerFieldUpdater.newUpdater(DeviceGatewayAdmission.class, "wip");
+
+    //每秒允许接入的连接数量,小于等于0时不限制
+    static final int DEFAULT_RATE = Integer.getInteger("gateway.admission.rate", 2000);
+
+    //令牌桶容量
+    static final int DEFAULT_BURST = Integer.getInteger("gateway.admission.burst", DEFAULT_RATE);
+
+    //同时进行认证的连接数量
+    static final int DEFAULT_CONCURRENCY = Integer.getInteger("gateway.admission.concurrency", 256);
+
+    //等待认证的最大连接数量
+    static final int DEFAULT_MAX_PENDING = Integer.getInteger("gateway.admission.max-pending", 8192);
+
+    //最大等待时间
+    static final Duration DEFAULT_MAX_WAIT = TimeUtils.parse(System.getProperty("gateway.admission.max-wait", "10s"));
+
+    //最大执行时间
+    static final Duration DEFAULT_TIMEOUT = TimeUtils.parse(System.getProperty("gateway.admission.timeout", "30s"));
+
+    //拒绝连接的最大随机延迟
+    static final Duration DEFAULT_REJECT_DELAY = TimeUtils.parse(System.getProperty("gateway.admission.reject-delay", "3s"));
+
+    private final DeviceGatewayMonitor monitor;
+
+    @Getter
+    private final int rate;
+    private final int burst;
+    @Getter
+    private final int concurrency;
+    private final int maxPending;
+    private final long maxWaitMillis;
+    private final Duration timeout;
+    private final long rejectDelayMillis;
+
+    //令牌桶
+    private double tokens;
+    private long lastRefillTime = System.nanoTime();
+
+    private final Queue<Task<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile int wip;
+
+    public DeviceGatewayAdmission(DeviceGatewayMonitor monitor) {
+        this(monitor,
+             DEFAULT_RATE,
+             DEFAULT_BURST,
+             DEFAULT_CONCURRENCY,
+             DEFAULT_MAX_PENDING,
+             DEFAULT_MAX_WAIT,
+             DEFAULT_TIMEOUT,
+             DEFAULT_REJECT_DELAY);
+    }
+
+    public DeviceGatewayAdmission(DeviceGatewayMonitor monitor,
+                                  int rate,
+                                  int burst,
+                                  int concurrency,
+                                  int maxPending,
+                                  Duration maxWait,
+                                  Duration timeout,
+                                  Duration rejectDelay) {
+        this.monitor = monitor;
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.concurrency = concurrency <= 0 ? Integer.MAX_VALUE : concurrency;
+        this.maxPending = maxPending <= 0 ? Integer.MAX_VALUE : maxPending;
+        this.maxWaitMillis = maxWait.toMillis();
+        this.timeout = timeout;
+        this.rejectDelayMillis = rejectDelay.toMillis();
+        this.tokens = this.burst;
+    }
+
+    public static boolean isRejected(Throwable error) {
+        return error instanceof RejectedException;
+    }
+
+    /**
+     * 获取拒绝连接前的随机延迟时间,用于分散设备的重连时间
+     *
+     * @return 延迟时间
+     */
+    public Duration nextRejectDelay() {
+        if (rejectDelayMillis <= 0) {
+            return Duration.ZERO;
+        }
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(rejectDelayMillis));
+    }
+
+    /**
+     * 尝试获取令牌,用于只需要限制速率的场景,如TCP连接.
+     *
+     * @return 是否获取成功
+     */
+    public boolean tryAcquire() {
+        if (tryAcquireToken()) {
+            monitor.admissionAccepted();
+            return true;
+        }
+        monitor.admissionRejected();
+        return false;
+    }
+
+    /**
+     * 在准入控制下执行任务,被拒绝时返回{@link RejectedException}错误,可通过{@link #isRejected(Throwable)}判断.
+     *
+     * @param task 任务,如认证
+     * @param <T>  结果类型
+     * @return 任务结果
+     */
+    public <T> Mono<T> execute(Mono<T> task) {
+        return Mono
+            .<T>create(sink -> {
+                if (!tryAcquireToken()) {
+                    monitor.admissionRejected();
+                    sink.error(new RejectedException("rate limited"));
+                    return;
+                }
+                if (pending.incrementAndGet() > maxPending) {
+                    pending.decrementAndGet();
+                    monitor.admissionRejected();
+                    sink.error(new RejectedException("too many pending connections"));
+                    return;
+                }
+                if (active.get() >= concurrency) {
+                    monitor.admissionDeferred();
+                }
+                Task<T> _task = new Task<>(task, sink, System.currentTimeMillis() + maxWaitMillis);
+                sink.onCancel(_task);
+                queue.offer(_task);
+                //等待超时后直接拒绝,不依赖正在执行的任务释放并发数
+                _task.waitTimer = Schedulers
+                    .parallel()
+                    .schedule(_task::waitTimeout, maxWaitMillis, TimeUnit.MILLISECONDS);
+                drain();
+            });
+    }
+
+    private synchronized boolean tryAcquireToken() {
+        if (rate <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillTime) * rate / 1_000_000_000D);
+        lastRefillTime = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    private void drain() {
+        if (WIP.getAndIncrement(this) != 0) {
+            return;
+        }
+        int missed = 1;
+        for (; ; ) {
+            //只有此处增加active,所以先判断再增加是安全的
+            while (active.get() < concurrency) {
+                Task<?> task = queue.poll();
+                if (task == null) {
+                    break;
+                }
+                //已经等待超时或者取消
+                if (!task.start()) {
+                    continue;
+                }
+                pending.decrementAndGet();
+                active.incrementAndGet();
+                task.run();
+            }
+            missed = WIP.addAndGet(this, -missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    private void release() {
+        active.decrementAndGet();
+        drain();
+    }
+
+    @SuppressWarnings("all")
+    private static final AtomicIntegerFieldUpdater<Task> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(Task.class, "state");
+
+    private static final int STATE_QUEUED = 0, STATE_RUNNING = 1, STATE_REMOVED = 2;
+
+    private class Task<T> implements Disposable {
+        private final Mono<T> task;
+        private final MonoSink<T> sink;
+        private final long deadline;
+
+        //由STATE更新,不能为private
+        volatile int state = STATE_QUEUED;
+        private volatile boolean disposed;
+        private volatile Disposable running;
+        private volatile Disposable waitTimer;
+
+        private Task(Mono<T> task, MonoSink<T> sink, long deadline) {
+            this.task = task;
+            this.sink = sink;
+            this.deadline = deadline;
+        }
+
+        boolean start() {
+            return STATE.compareAndSet(this, STATE_QUEUED, STATE_RUNNING);
+        }
+
+        //从等待队列中移除
+        private boolean remove() {
+            if (STATE.compareAndSet(this, STATE_QUEUED, STATE_REMOVED)) {
+                queue.remove(this);
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        void waitTimeout() {
+            if (remove()) {
+                monitor.admissionRejected();
+                sink.error(new RejectedException("wait timeout"));
+            }
+        }
+
+        void run() {
+            Disposable waitTimer = this.waitTimer;
+            if (waitTimer != null) {
+                waitTimer.dispose();
+            }
+            if (disposed) {
+                release();
+                return;
+            }
+            //等待超时
+            if (System.currentTimeMillis() > deadline) {
+                release();
+                monitor.admissionRejected();
+                sink.error(new RejectedException("wait timeout"));
+                return;
+            }
+            monitor.admissionAccepted();
+            running = task
+                //执行超时,释放并发数
+                .timeout(timeout, Mono.defer(() -> {
+                    monitor.admissionRejected();
+                    return Mono.error(new RejectedException("execute timeout"));
+                }))
+                .doFinally(ignore -> release())
+                .contextWrite(sink.contextView())
+                .subscribe(sink::success, sink::error, sink::success);
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+            if (remove()) {
+                Disposable waitTimer = this.waitTimer;
+                if (waitTimer != null) {
+                    waitTimer.dispose();
+                }
+                return;
+            }
+            Disposable running = this.running;
+            if (running != null) {
+                running.dispose();
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return disposed;
+        }
+    }
+
+    public static class RejectedException extends RuntimeException {
+        public RejectedException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.jetlinks.community.gateway.external.socket;
+
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.gateway.external.Message;
+import org.jetlinks.community.utils.TimeUtils;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * WebSocket会话的消息发送器,会话中所有订阅的消息通过同一个发送管道发送.
+ * <ul>
+ *     <li>缓冲: 待发送的消息超过{@link #DEFAULT_BUFFER_SIZE}时丢弃最早的订阅结果,避免浏览器处理缓慢时占用过多内存.</li>
+ *     <li>批量: 每个周期内的消息合并为一个JSON数组发送.</li>
+ *     <li>合并: 每个周期内同一个订阅相同topic的结果只发送最新的一条.</li>
+ * </ul>
+ * 批量和合并可以通过连接参数开启,如: <code>/messaging/{token}?batch=true&amp;conflate=true</code>.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+class WebSocketMessageSender {
+
+    //最大待发送消息数量
+    static final int DEFAULT_BUFFER_SIZE = Integer.getInteger("messaging.websocket.buffer-size", 1024);
+
+    //开启批量或者合并时的发送周期
+    static final Duration DEFAULT_FLUSH_INTERVAL = TimeUtils.parse(
+        System.getProperty("messaging.websocket.flush-interval", "100ms"));
+
+    static final boolean DEFAULT_BATCH = Boolean.getBoolean("messaging.websocket.batch");
+
+    static final boolean DEFAULT_CONFLATE = Boolean.getBoolean("messaging.websocket.conflate");
+
+    private final WebSocketSession session;
+
+    private final int bufferSize;
+
+    private final boolean batch;
+
+    private final boolean conflate;
+
+    private final Duration flushInterval;
+
+    //待发送的消息,合并时key为订阅ID和topic
+    private final Map<Object, Message> pending = new LinkedHashMap<>();
+
+    private boolean scheduled;
+
+    private long dropped;
+
+    private FluxSink<Boolean> signal;
+
+    WebSocketMessageSender(WebSocketSession session) {
+        this.session = session;
+        this.bufferSize = Math.max(1, DEFAULT_BUFFER_SIZE);
+
+        MultiValueMap<String, String> params = UriComponentsBuilder
+            .fromUri(session.getHandshakeInfo().getUri())
+            .build()
+            .getQueryParams();
+        this.batch = getBoolean(params, "batch", DEFAULT_BATCH);
+        this.conflate = getBoolean(params, "conflate", DEFAULT_CONFLATE);
+        this.flushInterval = batch || conflate ? DEFAULT_FLUSH_INTERVAL : Duration.ZERO;
+    }
+
+    private static boolean getBoolean(MultiValueMap<String, String> params, String key, boolean defaultValue) {
+        String value = params.getFirst(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * 开始发送消息,会话结束时完成.
+     *
+     * @return void
+     */
+    Mono<Void> start() {
+        return session.send(
+            Flux
+                .<Boolean>create(sink -> {
+                    boolean schedule;
+                    synchronized (this) {
+                        this.signal = sink;
+                        schedule = scheduled;
+                    }
+                    if (schedule) {
+                        sink.next(true);
+                    }
+                })
+                .concatMap(ignore -> flushInterval.isZero() || flushInterval.isNegative()
+                    ? Flux.fromIterable(drain())
+                    : Mono.delay(flushInterval).flatMapIterable(i -> drain()), 1)
+        );
+    }
+
+    void complete() {
+        FluxSink<Boolean> signal;
+        synchronized (this) {
+            signal = this.signal;
+            pending.clear();
+        }
+        if (signal != null) {
+            signal.complete();
+        }
+    }
+
+    void send(Message message) {
+        FluxSink<Boolean> signal = null;
+        synchronized (this) {
+            Object key = conflate && message.getType() == Message.Type.result
+                ? message.getRequestId() + ":" + message.getTopic()
+                : new Object();
+            pending.put(key, message);
+            if (pending.size() > bufferSize) {
+                dropOldest();
+            }
+            if (!scheduled) {
+                scheduled = true;
+                signal = this.signal;
+            }
+        }
+        if (signal != null) {
+            signal.next(true);
+        }
+    }
+
+    //丢弃最早的订阅结果,其他类型的消息(完成,错误等)不丢弃
+    private void dropOldest() {
+        Iterator<Message> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getType() == Message.Type.result) {
+                iterator.remove();
+                if (dropped++ % bufferSize == 0) {
+                    log.warn("websocket session [{}] is too slow, dropped {} messages", session.getId(), dropped);
+                }
+                return;
+            }
+        }
+    }
+
+    private List<WebSocketMessage> drain() {
+        List<Message> messages;
+        synchronized (this) {
+            scheduled = false;
+            if (pending.isEmpty()) {
+                return Collections.emptyList();
+            }
+            messages = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        if (batch) {
+            return Collections.singletonList(session.textMessage(JSON.toJSONString(messages)));
+        }
+        List<WebSocketMessage> frames = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            frames.add(session.textMessage(JSON.toJSONString(message)));
+        }
+        return frames;
+    }
+}
@@ -40,6 +40,21 @@ class CompositeDeviceGatewayMonitor implements DeviceGatewayMonitor {
         doWith(DeviceGatewayMonitor::rejected);
     }
 
+    @Override
+    public void admissionAccepted() {
+        doWith(DeviceGatewayMonitor::admissionAccepted);
+    }
+
+    @Override
+    public void admissionDeferred() {
+        doWith(DeviceGatewayMonitor::admissionDeferred);
+    }
+
+    @Override
+    public void admissionRejected() {
+        doWith(DeviceGatewayMonitor::admissionRejected);
+    }
+
     @Override
     public void disconnected() {
         doWith(DeviceGatewayMonitor::disconnected);
@@ -22,6 +22,27 @@ public interface DeviceGatewayMonitor {
      */
     void rejected();
 
+    /**
+     * 连接通过准入控制,开始认证
+     */
+    default void admissionAccepted() {
+
+    }
+
+    /**
+     * 连接由于并发认证数量已满,进入等待队列
+     */
+    default void admissionDeferred() {
+
+    }
+
+    /**
+     * 连接由于速率限制或者等待超时被拒绝
+     */
+    default void admissionRejected() {
+
+    }
+
     /**
      * 断开连接
      */
@@ -35,6 +35,21 @@ class LazyDeviceGatewayMonitor implements DeviceGatewayMonitor {
         getTarget().rejected();
     }
 
+    @Override
+    public void admissionAccepted() {
+        getTarget().admissionAccepted();
+    }
+
+    @Override
+    public void admissionDeferred() {
+        getTarget().admissionDeferred();
+    }
+
+    @Override
+    public void admissionRejected() {
+        getTarget().admissionRejected();
+    }
+
     @Override
     public void disconnected() {
         getTarget().disconnected();
@@ -28,6 +28,9 @@ class MicrometerDeviceGatewayMonitor implements DeviceGatewayMonitor {
         this.disconnected = getCounter("disconnected");
         this.sentMessage = getCounter("sent_message");
         this.receivedMessage = getCounter("received_message");
+        this.admissionAccepted = getCounter("admission_accepted");
+        this.admissionDeferred = getCounter("admission_deferred");
+        this.admissionRejected = getCounter("admission_rejected");
     }
 
     final Counter connected;
@@ -35,6 +38,9 @@ class MicrometerDeviceGatewayMonitor implements DeviceGatewayMonitor {
     final Counter disconnected;
     final Counter receivedMessage;
     final Counter sentMessage;
+    final Counter admissionAccepted;
+    final Counter admissionDeferred;
+    final Counter admissionRejected;
 
 
     private Counter getCounter(String target) {
@@ -60,6 +66,21 @@ class MicrometerDeviceGatewayMonitor implements DeviceGatewayMonitor {
         rejected.increment();
     }
 
+    @Override
+    public void admissionAccepted() {
+        admissionAccepted.increment();
+    }
+
+    @Override
+    public void admissionDeferred() {
+        admissionDeferred.increment();
+    }
+
+    @Override
+    public void admissionRejected() {
+        admissionRejected.increment();
+    }
+
     @Override
     public void disconnected() {
         disconnected.increment();
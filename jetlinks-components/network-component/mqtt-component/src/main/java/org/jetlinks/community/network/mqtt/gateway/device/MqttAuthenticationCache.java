@@ -0,0 +1,89 @@
+package org.jetlinks.community.network.mqtt.gateway.device;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.SneakyThrows;
+import org.jetlinks.community.utils.TimeUtils;
+import org.jetlinks.core.device.AuthenticationResponse;
+import org.jetlinks.core.server.mqtt.MqttAuth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+
+/**
+ * MQTT认证结果缓存,设备在短时间内使用相同的用户名密码重连时,不再重复执行协议认证.
+ * <p>
+ * 只缓存认证成功的结果,用户名密码只保存摘要.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+class MqttAuthenticationCache {
+
+    static final Duration DEFAULT_TTL = TimeUtils.parse(System.getProperty("gateway.mqtt.auth-cache-ttl", "30s"));
+
+    static final int DEFAULT_MAX_SIZE = Integer.getInteger("gateway.mqtt.auth-cache-size", 100_000);
+
+    //为null时不缓存
+    private final Cache<String, Entry> cache;
+
+    MqttAuthenticationCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_SIZE);
+    }
+
+    MqttAuthenticationCache(Duration ttl, int maxSize) {
+        if (ttl.isZero() || ttl.isNegative() || maxSize <= 0) {
+            cache = null;
+        } else {
+            cache = Caffeine
+                .newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .build();
+        }
+    }
+
+    AuthenticationResponse get(String clientId, MqttAuth auth) {
+        if (cache == null) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(clientId);
+        if (entry == null) {
+            return null;
+        }
+        if (MessageDigest.isEqual(entry.digest, digest(auth))) {
+            return entry.response;
+        }
+        //认证信息已变更
+        cache.invalidate(clientId);
+        return null;
+    }
+
+    void put(String clientId, MqttAuth auth, AuthenticationResponse response) {
+        if (cache == null || !response.isSuccess()) {
+            return;
+        }
+        cache.put(clientId, new Entry(digest(auth), response));
+    }
+
+    @SneakyThrows
+    private static byte[] digest(MqttAuth auth) {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        if (auth.getUsername() != null) {
+            digest.update(auth.getUsername().getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+        if (auth.getPassword() != null) {
+            digest.update(auth.getPassword().getBytes(StandardCharsets.UTF_8));
+        }
+        return digest.digest();
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final byte[] digest;
+        private final AuthenticationResponse response;
+    }
+}
@@ -7,6 +7,7 @@ import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.jetlinks.community.gateway.AbstractDeviceGateway;
+import org.jetlinks.community.gateway.DeviceGatewayAdmission;
 import org.jetlinks.community.gateway.DeviceGatewayHelper;
 import org.jetlinks.community.network.mqtt.gateway.device.session.MqttConnectionSession;
 import org.jetlinks.community.network.mqtt.server.MqttConnection;
@@ -92,6 +93,12 @@ class MqttServerDeviceGateway extends AbstractDeviceGateway {
     //设备网关消息处理工具类
     private final DeviceGatewayHelper helper;
 
+    //连接准入控制,防止大量设备同时重连时压垮认证
+    private final DeviceGatewayAdmission admission;
+
+    //认证结果缓存
+    private final MqttAuthenticationCache authenticationCache = new MqttAuthenticationCache();
+
     public MqttServerDeviceGateway(String id,
                                    DeviceRegistry registry,
                                    DeviceSessionManager sessionManager,
@@ -105,6 +112,7 @@ class MqttServerDeviceGateway extends AbstractDeviceGateway {
         this.messageHandler = messageHandler;
         this.supportMono = customProtocol;
         this.helper = new DeviceGatewayHelper(registry, sessionManager, messageHandler);
+        this.admission = new DeviceGatewayAdmission(monitor);
     }
 
     private void doStart() {
@@ -124,9 +132,16 @@ class MqttServerDeviceGateway extends AbstractDeviceGateway {
                 return true;
             })
             //处理mqtt连接请求
-            .flatMap(connection -> this
-                         .handleConnection(connection)
-                         .flatMap(tuple3 -> handleAuthResponse(tuple3.getT1(), tuple3.getT2(), tuple3.getT3()))
+            .flatMap(connection -> admission
+                         //认证和注册会话
+                         .execute(this
+                                      .handleConnection(connection)
+                                      .flatMap(tuple3 -> handleAuthResponse(tuple3.getT1(), tuple3.getT2(), tuple3.getT3())))
+                         //超过准入限制,随机延迟后应答SERVER_UNAVAILABLE,分散设备的重连时间.拒绝次数已由准入控制记录
+                         .onErrorResume(DeviceGatewayAdmission::isRejected, err -> Mono
+                             .delay(admission.nextRejectDelay())
+                             .then(Mono.fromRunnable(
+                                 () -> connection.reject(MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE))))
                          .flatMap(tp -> handleAcceptedMqttConnection(tp.getT1(), tp.getT2(), tp.getT3()))
                          .onErrorResume(err -> {
                              log.error(err.getMessage(), err);
@@ -142,6 +157,11 @@ class MqttServerDeviceGateway extends AbstractDeviceGateway {
         return Mono
             .justOrEmpty(connection.getAuth())
             .flatMap(auth -> {
+                //短时间内重连,使用缓存的认证结果
+                AuthenticationResponse cached = authenticationCache.get(connection.getClientId(), auth);
+                if (cached != null) {
+                    return Mono.just(cached);
+                }
                 MqttAuthenticationRequest request = new MqttAuthenticationRequest(
                     connection.getClientId(),
                     auth.getUsername(),
@@ -155,6 +175,7 @@ class MqttServerDeviceGateway extends AbstractDeviceGateway {
                         .getDevice(connection.getClientId())
                         .flatMap(device -> device.authenticate(request))))
                     .flatMap(Function.identity())
+                    .doOnNext(resp -> authenticationCache.put(connection.getClientId(), auth, resp))
                     //如果认证结果返回空,说明协议没有设置认证,或者认证返回不对,默认返回BAD_USER_NAME_OR_PASSWORD,防止由于协议编写不当导致mqtt任意访问的安全问题.
                     .switchIfEmpty(Mono.fromRunnable(() -> connection.reject(MqttConnectReturnCode.CONNECTION_REFUSED_BAD_USER_NAME_OR_PASSWORD)));
             })
@@ -67,6 +67,7 @@ public class DefaultVertxMqttServerProvider implements NetworkProvider<VertxMqtt
                     instances.add(mqttServer);
                 }
                 server.setBind(new InetSocketAddress(options.getHost(), options.getPort()));
+                server.setWatermark(properties.getHighWatermark(), properties.getLowWatermark());
                 server.setMqttServer(instances);
                 for (MqttServer instance : instances) {
                    vertx.nettyEventLoopGroup()
@@ -7,7 +7,10 @@ import io.netty.handler.codec.mqtt.MqttConnectReturnCode;
 import io.netty.handler.codec.mqtt.MqttProperties;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.util.ReferenceCountUtil;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetSocket;
 import io.vertx.core.net.SocketAddress;
 import io.vertx.mqtt.MqttEndpoint;
 import io.vertx.mqtt.MqttTopicSubscription;
@@ -33,6 +36,9 @@ import java.net.InetSocketAddress;
 import java.time.Duration;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -58,14 +64,37 @@ class VertxMqttConnection implements MqttConnection {
             return "";
         }
     };
+    //订阅请求缓冲区大小,订阅请求很少,正常情况下不会积压
+    static final int SUBSCRIPTION_BUFFER_SIZE = Integer.getInteger("jetlinks.mqtt.server.subscription-buffer-size", 256);
+
+    //消息数量由流量控制限制(pending),无需再限制缓冲区大小
     private final Sinks.Many<MqttPublishing> messageProcessor = Reactors.createMany(Integer.MAX_VALUE, false);
-    private final Sinks.Many<MqttSubscription> subscription = Reactors.createMany(Integer.MAX_VALUE, false);
-    private final Sinks.Many<MqttUnSubscription> unsubscription = Reactors.createMany(Integer.MAX_VALUE, false);
+    private final Sinks.Many<MqttSubscription> subscription = Reactors.createMany(SUBSCRIPTION_BUFFER_SIZE, false);
+    private final Sinks.Many<MqttUnSubscription> unsubscription = Reactors.createMany(SUBSCRIPTION_BUFFER_SIZE, false);
+
+
+    private final VertxMqttFlowControl flowControl;
+
+    //待处理的消息数量
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final NetSocket socket;
+    //连接所在的上下文,暂停和恢复读取都在此上下文中执行
+    private final Context context;
+    private volatile boolean paused;
 
+    private final AtomicBoolean resumeScheduled = new AtomicBoolean();
 
-    public VertxMqttConnection(MqttEndpoint endpoint) {
+    @SuppressWarnings("all")
+    static final AtomicIntegerFieldUpdater<VertxMqttPublishing> DEQUEUED =
+        AtomicIntegerFieldUpdater.newUpdater(VertxMqttPublishing.class, "dequeued");
+
+    public VertxMqttConnection(MqttEndpoint endpoint, VertxMqttFlowControl flowControl) {
         this.endpoint = endpoint;
+        this.flowControl = flowControl;
         this.keepAliveTimeoutMs = (endpoint.keepAliveTimeSeconds() + 10) * 1000L;
+        this.socket = VertxMqttFlowControl.getSocket(endpoint);
+        this.context = Vertx.currentContext();
     }
 
     private final Consumer<MqttConnection> defaultListener = mqttConnection -> {
@@ -174,11 +203,16 @@ class VertxMqttConnection implements MqttConnection {
                 ping();
                 VertxMqttPublishing publishing = new VertxMqttPublishing(msg, false);
                 boolean hasDownstream = this.messageProcessor.currentSubscriberCount() > 0;
-                if (autoAckMsg && hasDownstream) {
+                if (!hasDownstream || !enqueue()) {
+                    return;
+                }
+                if (autoAckMsg) {
                     publishing.acknowledge();
                 }
-                if (hasDownstream) {
-                    this.messageProcessor.emitNext(publishing, Reactors.emitFailureHandler());
+                this.messageProcessor.emitNext(publishing, Reactors.emitFailureHandler());
+                //队列已满,暂停读取
+                if (pending.get() >= flowControl.getHighWatermark()) {
+                    pause();
                 }
             })
             //QoS 1 PUBACK
@@ -210,8 +244,10 @@ class VertxMqttConnection implements MqttConnection {
                 if (autoAckSub || !hasDownstream) {
                     subscription.acknowledge();
                 }
-                if (hasDownstream) {
-                    this.subscription.emitNext(subscription, Reactors.emitFailureHandler());
+                if (hasDownstream && this.subscription.tryEmitNext(subscription).isFailure()) {
+                    //缓冲区已满,直接应答,避免客户端一直等待
+                    log.warn("mqtt client [{}] subscription overflow,drop subscribe {}", getClientId(), msg.messageId());
+                    subscription.acknowledge();
                 }
             })
             .unsubscribeHandler(msg -> {
@@ -221,8 +257,9 @@ class VertxMqttConnection implements MqttConnection {
                 if (autoAckUnSub || !hasDownstream) {
                     unSubscription.acknowledge();
                 }
-                if (hasDownstream) {
-                    this.unsubscription.emitNext(unSubscription, Reactors.emitFailureHandler());
+                if (hasDownstream && this.unsubscription.tryEmitNext(unSubscription).isFailure()) {
+                    log.warn("mqtt client [{}] unsubscription overflow,drop unsubscribe {}", getClientId(), msg.messageId());
+                    unSubscription.acknowledge();
                 }
             });
     }
@@ -256,7 +293,73 @@ class VertxMqttConnection implements MqttConnection {
 
     @Override
     public Flux<MqttPublishing> handleMessage() {
-        return messageProcessor.asFlux();
+        return messageProcessor
+            .asFlux()
+            .doOnNext(this::dequeue);
+    }
+
+    //消息进入队列,无法暂停读取并且队列已满时返回false
+    private boolean enqueue() {
+        int size = pending.incrementAndGet();
+        if ((socket == null || context == null) && size > flowControl.getHighWatermark() * 2) {
+            pending.decrementAndGet();
+            flowControl.dropped();
+            log.warn("mqtt client [{}] pending message overflow,drop message", getClientId());
+            return false;
+        }
+        return true;
+    }
+
+    //消息可能有多个订阅者,每条消息只出队一次
+    private void dequeue(MqttPublishing publishing) {
+        if (publishing instanceof VertxMqttPublishing
+            && DEQUEUED.compareAndSet((VertxMqttPublishing) publishing, 0, 1)) {
+            dequeue();
+        }
+    }
+
+    private void dequeue() {
+        //Dekker: 先修改pending再读取paused,pause()中先修改paused再读取pending
+        if (pending.decrementAndGet() <= flowControl.getLowWatermark() && paused) {
+            scheduleResume();
+        }
+    }
+
+    //在连接所在的上下文中恢复读取,同时只调度一次
+    private void scheduleResume() {
+        if (resumeScheduled.compareAndSet(false, true)) {
+            context.runOnContext(ignore -> {
+                resumeScheduled.set(false);
+                resume();
+            });
+        }
+    }
+
+    //在连接所在的线程中执行
+    private void pause() {
+        if (paused || socket == null || context == null || closed) {
+            return;
+        }
+        paused = true;
+        socket.pause();
+        flowControl.paused();
+        log.debug("mqtt client [{}] pending messages reached {},pause reading", getClientId(), pending.get());
+        //暂停前队列已经被消费
+        if (pending.get() <= flowControl.getLowWatermark()) {
+            resume();
+        }
+    }
+
+    private void resume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        flowControl.resumed();
+        if (!closed) {
+            socket.resume();
+            log.debug("mqtt client [{}] resume reading", getClientId());
+        }
     }
 
     @Override
@@ -352,17 +455,27 @@ class VertxMqttConnection implements MqttConnection {
             return;
         }
         closed = true;
+        if (paused && context != null) {
+            scheduleResume();
+        }
         disconnectConsumer.accept(this);
     }
 
 
-    @AllArgsConstructor
     class VertxMqttPublishing implements MqttPublishing {
 
         private final MqttPublishMessage message;
 
         private volatile boolean acknowledged;
 
+        //是否已出队
+        volatile int dequeued;
+
+        VertxMqttPublishing(MqttPublishMessage message, boolean acknowledged) {
+            this.message = message;
+            this.acknowledged = acknowledged;
+        }
+
         @Nonnull
         @Override
         public String getTopic() {
@@ -0,0 +1,173 @@
+package org.jetlinks.community.network.mqtt.server.vertx;
+
+import io.vertx.core.net.NetSocket;
+import io.vertx.mqtt.MqttEndpoint;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MQTT连接流量控制.
+ * <p>
+ * 每个连接中待处理的消息数量达到高水位时暂停读取(TCP背压),降低到低水位时恢复读取.
+ * 无法暂停读取时,待处理消息超过高水位的2倍后将丢弃消息且不应答.
+ * MQTT 3.1.1的客户端只会在重新连接后重发未应答的QoS1,2消息,在此之前这些消息不会被处理.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+class VertxMqttFlowControl {
+
+    static final int DEFAULT_HIGH_WATERMARK = Integer.getInteger("jetlinks.mqtt.server.high-watermark", 256);
+    static final int DEFAULT_LOW_WATERMARK = Integer.getInteger("jetlinks.mqtt.server.low-watermark", 64);
+
+    private static final Map<Class<?>, Field> SOCKET_FIELDS = new ConcurrentHashMap<>();
+
+    private final String id;
+
+    @Getter
+    private volatile int highWatermark = DEFAULT_HIGH_WATERMARK;
+
+    @Getter
+    private volatile int lowWatermark = DEFAULT_LOW_WATERMARK;
+
+    private final AtomicInteger pausedConnections = new AtomicInteger();
+    private final LongAdder pauses = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private ObjectName objectName;
+
+    VertxMqttFlowControl(String id) {
+        this.id = id;
+    }
+
+    void setWatermark(int highWatermark, int lowWatermark) {
+        if (highWatermark <= 0) {
+            highWatermark = DEFAULT_HIGH_WATERMARK;
+        }
+        if (lowWatermark <= 0 || lowWatermark >= highWatermark) {
+            lowWatermark = Math.max(1, highWatermark / 4);
+        }
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    void paused() {
+        pausedConnections.incrementAndGet();
+        pauses.increment();
+    }
+
+    void resumed() {
+        pausedConnections.decrementAndGet();
+    }
+
+    void dropped() {
+        dropped.increment();
+    }
+
+    /**
+     * 获取MQTT连接底层的NetSocket,用于暂停和恢复读取.
+     *
+     * @param endpoint MqttEndpoint
+     * @return NetSocket, 获取失败时返回null
+     */
+    static NetSocket getSocket(MqttEndpoint endpoint) {
+        try {
+            Field field = SOCKET_FIELDS.computeIfAbsent(endpoint.getClass(), VertxMqttFlowControl::lookupSocketField);
+            return field == null ? null : (NetSocket) field.get(endpoint);
+        } catch (Throwable error) {
+            log.warn("can not get socket from mqtt endpoint {}", endpoint.getClass(), error);
+            return null;
+        }
+    }
+
+    private static Field lookupSocketField(Class<?> clazz) {
+        for (Class<?> type = clazz; type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (NetSocket.class.isAssignableFrom(field.getType())) {
+                    field.setAccessible(true);
+                    return field;
+                }
+            }
+        }
+        log.warn("mqtt endpoint {} does not support flow control", clazz);
+        return null;
+    }
+
+    void registerMbean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.jetlinks:type=MqttServer,name=" + ObjectName.quote(id));
+            if (mBeanServer.isRegistered(name)) {
+                return;
+            }
+            mBeanServer.registerMBean(new StandardMBean(new FlowControlMBeanImpl(), FlowControlMBean.class), name);
+            //只注销自己注册的MBean
+            objectName = name;
+        } catch (Throwable error) {
+            log.warn("registerMBean MqttServer [{}] error ", id, error);
+        }
+    }
+
+    void unregisterMbean() {
+        try {
+            if (objectName != null) {
+                MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                mBeanServer.unregisterMBean(objectName);
+                objectName = null;
+            }
+        } catch (Throwable ignore) {
+        }
+    }
+
+    private class FlowControlMBeanImpl implements FlowControlMBean {
+
+        @Override
+        public int getHighWatermark() {
+            return highWatermark;
+        }
+
+        @Override
+        public int getLowWatermark() {
+            return lowWatermark;
+        }
+
+        @Override
+        public int getPausedConnections() {
+            return pausedConnections.get();
+        }
+
+        @Override
+        public long getPauses() {
+            return pauses.sum();
+        }
+
+        @Override
+        public long getDropped() {
+            return dropped.sum();
+        }
+    }
+
+    public interface FlowControlMBean {
+
+        int getHighWatermark();
+
+        int getLowWatermark();
+
+        int getPausedConnections();
+
+        long getPauses();
+
+        long getDropped();
+    }
+}
@@ -40,8 +40,16 @@ public class VertxMqttServer implements MqttServer {
     @Setter(AccessLevel.PACKAGE)
     private InetSocketAddress bind;
 
+    //连接流量控制
+    private final VertxMqttFlowControl flowControl;
+
     public VertxMqttServer(String id) {
         this.id = id;
+        this.flowControl = new VertxMqttFlowControl(id);
+    }
+
+    void setWatermark(int highWatermark, int lowWatermark) {
+        flowControl.setWatermark(highWatermark, lowWatermark);
     }
 
     public void setMqttServer(Collection<io.vertx.mqtt.MqttServer> mqttServer) {
@@ -55,9 +63,10 @@ public class VertxMqttServer implements MqttServer {
                     log.error(error.getMessage(), error);
                 })
                 .endpointHandler(endpoint -> {
-                    handleConnection(new VertxMqttConnection(endpoint));
+                    handleConnection(new VertxMqttConnection(endpoint, flowControl));
                 });
         }
+        flowControl.registerMbean();
     }
 
     private boolean emitNext(Sinks.Many<MqttConnection> sink, VertxMqttConnection connection){
@@ -142,6 +151,7 @@ public class VertxMqttServer implements MqttServer {
             }
             mqttServer.clear();
         }
+        flowControl.unregisterMbean();
 
     }
 
@@ -17,6 +17,12 @@ public class VertxMqttServerProperties extends AbstractServerNetworkConfig {
     //最大消息长度
     private int maxMessageSize = 8096;
 
+    //单个连接待处理消息数量达到此值时暂停读取
+    private int highWatermark = VertxMqttFlowControl.DEFAULT_HIGH_WATERMARK;
+
+    //单个连接待处理消息数量降低到此值时恢复读取
+    private int lowWatermark = VertxMqttFlowControl.DEFAULT_LOW_WATERMARK;
+
     @Override
     public NetworkTransport getTransport() {
         return NetworkTransport.TCP;
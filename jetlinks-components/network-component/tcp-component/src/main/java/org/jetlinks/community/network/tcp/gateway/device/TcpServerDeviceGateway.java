@@ -25,6 +25,7 @@ import org.jetlinks.community.network.NetworkType;
 import org.jetlinks.community.network.tcp.TcpMessage;
 import org.jetlinks.community.network.tcp.client.TcpClient;
 import org.jetlinks.community.network.tcp.server.TcpServer;
+import org.jetlinks.community.gateway.DeviceGatewayAdmission;
 import org.jetlinks.community.gateway.DeviceGatewayHelper;
 import org.jetlinks.community.utils.TimeUtils;
 import org.jetlinks.supports.server.DecodedClientMessageHandler;
@@ -59,6 +60,9 @@ class TcpServerDeviceGateway extends AbstractDeviceGateway implements DeviceGate
 
     private final DeviceGatewayHelper helper;
 
+    //连接准入控制,限制新连接的速率
+    private final DeviceGatewayAdmission admission;
+
     //连接检查超时时间,超过时间连接没有被正确处理返回会话,将被自动断开连接
     @Setter
     private Duration connectCheckTimeout = TimeUtils.parse(System.getProperty("gateway.tcp.network.connect-check-timeout", "10s"));
@@ -75,6 +79,7 @@ class TcpServerDeviceGateway extends AbstractDeviceGateway implements DeviceGate
         this.tcpServer = tcpServer;
         this.sessionManager = sessionManager;
         this.helper = new DeviceGatewayHelper(registry, sessionManager, clientMessageHandler);
+        this.admission = new DeviceGatewayAdmission(monitor);
     }
 
     @Override
@@ -223,12 +228,21 @@ class TcpServerDeviceGateway extends AbstractDeviceGateway implements DeviceGate
 //                closeClient(client);
 //            })
             .publishOn(Schedulers.parallel())
-            .flatMap(client -> new TcpConnection(client)
-                         .accept()
-                         .onErrorResume(err -> {
-                             log.error("handle tcp client[{}] error", client.getRemoteAddress(), err);
-                             return Mono.empty();
-                         })
+            .flatMap(client -> {
+                         //超过连接速率,随机延迟后断开,分散设备的重连时间.拒绝次数已由准入控制记录
+                         if (!admission.tryAcquire()) {
+                             return Mono
+                                 .delay(admission.nextRejectDelay())
+                                 .doOnNext(ignore -> closeClient(client))
+                                 .then();
+                         }
+                         return new TcpConnection(client)
+                             .accept()
+                             .onErrorResume(err -> {
+                                 log.error("handle tcp client[{}] error", client.getRemoteAddress(), err);
+                                 return Mono.empty();
+                             });
+                     }
                 , Integer.MAX_VALUE)
             .contextWrite(ReactiveLogger.start("network", tcpServer.getId()))
             .subscribe(
@@ -1,13 +1,14 @@
 package org.jetlinks.community.network.tcp.parser.strateies;
 
-import io.vertx.core.buffer.Buffer;
-import io.vertx.core.parsetools.RecordParser;
 import lombok.SneakyThrows;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.text.StringEscapeUtils;
+import org.jetlinks.community.network.tcp.parser.PayloadParser;
+import org.jetlinks.community.network.tcp.parser.PayloadParserBuilderStrategy;
 import org.jetlinks.community.network.tcp.parser.PayloadParserType;
 import org.jetlinks.community.ValueObject;
 
+import java.nio.charset.StandardCharsets;
 import java.util.function.Supplier;
 
 /**
@@ -19,29 +20,33 @@ import java.util.function.Supplier;
  * @author zhouhao
  * @since 1.0
  */
-public class DelimitedPayloadParserBuilder extends VertxPayloadParserBuilder {
+public class DelimitedPayloadParserBuilder implements PayloadParserBuilderStrategy {
     @Override
     public PayloadParserType getType() {
         return PayloadParserType.DELIMITED;
     }
 
     @Override
-    @SneakyThrows
-    protected Supplier<RecordParser> createParser(ValueObject config) {
+    public Supplier<PayloadParser> buildLazy(ValueObject config) {
+        return FramePayloadParser
+            .delimited(getDelimiter(config))
+            .supplier();
+    }
 
+    @SneakyThrows
+    private byte[] getDelimiter(ValueObject config) {
         String delimited = config
             .getString("delimited")
             .map(String::trim)
             .orElseThrow(() -> new IllegalArgumentException("delimited can not be null"));
 
         if (delimited.startsWith("0x")) {
-
-            byte[] hex = Hex.decodeHex(delimited.substring(2));
-            return () -> RecordParser
-                .newDelimited(Buffer.buffer(hex));
+            return Hex.decodeHex(delimited.substring(2));
         }
-
-        return () -> RecordParser.newDelimited(StringEscapeUtils.unescapeJava(delimited));
+        //与RecordParser.newDelimited(String)一致,使用ISO-8859-1编码
+        return StringEscapeUtils
+            .unescapeJava(delimited)
+            .getBytes(StandardCharsets.ISO_8859_1);
     }
 
 
@@ -1,6 +1,7 @@
 package org.jetlinks.community.network.tcp.parser.strateies;
 
-import io.vertx.core.parsetools.RecordParser;
+import org.jetlinks.community.network.tcp.parser.PayloadParser;
+import org.jetlinks.community.network.tcp.parser.PayloadParserBuilderStrategy;
 import org.jetlinks.community.network.tcp.parser.PayloadParserType;
 import org.jetlinks.community.ValueObject;
 
@@ -12,18 +13,22 @@ import java.util.function.Supplier;
  * @author zhouhao
  * @since 1.0
  */
-public class FixLengthPayloadParserBuilder extends VertxPayloadParserBuilder {
+public class FixLengthPayloadParserBuilder implements PayloadParserBuilderStrategy {
     @Override
     public PayloadParserType getType() {
         return PayloadParserType.FIXED_LENGTH;
     }
 
     @Override
-    protected Supplier<RecordParser> createParser(ValueObject config) {
-        int size = config.getInt("size")
-                         .orElseThrow(() -> new IllegalArgumentException("size can not be null"));
+    public Supplier<PayloadParser> buildLazy(ValueObject config) {
+        return FramePayloadParser
+            .fixed(getSize(config))
+            .supplier();
+    }
 
-        return () -> RecordParser.newFixed(size);
+    private int getSize(ValueObject config) {
+        return config.getInt("size")
+                     .orElseThrow(() -> new IllegalArgumentException("size can not be null"));
     }
 
 
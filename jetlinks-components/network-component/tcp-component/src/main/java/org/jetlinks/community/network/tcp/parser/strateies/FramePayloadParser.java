@@ -0,0 +1,340 @@
+package org.jetlinks.community.network.tcp.parser.strateies;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.network.tcp.parser.PayloadParser;
+import org.jetlinks.core.utils.Reactors;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.function.Supplier;
+
+/**
+ * 基于固定规则的粘拆包解析器,规则({@link Frame})在创建时解析一次,所有连接共享.
+ * <p>
+ * 完整的数据包直接使用收到数据的切片,不进行复制.只有数据包被拆分到多次接收时,才会将不完整的部分缓存起来.
+ *
+ * <pre>{@code
+ *   Supplier<PayloadParser> supplier = FramePayloadParser.lengthField(0, 4, false).supplier();
+ * }</pre>
+ *
+ * @author zhouhao
+ * @see FixLengthPayloadParserBuilder
+ * @see DelimitedPayloadParserBuilder
+ * @see org.jetlinks.community.network.tcp.parser.LengthFieldPayloadParserBuilder
+ * @since 2.3
+ */
+@Slf4j
+public class FramePayloadParser implements PayloadParser {
+
+    //单个数据包最大长度
+    static final int MAX_FRAME_LENGTH = Integer.getInteger("jetlinks.tcp.parser.max-frame-length", 10 * 1024 * 1024);
+
+    private final Sinks.Many<Buffer> sink = Reactors.createMany();
+
+    private final Frame frame;
+
+    //不完整的数据
+    private ByteBuf cumulation = Unpooled.EMPTY_BUFFER;
+
+    //分隔符已经查找过的位置
+    private int scanned;
+
+    public FramePayloadParser(Frame frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * 每次读取固定长度的数据包
+     *
+     * @param size 长度
+     * @return 规则
+     */
+    public static Frame fixed(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("illegal size:" + size);
+        }
+        return new FixedFrame(size);
+    }
+
+    /**
+     * 按分隔符读取数据包,数据包中不包含分隔符
+     *
+     * @param delimiter 分隔符
+     * @return 规则
+     */
+    public static Frame delimited(byte[] delimiter) {
+        if (delimiter == null || delimiter.length == 0) {
+            throw new IllegalArgumentException("delimiter can not be empty");
+        }
+        return new DelimitedFrame(delimiter.clone());
+    }
+
+    /**
+     * 使用长度字段读取数据包,数据包中包含长度字段以及之前的数据
+     *
+     * @param offset 长度字段偏移量
+     * @param length 长度字段字节数,支持1,2,3,4,8
+     * @param little 是否为小端模式
+     * @return 规则
+     */
+    public static Frame lengthField(int offset, int length, boolean little) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("illegal offset:" + offset);
+        }
+        switch (length) {
+            case 1:
+            case 2:
+            case 3:
+            case 4:
+            case 8:
+                return new LengthFieldFrame(offset, length, little);
+            default:
+                throw new IllegalArgumentException("illegal length:" + length);
+        }
+    }
+
+    @Override
+    public synchronized void handle(Buffer buffer) {
+        ByteBuf in = buffer.getByteBuf();
+        try {
+            //补齐上一次不完整的数据包
+            if (cumulation.isReadable() && !fillCumulation(in)) {
+                return;
+            }
+            decode(in, false);
+            //剩余不完整的数据
+            if (in.isReadable()) {
+                cumulation = Unpooled.buffer(in.readableBytes()).writeBytes(in);
+            }
+        } catch (FrameException e) {
+            log.warn("parse tcp payload error: {}", e.getMessage());
+            reset();
+        }
+    }
+
+    //补齐不完整的数据包,返回true表示补齐完成,可以继续处理剩余的数据
+    private boolean fillCumulation(ByteBuf in) {
+        while (in.isReadable()) {
+            int need = frame.need(cumulation);
+            if (need <= 0) {
+                //无法确定需要的长度,全部写入
+                cumulation.writeBytes(in);
+            } else {
+                cumulation.writeBytes(in, Math.min(need, in.readableBytes()));
+            }
+            decode(cumulation, true);
+            if (!cumulation.isReadable()) {
+                cumulation = Unpooled.EMPTY_BUFFER;
+                return true;
+            }
+            if (cumulation.readableBytes() > MAX_FRAME_LENGTH) {
+                throw new FrameException("frame length exceeds " + MAX_FRAME_LENGTH);
+            }
+        }
+        cumulation.discardReadBytes();
+        return false;
+    }
+
+    private void decode(ByteBuf buf, boolean copy) {
+        for (; ; ) {
+            int length = frame.decode(buf, this);
+            if (length < 0) {
+                return;
+            }
+            int payloadLength = frame.payloadLength(length);
+            //缓存的数据会被复用,需要复制
+            ByteBuf payload = copy
+                ? Unpooled.copiedBuffer(buf.slice(buf.readerIndex(), payloadLength))
+                : buf.slice(buf.readerIndex(), payloadLength);
+            buf.skipBytes(length);
+            scanned = 0;
+            sink.emitNext(Buffer.buffer(payload), Reactors.emitFailureHandler());
+        }
+    }
+
+    @Override
+    public Flux<Buffer> handlePayload() {
+        return sink.asFlux();
+    }
+
+    @Override
+    public void close() {
+        sink.tryEmitComplete();
+        reset();
+    }
+
+    @Override
+    public synchronized void reset() {
+        cumulation = Unpooled.EMPTY_BUFFER;
+        scanned = 0;
+    }
+
+    /**
+     * 编译后的粘拆包规则,不可变
+     */
+    public abstract static class Frame {
+
+        /**
+         * 解码数据包
+         *
+         * @param buf    数据
+         * @param parser 解析器
+         * @return 完整数据包占用的字节数, 数据不完整时返回-1
+         */
+        abstract int decode(ByteBuf buf, FramePayloadParser parser);
+
+        /**
+         * 获取数据包中的有效长度
+         *
+         * @param length 数据包占用的字节数
+         * @return 有效长度
+         */
+        int payloadLength(int length) {
+            return length;
+        }
+
+        /**
+         * 获取下一次解码还需要的字节数
+         *
+         * @param buf 不完整的数据
+         * @return 需要的字节数, 无法确定时返回-1
+         */
+        abstract int need(ByteBuf buf);
+
+        public Supplier<PayloadParser> supplier() {
+            return () -> new FramePayloadParser(this);
+        }
+    }
+
+    static class FixedFrame extends Frame {
+        private final int size;
+
+        FixedFrame(int size) {
+            this.size = size;
+        }
+
+        @Override
+        int decode(ByteBuf buf, FramePayloadParser parser) {
+            return buf.readableBytes() >= size ? size : -1;
+        }
+
+        @Override
+        int need(ByteBuf buf) {
+            return size - buf.readableBytes();
+        }
+    }
+
+    static class DelimitedFrame extends Frame {
+        private final byte[] delimiter;
+
+        DelimitedFrame(byte[] delimiter) {
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        int decode(ByteBuf buf, FramePayloadParser parser) {
+            int start = buf.readerIndex();
+            int end = buf.writerIndex() - delimiter.length;
+            byte first = delimiter[0];
+            for (int i = start + parser.scanned; i <= end; i++) {
+                if (buf.getByte(i) != first) {
+                    continue;
+                }
+                if (matches(buf, i)) {
+                    return i - start + delimiter.length;
+                }
+            }
+            //下次从未查找过的位置开始
+            parser.scanned = Math.max(0, end - start + 1);
+            if (buf.readableBytes() > MAX_FRAME_LENGTH) {
+                throw new FrameException("frame length exceeds " + MAX_FRAME_LENGTH);
+            }
+            return -1;
+        }
+
+        private boolean matches(ByteBuf buf, int index) {
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buf.getByte(index + j) != delimiter[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int payloadLength(int length) {
+            return length - delimiter.length;
+        }
+
+        @Override
+        int need(ByteBuf buf) {
+            return -1;
+        }
+    }
+
+    static class LengthFieldFrame extends Frame {
+        private final int offset;
+        private final int length;
+        private final boolean little;
+        private final int headerLength;
+
+        LengthFieldFrame(int offset, int length, boolean little) {
+            this.offset = offset;
+            this.length = length;
+            this.little = little;
+            this.headerLength = offset + length;
+        }
+
+        private long getLength(ByteBuf buf) {
+            int index = buf.readerIndex() + offset;
+            switch (length) {
+                case 1:
+                    return buf.getUnsignedByte(index);
+                case 2:
+                    return little ? buf.getUnsignedShortLE(index) : buf.getUnsignedShort(index);
+                case 3:
+                    return little ? buf.getUnsignedMediumLE(index) : buf.getUnsignedMedium(index);
+                case 4:
+                    return little ? buf.getIntLE(index) : buf.getInt(index);
+                default:
+                    return little ? buf.getLongLE(index) : buf.getLong(index);
+            }
+        }
+
+        private int getFrameLength(ByteBuf buf) {
+            long len = getLength(buf);
+            if (len < 0 || len + headerLength > MAX_FRAME_LENGTH) {
+                throw new FrameException("illegal frame length: " + len);
+            }
+            return (int) len + headerLength;
+        }
+
+        @Override
+        int decode(ByteBuf buf, FramePayloadParser parser) {
+            int readable = buf.readableBytes();
+            if (readable < headerLength) {
+                return -1;
+            }
+            int frameLength = getFrameLength(buf);
+            return readable >= frameLength ? frameLength : -1;
+        }
+
+        @Override
+        int need(ByteBuf buf) {
+            int readable = buf.readableBytes();
+            if (readable < headerLength) {
+                return headerLength - readable;
+            }
+            return getFrameLength(buf) - readable;
+        }
+    }
+
+    static class FrameException extends RuntimeException {
+        FrameException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.jetlinks.community.network.tcp.parser.strateies;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.parsetools.RecordParser;
 import lombok.extern.slf4j.Slf4j;
@@ -8,8 +10,8 @@ import org.jetlinks.core.utils.Reactors;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Sinks;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -44,9 +46,11 @@ public class PipePayloadParser implements PayloadParser {
 
     private final Sinks.Many<Buffer> sink = Reactors.createMany();
 
-    private final List<BiConsumer<Buffer, PipePayloadParser>> pipe = new CopyOnWriteArrayList<>();
+    //只在初始化时修改
+    private final List<BiConsumer<Buffer, PipePayloadParser>> pipe = new ArrayList<>(2);
 
-    private final List<Buffer> result = new CopyOnWriteArrayList<>();
+    //只在handle中修改,由synchronized保护
+    private final List<Buffer> result = new ArrayList<>(2);
 
     private volatile RecordParser recordParser;
 
@@ -128,9 +132,16 @@ public class PipePayloadParser implements PayloadParser {
             firstInit.accept(recordParser);
         }
         if (!this.result.isEmpty()) {
-            Buffer buffer = Buffer.buffer();
-            for (Buffer buf : this.result) {
-                buffer.appendBuffer(buf);
+            Buffer buffer;
+            if (this.result.size() == 1) {
+                buffer = this.result.get(0);
+            } else {
+                //组合为一个buffer,不复制数据
+                ByteBuf[] bufs = new ByteBuf[this.result.size()];
+                for (int i = 0; i < bufs.length; i++) {
+                    bufs[i] = this.result.get(i).getByteBuf();
+                }
+                buffer = Buffer.buffer(Unpooled.wrappedBuffer(bufs));
             }
             this.result.clear();
             sink.emitNext(buffer, Reactors.emitFailureHandler());
@@ -166,13 +177,13 @@ public class PipePayloadParser implements PayloadParser {
     }
 
     @Override
-    public void reset() {
+    public synchronized void reset() {
         this.result.clear();
         complete();
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
         sink.tryEmitComplete();
         CURRENT_PIPE.set(this, 0);
         this.result.clear();
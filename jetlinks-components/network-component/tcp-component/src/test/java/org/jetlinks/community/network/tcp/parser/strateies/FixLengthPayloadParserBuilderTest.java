@@ -54,4 +54,24 @@ class FixLengthPayloadParserBuilderTest {
         });
 
     }
+
+    @Test
+    void testDelimitedLatin1() {
+        DelimitedPayloadParserBuilder builder = new DelimitedPayloadParserBuilder();
+        //与RecordParser.newDelimited(String)一致,分隔符使用ISO-8859-1编码,编码后为单字节0xFF
+        PayloadParser parser = builder.build(ValueObject.of(Collections.singletonMap("delimited", "\\u00ff")));
+        List<String>  arr = new ArrayList<>();
+
+        parser.handlePayload()
+                .map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+                .subscribe(arr::add);
+
+        parser.handle(Buffer.buffer("123").appendByte((byte) 0xFF).appendString("45"));
+        parser.handle(Buffer.buffer("6").appendByte((byte) 0xFF));
+
+        Assert.assertArrayEquals(arr.toArray(),new Object[]{
+                "123","456"
+        });
+
+    }
 }
\ No newline at end of file
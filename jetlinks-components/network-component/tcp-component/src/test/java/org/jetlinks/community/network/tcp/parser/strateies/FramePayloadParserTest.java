@@ -0,0 +1,93 @@
+package org.jetlinks.community.network.tcp.parser.strateies;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import org.apache.commons.codec.binary.Hex;
+import org.jetlinks.community.ValueObject;
+import org.jetlinks.community.network.tcp.parser.LengthFieldPayloadParserBuilder;
+import org.jetlinks.community.network.tcp.parser.PayloadParser;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class FramePayloadParserTest {
+
+    @Test
+    void testFixed() {
+        PayloadParser parser = FramePayloadParser.fixed(3).supplier().get();
+        List<String> arr = subscribe(parser);
+
+        parser.handle(Buffer.buffer("1231"));
+        parser.handle(Buffer.buffer("2"));
+        parser.handle(Buffer.buffer("3123456"));
+
+        Assert.assertArrayEquals(new Object[]{"123", "123", "123", "456"}, arr.toArray());
+    }
+
+    @Test
+    void testDelimitedSplit() {
+        PayloadParser parser = FramePayloadParser
+            .delimited("\r\n".getBytes(StandardCharsets.UTF_8))
+            .supplier()
+            .get();
+        List<String> arr = subscribe(parser);
+
+        parser.handle(Buffer.buffer("abc\r"));
+        parser.handle(Buffer.buffer("\ndef\r\n\r\ng"));
+        parser.handle(Buffer.buffer("h\r\n"));
+
+        Assert.assertArrayEquals(new Object[]{"abc", "def", "", "gh"}, arr.toArray());
+    }
+
+    @Test
+    void testLengthField() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("offset", 1);
+        config.put("length", 2);
+        PayloadParser parser = new LengthFieldPayloadParserBuilder().build(ValueObject.of(config));
+        List<String> arr = subscribeHex(parser);
+
+        Buffer first = Buffer.buffer(Unpooled.buffer().writeByte('a').writeShort(3));
+        first.appendString("123");
+        first.appendBuffer(Buffer.buffer(Unpooled.buffer().writeByte('b')));
+
+        parser.handle(first);
+        parser.handle(Buffer.buffer(Unpooled.buffer().writeByte(0)));
+        parser.handle(Buffer.buffer(Unpooled.buffer().writeByte(2)));
+        parser.handle(Buffer.buffer("45"));
+
+        Assert.assertArrayEquals(new Object[]{"610003313233", "6200023435"}, arr.toArray());
+    }
+
+    @Test
+    void testIllegalLength() {
+        PayloadParser parser = FramePayloadParser.lengthField(0, 4, false).supplier().get();
+        List<String> arr = subscribeHex(parser);
+
+        parser.handle(Buffer.buffer(Unpooled.buffer().writeInt(-1)));
+        parser.handle(Buffer.buffer(Unpooled.buffer().writeInt(1).writeByte('1')));
+
+        Assert.assertArrayEquals(new Object[]{"0000000131"}, arr.toArray());
+    }
+
+    private List<String> subscribe(PayloadParser parser) {
+        List<String> arr = new ArrayList<>();
+        parser.handlePayload()
+              .map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+              .subscribe(arr::add);
+        return arr;
+    }
+
+    private List<String> subscribeHex(PayloadParser parser) {
+        List<String> arr = new ArrayList<>();
+        parser.handlePayload()
+              .map(buffer -> Hex.encodeHexString(buffer.getBytes()))
+              .subscribe(arr::add);
+        return arr;
+    }
+}
@@ -59,4 +59,29 @@ public interface ShakeLimitProvider {
                                              ShakeLimit limit,
                                              Function<String, Publisher<?>> resetSignal);
 
+    /**
+     * 对数据源按指定的key进行分组防抖,并输出满足条件的数据.
+     * <p>
+     * 默认使用{@link Flux#groupBy(Function, int)}进行分组,实现类可重写此方法以避免为每个分组创建独立的流.
+     *
+     * @param sourceKey   数据源唯一标识
+     * @param source      数据源
+     * @param keySelector 分组key
+     * @param limit       防抖条件
+     * @param resetSignal 重置信号
+     * @param <T>         数据类型
+     * @return 防抖结果
+     * @since 2.3
+     */
+    default <T> Flux<ShakeLimitResult<T>> shakeLimit(String sourceKey,
+                                                    Flux<T> source,
+                                                    Function<T, String> keySelector,
+                                                    ShakeLimit limit,
+                                                    Function<String, Publisher<?>> resetSignal) {
+        return shakeLimit(sourceKey,
+                          source.groupBy(keySelector, Integer.MAX_VALUE),
+                          limit,
+                          resetSignal);
+    }
+
 }
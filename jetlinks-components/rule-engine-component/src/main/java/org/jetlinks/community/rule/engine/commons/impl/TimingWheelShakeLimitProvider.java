@@ -0,0 +1,534 @@
+package org.jetlinks.community.rule.engine.commons.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.rule.engine.commons.ShakeLimit;
+import org.jetlinks.community.rule.engine.commons.ShakeLimitProvider;
+import org.jetlinks.community.rule.engine.commons.ShakeLimitResult;
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.GroupedFlux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 基于时间轮的防抖实现.
+ * <p>
+ * 与{@link SimpleShakeLimitProvider}输出相同的{@link ShakeLimitResult},区别在于:
+ * <ul>
+ *     <li>每个分组只使用一个计数对象保存窗口状态,不再为每个分组创建定时任务和超时流.</li>
+ *     <li>分组按key的hash分配到固定的分片中,每个分片使用一个时间轮和一个线程处理所有分组的窗口到期.</li>
+ *     <li>超过2倍窗口时间没有数据的分组将被移除.</li>
+ * </ul>
+ * 可通过<code>-Djetlinks.shake-limit.shards</code>设置分片数量,<code>-Djetlinks.shake-limit.tick</code>设置时间轮精度(毫秒).
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+public class TimingWheelShakeLimitProvider implements ShakeLimitProvider {
+
+    public static final String PROVIDER = "timing-wheel";
+
+    public static final TimingWheelShakeLimitProvider GLOBAL = new TimingWheelShakeLimitProvider(
+        Integer.getInteger("jetlinks.shake-limit.shards", Runtime.getRuntime().availableProcessors()),
+        Long.getLong("jetlinks.shake-limit.tick", 100L));
+
+    static final int WHEEL_SIZE = 512;
+
+    private final Shard[] shards;
+
+    public TimingWheelShakeLimitProvider(int shards, long tickMillis) {
+        this.shards = new Shard[Math.max(1, shards)];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard(Math.max(1, tickMillis),
+                                       Schedulers.newSingle("shake-limit-" + i, true));
+        }
+    }
+
+    @Override
+    public String provider() {
+        return PROVIDER;
+    }
+
+    @Override
+    public <T> Flux<ShakeLimitResult<T>> shakeLimit(String sourceKey,
+                                                    Flux<GroupedFlux<String, T>> grouped,
+                                                    ShakeLimit limit,
+                                                    Function<String, Publisher<?>> resetSignal) {
+        return Flux.create(sink -> {
+            Session<T> session = new Session<>(sourceKey, limit, resetSignal, sink);
+            Disposable disposable = grouped
+                .subscribe(group -> group.subscribe(new GroupSubscriber<>(group.key(), session)),
+                           session::error,
+                           session::complete);
+            sink.onDispose(() -> {
+                disposable.dispose();
+                session.dispose();
+            });
+        });
+    }
+
+    @Override
+    public <T> Flux<ShakeLimitResult<T>> shakeLimit(String sourceKey,
+                                                    Flux<T> source,
+                                                    Function<T, String> keySelector,
+                                                    ShakeLimit limit,
+                                                    Function<String, Publisher<?>> resetSignal) {
+        //不需要分组流,直接按key更新计数
+        return Flux.create(sink -> {
+            Session<T> session = new Session<>(sourceKey, limit, resetSignal, sink);
+            Disposable disposable = source
+                .subscribe(value -> session.onNext(keySelector.apply(value), value, null),
+                           session::error,
+                           session::complete);
+            sink.onDispose(() -> {
+                disposable.dispose();
+                session.dispose();
+            });
+        });
+    }
+
+    private int shardIndex(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % shards.length;
+    }
+
+    static class GroupSubscriber<T> extends BaseSubscriber<T> {
+        private final String key;
+        private final Session<T> session;
+
+        GroupSubscriber(String key, Session<T> session) {
+            this.key = key;
+            this.session = session;
+        }
+
+        @Override
+        protected void hookOnNext(@Nonnull T value) {
+            session.onNext(key, value, this);
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            session.completeGroup(key, this);
+        }
+
+        @Override
+        protected void hookOnError(@Nonnull Throwable throwable) {
+            log.warn("shake limit [{}:{}] error", session.sourceKey, key, throwable);
+            session.completeGroup(key, this);
+        }
+    }
+
+    /**
+     * 一次防抖调用,保存所有分组的计数信息
+     */
+    class Session<T> {
+        private final String sourceKey;
+        private final ShakeLimit limit;
+        private final long period;
+        private final Function<String, Publisher<?>> resetSignal;
+        private final FluxSink<ShakeLimitResult<T>> sink;
+        //按分片存储,只在对应分片的锁内访问
+        private final Map<String, Slot<T>>[] tables;
+
+        private volatile boolean disposed;
+
+        @SuppressWarnings("unchecked")
+        Session(String sourceKey,
+                ShakeLimit limit,
+                Function<String, Publisher<?>> resetSignal,
+                FluxSink<ShakeLimitResult<T>> sink) {
+            this.sourceKey = sourceKey;
+            this.limit = limit;
+            this.period = limit.getTime() * 1000L;
+            this.resetSignal = resetSignal;
+            this.sink = sink;
+            this.tables = new Map[shards.length];
+            for (int i = 0; i < tables.length; i++) {
+                tables[i] = new HashMap<>();
+            }
+        }
+
+        void onNext(String key, T value, GroupSubscriber<T> owner) {
+            if (disposed) {
+                return;
+            }
+            int index = shardIndex(key);
+            Shard shard = shards[index];
+            long now = System.currentTimeMillis();
+            List<Emit> emits;
+            synchronized (shard) {
+                Map<String, Slot<T>> table = tables[index];
+                Slot<T> slot = table.get(key);
+                if (slot == null) {
+                    slot = new Slot<>(this, key, owner);
+                    table.put(key, slot);
+                    subscribeReset(slot);
+                }
+                emits = slot.onNext(shard, value, now, null);
+                //不按时间窗口,每条数据独立处理
+                if (period <= 0) {
+                    emits = slot.complete(shard, now, emits);
+                    evict(shard, slot, false);
+                }
+            }
+            Emit.emit(emits);
+        }
+
+        private void subscribeReset(Slot<T> slot) {
+            //连续触发的场景,需要根据重置信号进行重置
+            if (resetSignal == null || !limit.isContinuous()) {
+                return;
+            }
+            Publisher<?> signal = resetSignal.apply(slot.key);
+            if (signal == null || signal == Mono.never()) {
+                return;
+            }
+            slot.reset = Flux
+                .from(signal)
+                .subscribe(ignore -> reset(slot));
+        }
+
+        private void reset(Slot<T> slot) {
+            int index = shardIndex(slot.key);
+            Shard shard = shards[index];
+            synchronized (shard) {
+                if (tables[index].get(slot.key) == slot) {
+                    slot.reset(shard, true, System.currentTimeMillis());
+                }
+            }
+        }
+
+        void completeGroup(String key, GroupSubscriber<T> owner) {
+            int index = shardIndex(key);
+            Shard shard = shards[index];
+            List<Emit> emits = null;
+            synchronized (shard) {
+                Slot<T> slot = tables[index].get(key);
+                if (slot != null && slot.owner == owner) {
+                    emits = slot.complete(shard, System.currentTimeMillis(), null);
+                    evict(shard, slot, false);
+                }
+            }
+            Emit.emit(emits);
+        }
+
+        void complete() {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < shards.length; i++) {
+                Shard shard = shards[i];
+                List<Emit> emits = null;
+                synchronized (shard) {
+                    for (Slot<T> slot : new ArrayList<>(tables[i].values())) {
+                        emits = slot.complete(shard, now, emits);
+                        evict(shard, slot, true);
+                    }
+                }
+                Emit.emit(emits);
+            }
+            sink.complete();
+        }
+
+        void error(Throwable error) {
+            dispose();
+            sink.error(error);
+        }
+
+        void dispose() {
+            disposed = true;
+            for (int i = 0; i < shards.length; i++) {
+                Shard shard = shards[i];
+                synchronized (shard) {
+                    for (Slot<T> slot : new ArrayList<>(tables[i].values())) {
+                        evict(shard, slot, true);
+                    }
+                }
+            }
+        }
+
+        //在分片锁内调用
+        void evict(Shard shard, Slot<T> slot, boolean cancelOwner) {
+            shard.cancel(slot);
+            tables[shardIndex(slot.key)].remove(slot.key, slot);
+            if (slot.reset != null) {
+                slot.reset.dispose();
+            }
+            if (cancelOwner && slot.owner != null) {
+                slot.owner.cancel();
+            }
+        }
+
+        //时间轮到期,在分片锁内调用
+        List<Emit> onTimer(Shard shard, Slot<T> slot, long now, List<Emit> emits) {
+            emits = slot.onTimer(shard, now, emits);
+            //超过2倍窗口时间没有收到数据,结束分组,释放内存.
+            if (now - slot.lastActive >= period * 2) {
+                emits = slot.complete(shard, now, emits);
+                evict(shard, slot, true);
+            }
+            return emits;
+        }
+    }
+
+    static class Emit {
+        private final FluxSink<Object> sink;
+        private final Object value;
+
+        @SuppressWarnings("all")
+        Emit(FluxSink<?> sink, Object value) {
+            this.sink = (FluxSink<Object>) sink;
+            this.value = value;
+        }
+
+        static List<Emit> add(List<Emit> emits, FluxSink<?> sink, Object value) {
+            if (emits == null) {
+                emits = new ArrayList<>(1);
+            }
+            emits.add(new Emit(sink, value));
+            return emits;
+        }
+
+        //在锁外输出,避免下游处理阻塞其他分组
+        static void emit(List<Emit> emits) {
+            if (emits == null) {
+                return;
+            }
+            for (Emit emit : emits) {
+                emit.sink.next(emit.value);
+            }
+        }
+    }
+
+    /**
+     * 单个分组的窗口状态,逻辑与{@link org.jetlinks.community.rule.engine.commons.ShakeLimitFlux}一致.
+     * 所有方法都在分片锁内调用.
+     */
+    static class Slot<T> {
+        final Session<T> session;
+        final String key;
+        final GroupSubscriber<T> owner;
+        Disposable reset;
+
+        long count;
+        T first;
+        long firstTime;
+        T last;
+        long lastTime;
+        boolean paused;
+        long lastActive;
+
+        //时间轮
+        long deadline = -1;
+        long rounds;
+        int bucket = -1;
+        Slot<?> prev, next;
+
+        Slot(Session<T> session, String key, GroupSubscriber<T> owner) {
+            this.session = session;
+            this.key = key;
+            this.owner = owner;
+        }
+
+        List<Emit> onNext(Shard shard, T value, long now, List<Emit> emits) {
+            ShakeLimit limit = session.limit;
+            lastActive = now;
+            startTimer(shard, now);
+            if (first == null) {
+                first = value;
+            }
+            if (firstTime == 0) {
+                firstTime = now;
+            }
+            last = value;
+            lastTime = now;
+            long count = ++this.count;
+            //尝试立即触发
+            if (limit.isAlarmFirst()) {
+                //滚动窗口,或者不按时间窗口,直接处理
+                if (limit.isRolling() || limit.getTime() <= 0) {
+                    emits = handle(shard, count, false, now, emits);
+                } else if (!paused) {
+                    int size = emits == null ? 0 : emits.size();
+                    emits = handle(shard, count, false, now, emits);
+                    if (emits != null && emits.size() > size) {
+                        paused = true;
+                    }
+                }
+            }
+            return emits;
+        }
+
+        List<Emit> onTimer(Shard shard, long now, List<Emit> emits) {
+            //非滚动窗口,周期执行
+            if (!session.limit.isRolling()) {
+                shard.schedule(this, now + session.period);
+            }
+            long count = this.count;
+            this.count = 0;
+            boolean paused = this.paused;
+            this.paused = false;
+            if (!paused) {
+                emits = handle(shard, count, true, now, emits);
+            }
+            return emits;
+        }
+
+        List<Emit> complete(Shard shard, long now, List<Emit> emits) {
+            if (paused) {
+                return emits;
+            }
+            long count = this.count;
+            this.count = 0;
+            ShakeLimit limit = session.limit;
+            if (count < limit.getThreshold()) {
+                return emits;
+            }
+            //没在窗口内
+            if (limit.getTime() > 0 && now - firstTime <= session.period) {
+                return emits;
+            }
+            return handle(shard, count, true, now, emits);
+        }
+
+        void reset(Shard shard, boolean force, long now) {
+            if (force) {
+                paused = false;
+                firstTime = 0;
+            }
+            count = 0;
+            first = null;
+            last = null;
+            lastTime = 0;
+            //滚动窗口才重置定时
+            if (session.limit.isRolling()) {
+                shard.cancel(this);
+                startTimer(shard, now);
+            }
+        }
+
+        void startTimer(Shard shard, long now) {
+            if (session.period <= 0 || session.disposed) {
+                return;
+            }
+            if (deadline < 0) {
+                shard.schedule(this, now + session.period);
+            }
+        }
+
+        List<Emit> handle(Shard shard, long count, boolean reset, long now, List<Emit> emits) {
+            ShakeLimit limit = session.limit;
+            //未满足条件
+            if (count < limit.getThreshold()) {
+                if (reset) {
+                    reset(shard, true, now);
+                }
+                return emits;
+            }
+            T val = limit.isOutputFirst() ? first : last;
+            reset(shard, reset, now);
+            if (val != null) {
+                emits = Emit.add(emits, session.sink, new ShakeLimitResult<>(key, count, val));
+            }
+            return emits;
+        }
+    }
+
+    /**
+     * 分片,包含一个时间轮和一个执行线程
+     */
+    static class Shard {
+        private final long tickMillis;
+        private final Slot<?>[] wheel = new Slot[WHEEL_SIZE];
+        private final Scheduler scheduler;
+        private long currentTick;
+
+        //第一次使用时才启动
+        private Disposable ticker;
+
+        Shard(long tickMillis, Scheduler scheduler) {
+            this.tickMillis = tickMillis;
+            this.scheduler = scheduler;
+        }
+
+        void schedule(Slot<?> slot, long deadline) {
+            if (ticker == null) {
+                currentTick = System.currentTimeMillis() / tickMillis;
+                ticker = scheduler.schedulePeriodically(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+            }
+            cancel(slot);
+            //至少在下一个刻度执行,避免加入到正在处理的槽中
+            long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+            int bucket = (int) (tick & (WHEEL_SIZE - 1));
+            slot.deadline = deadline;
+            slot.rounds = (tick - currentTick) / WHEEL_SIZE;
+            slot.bucket = bucket;
+            slot.prev = null;
+            slot.next = wheel[bucket];
+            if (slot.next != null) {
+                slot.next.prev = slot;
+            }
+            wheel[bucket] = slot;
+        }
+
+        void cancel(Slot<?> slot) {
+            if (slot.bucket < 0) {
+                return;
+            }
+            if (slot.prev != null) {
+                slot.prev.next = slot.next;
+            } else {
+                wheel[slot.bucket] = slot.next;
+            }
+            if (slot.next != null) {
+                slot.next.prev = slot.prev;
+            }
+            slot.prev = null;
+            slot.next = null;
+            slot.bucket = -1;
+            slot.deadline = -1;
+        }
+
+        @SuppressWarnings("all")
+        void tick() {
+            List<Emit> emits = null;
+            try {
+                synchronized (this) {
+                    long now = System.currentTimeMillis();
+                    long nowTick = now / tickMillis;
+                    while (currentTick <= nowTick) {
+                        int bucket = (int) (currentTick & (WHEEL_SIZE - 1));
+                        Slot<?> slot = wheel[bucket];
+                        while (slot != null) {
+                            Slot<?> next = slot.next;
+                            if (slot.rounds > 0) {
+                                slot.rounds--;
+                            } else {
+                                cancel(slot);
+                                Slot raw = slot;
+                                emits = raw.session.onTimer(this, raw, now, emits);
+                            }
+                            slot = next;
+                        }
+                        currentTick++;
+                    }
+                }
+            } catch (Throwable error) {
+                log.warn("shake limit timing wheel error", error);
+            }
+            Emit.emit(emits);
+        }
+    }
+}
@@ -21,7 +21,8 @@ public class TDengineConfiguration {
         WebClient client = properties.getRestful().createClient();
         SchemalessTDEngineDataWriter writer = new SchemalessTDEngineDataWriter(client,
                                                                                properties.getDatabase(),
-                                                                               properties.getBuffer());
+                                                                               properties.getBuffer(),
+                                                                               properties.getRestful());
 
         return new DetectTDengineOperations(writer, new RestfulTDEngineQueryOperations(client, properties.getDatabase()));
     }
@@ -84,6 +84,15 @@ public class TDengineProperties {
 
         private DataSize maxInMemorySize = DataSize.ofMegabytes(10);
 
+        //单次写入请求的最大数据量,超过后拆分为多个请求
+        private DataSize maxWriteSize = DataSize.ofMegabytes(4);
+
+        //同时进行的写入请求数量
+        private int writeConcurrency = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+        //写入时使用gzip压缩请求体
+        private boolean writeGzip = false;
+
         public URI selectURI() {
             // TODO: 2021/6/2 更好的负载均衡方式
             return endpoints.get(ThreadLocalRandom.current().nextInt(endpoints.size()));
@@ -0,0 +1,149 @@
+package org.jetlinks.community.tdengine.restful;
+
+import org.jetlinks.community.tdengine.Point;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InfluxDB行协议编码器,直接将{@link Point}写入到{@link StringBuilder}中,
+ * 不再转换为{@link org.influxdb.dto.Point}.
+ * <p>
+ * 编码规则与{@link org.influxdb.dto.Point#lineProtocol()}保持一致:
+ * <ul>
+ *     <li>整数类型添加<code>i</code>后缀,浮点数不使用科学计数法.</li>
+ *     <li>值为null或者非有限数的字段将被忽略.</li>
+ *     <li>时间戳为纳秒.</li>
+ * </ul>
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+public class LineProtocolEncoder {
+
+    private static final ThreadLocal<StringBuilder> SHARED = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    //超过此长度的StringBuilder不再复用,避免长期占用内存
+    private static final int MAX_SHARED_CAPACITY = 64 * 1024;
+
+    /**
+     * 获取当前线程共享的StringBuilder,使用后无需归还,请勿跨线程使用.
+     *
+     * @return StringBuilder
+     */
+    static StringBuilder sharedBuilder() {
+        StringBuilder builder = SHARED.get();
+        if (builder.capacity() > MAX_SHARED_CAPACITY) {
+            SHARED.set(builder = new StringBuilder(256));
+        }
+        builder.setLength(0);
+        return builder;
+    }
+
+    public static String encode(Point point) {
+        StringBuilder builder = sharedBuilder();
+        encode(point, builder);
+        return builder.toString();
+    }
+
+    /**
+     * 编码一行数据,不包含换行符.没有任何有效字段时不写入任何内容.
+     *
+     * @param point   数据
+     * @param builder StringBuilder
+     * @return 是否写入
+     */
+    public static boolean encode(Point point, StringBuilder builder) {
+        int start = builder.length();
+        escape(builder, point.getMetric(), false);
+
+        for (Map.Entry<String, Object> tag : point.getTags().entrySet()) {
+            Object value = tag.getValue();
+            if (value == null) {
+                continue;
+            }
+            builder.append(',');
+            escape(builder, tag.getKey(), true);
+            builder.append('=');
+            escape(builder, String.valueOf(value), true);
+        }
+
+        char separator = ' ';
+        for (Map.Entry<String, Object> field : point.getValues().entrySet()) {
+            Object value = field.getValue();
+            if (value == null || !isFinite(value)) {
+                continue;
+            }
+            builder.append(separator);
+            separator = ',';
+            escape(builder, field.getKey(), true);
+            builder.append('=');
+            appendValue(builder, value);
+        }
+        //没有字段
+        if (separator == ' ') {
+            builder.setLength(start);
+            return false;
+        }
+        builder.append(' ');
+        builder.append(TimeUnit.MILLISECONDS.toNanos(point.getTimestamp()));
+        return true;
+    }
+
+    private static boolean isFinite(Object value) {
+        if (value instanceof Double) {
+            return Double.isFinite((Double) value);
+        }
+        if (value instanceof Float) {
+            return Float.isFinite((Float) value);
+        }
+        return true;
+    }
+
+    private static void appendValue(StringBuilder builder, Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            String str = value.toString();
+            //不使用科学计数法
+            if (str.indexOf('E') >= 0) {
+                str = new BigDecimal(str).toPlainString();
+            } else if (str.endsWith(".0")) {
+                str = str.substring(0, str.length() - 2);
+            }
+            builder.append(str);
+        } else if (value instanceof BigDecimal) {
+            builder.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Number) {
+            //整数
+            builder.append(value).append('i');
+        } else if (value instanceof Boolean) {
+            builder.append(((Boolean) value).booleanValue());
+        } else if (value instanceof String) {
+            builder.append('"');
+            escapeString(builder, (String) value);
+            builder.append('"');
+        } else {
+            builder.append(value);
+        }
+    }
+
+    private static void escape(StringBuilder builder, String str, boolean escapeEquals) {
+        for (int i = 0, len = str.length(); i < len; i++) {
+            char c = str.charAt(i);
+            if (c == ' ' || c == ',' || (escapeEquals && c == '=')) {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+    }
+
+    private static void escapeString(StringBuilder builder, String str) {
+        for (int i = 0, len = str.length(); i < len; i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+    }
+}
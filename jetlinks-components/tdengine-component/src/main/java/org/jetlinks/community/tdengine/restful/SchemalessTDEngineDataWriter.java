@@ -1,7 +1,11 @@
 package org.jetlinks.community.tdengine.restful;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import lombok.AllArgsConstructor;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.ReferenceCountUtil;
+import lombok.SneakyThrows;
 import org.jetlinks.community.tdengine.TDEngineDataWriter;
 import org.jetlinks.community.tdengine.TDengineProperties;
 import org.jetlinks.community.buffer.BufferSettings;
@@ -9,36 +13,77 @@ import org.jetlinks.community.buffer.PersistenceBuffer;
 import org.jetlinks.community.tdengine.Point;
 import org.jetlinks.community.tdengine.TDEngineUtils;
 import org.jetlinks.community.utils.ErrorUtils;
-import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientException;
 import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-@AllArgsConstructor
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 使用InfluxDB行协议写入数据到TDengine.
+ * <p>
+ * 数据直接编码到{@link ByteBuf}中,按{@link TDengineProperties.RestfulConnector#getMaxWriteSize()}拆分为多个请求并行写入.
+ *
+ * @see LineProtocolEncoder
+ */
 public class SchemalessTDEngineDataWriter implements TDEngineDataWriter, Disposable {
+
+    private static final byte NEW_LINE = '\n';
+
+    private static final BiConsumer<Point, ByteBuf> POINT_ENCODER = (point, buf) -> {
+        StringBuilder line = LineProtocolEncoder.sharedBuilder();
+        if (LineProtocolEncoder.encode(point, line)) {
+            ByteBufUtil.writeUtf8(buf, line);
+            buf.writeByte(NEW_LINE);
+        }
+    };
+
+    private static final BiConsumer<String, ByteBuf> LINE_ENCODER = (line, buf) -> {
+        if (!line.isEmpty()) {
+            ByteBufUtil.writeUtf8(buf, line);
+            buf.writeByte(NEW_LINE);
+        }
+    };
+
     private final WebClient client;
 
     private final String database;
 
-    private final DataBufferFactory factory = new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
+    private final NettyDataBufferFactory factory = new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
     private final PersistenceBuffer<String> buffer;
 
+    private final int maxWriteSize;
+
+    private final int writeConcurrency;
+
+    private final boolean gzip;
+
     public SchemalessTDEngineDataWriter(WebClient client, String database, TDengineProperties.Buffer buffer) {
+        this(client, database, buffer, new TDengineProperties.RestfulConnector());
+    }
+
+    public SchemalessTDEngineDataWriter(WebClient client,
+                                        String database,
+                                        TDengineProperties.Buffer buffer,
+                                        TDengineProperties.RestfulConnector connector) {
         this.client = client;
         this.database = database;
+        this.maxWriteSize = (int) Math.min(Integer.MAX_VALUE, Math.max(1024, connector.getMaxWriteSize().toBytes()));
+        this.writeConcurrency = Math.max(1, connector.getWriteConcurrency());
+        this.gzip = connector.isWriteGzip();
         if (buffer.isEnabled()) {
             this.buffer = new PersistenceBuffer<String>(
                 BufferSettings.create("tdengine-writer.queue", buffer),
                 null,
-                list -> writeNow(list).thenReturn(false))
+                list -> writeNow(list, LINE_ENCODER).thenReturn(false))
                 .name("tdengine")
                 .parallelism(buffer.getParallelism())
                 .retryWhenError(e -> ErrorUtils.hasException(e, WebClientException.class)
@@ -60,49 +105,109 @@ public class SchemalessTDEngineDataWriter implements TDEngineDataWriter, Disposa
     @Override
     public Mono<Void> write(Point point) {
         if (buffer == null) {
-            return writeNow(Flux.just(convertToLine(point)));
+            return writeNow(Flux.just(point), POINT_ENCODER);
+        }
+        String line = LineProtocolEncoder.encode(point);
+        if (!line.isEmpty()) {
+            buffer.write(line);
         }
-        buffer.write(convertToLine(point));
-
         return Mono.empty();
     }
 
     @Override
     public Mono<Void> write(Flux<Point> points) {
-        return writeNow(points.map(this::convertToLine));
+        return writeNow(points, POINT_ENCODER);
     }
 
-    private static final byte[] newLine = "\n".getBytes();
-
-    private Mono<Void> writeNow(Flux<String> lines) {
+    private <T> Mono<Void> writeNow(Flux<T> source, BiConsumer<T, ByteBuf> encoder) {
+        return Flux
+            .defer(() -> {
+                BatchEncoder<T> batch = new BatchEncoder<>(encoder);
+                return source
+                    .<ByteBuf>handle(batch::append)
+                    .concatWith(Mono.fromSupplier(batch::complete))
+                    .doFinally(ignore -> batch.release());
+            })
+            .flatMap(this::send, writeConcurrency)
+            .doOnDiscard(ByteBuf.class, ReferenceCountUtil::safeRelease)
+            .then();
+    }
 
+    private Mono<Void> send(ByteBuf body) {
         return client
             .post()
             .uri(builder -> builder
                 .path("/influxdb/v1/write")
                 .queryParam("db", database)
                 .build())
-            .body(lines
-                      .map(str -> {
-                          byte[] data = str.getBytes();
-                          return factory
-                              .allocateBuffer(data.length + newLine.length)
-                              .write(data)
-                              .write(newLine);
-                      })
-                , DataBuffer.class)
+            .headers(headers -> {
+                if (gzip) {
+                    headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                }
+            })
+            .contentLength(body.readableBytes())
+            .body(BodyInserters.fromDataBuffers(Mono.just(factory.wrap(body))))
             .exchangeToMono(TDEngineUtils::checkExecuteResult)
             .then();
+    }
 
-
+    @SneakyThrows
+    private static ByteBuf gzip(ByteBuf buf) {
+        ByteBuf out = buf.alloc().buffer(Math.max(256, buf.readableBytes() / 4));
+        try (GZIPOutputStream stream = new GZIPOutputStream(new ByteBufOutputStream(out))) {
+            buf.readBytes(stream, buf.readableBytes());
+        } catch (Throwable error) {
+            out.release();
+            throw error;
+        } finally {
+            buf.release();
+        }
+        return out;
     }
 
-    private String convertToLine(Point point) {
-        return org.influxdb.dto.Point.measurement(point.getMetric())
-                                     .tag((Map) point.getTags())
-                                     .fields(point.getValues())
-                                     .time(point.getTimestamp(), TimeUnit.MILLISECONDS)
-                                     .build()
-                                     .lineProtocol();
+    /**
+     * 将数据编码到同一个ByteBuf中,超过{@link #maxWriteSize}后作为一个请求体发送.
+     */
+    private class BatchEncoder<T> {
+        private final BiConsumer<T, ByteBuf> encoder;
+
+        private ByteBuf current;
+
+        private BatchEncoder(BiConsumer<T, ByteBuf> encoder) {
+            this.encoder = encoder;
+        }
+
+        void append(T data, SynchronousSink<ByteBuf> sink) {
+            if (current == null) {
+                current = ByteBufAllocator.DEFAULT.buffer(Math.min(maxWriteSize, 64 * 1024));
+            }
+            encoder.accept(data, current);
+            if (current.readableBytes() >= maxWriteSize) {
+                sink.next(take());
+            }
+        }
+
+        ByteBuf complete() {
+            if (current == null) {
+                return null;
+            }
+            if (!current.isReadable()) {
+                release();
+                return null;
+            }
+            return take();
+        }
+
+        private ByteBuf take() {
+            ByteBuf buf = current;
+            current = null;
+            return gzip ? gzip(buf) : buf;
+        }
+
+        void release() {
+            ByteBuf buf = current;
+            current = null;
+            ReferenceCountUtil.safeRelease(buf);
+        }
     }
 }
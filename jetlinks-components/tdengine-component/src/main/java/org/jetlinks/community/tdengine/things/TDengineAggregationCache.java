@@ -0,0 +1,238 @@
+package org.jetlinks.community.tdengine.things;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.jetlinks.community.Interval;
+import org.jetlinks.community.things.data.AggregationRequest;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 按时间分组的聚合查询结果缓存.
+ * <p>
+ * 将查询时间范围拆分为3段:
+ * <ul>
+ *     <li>开头不完整的周期: 直接查询.</li>
+ *     <li>中间已经结束的完整周期: 从缓存中获取,缓存未覆盖的部分查询后追加到缓存.</li>
+ *     <li>末尾未结束的周期: 直接查询.</li>
+ * </ul>
+ * TDengine的时间窗口从1970-01-01 00:00:00(UTC)开始对齐,所以只缓存小时及以下的固定周期.
+ * 周期结束后{@link #LATENESS}内仍然视为未结束,以容忍延迟写入的数据.
+ * 缓存按写入时间在{@link #TTL}后过期,更晚写入的数据最多在过期后可见.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+class TDengineAggregationCache {
+
+    static final boolean ENABLED = Boolean.parseBoolean(
+        System.getProperty("tdengine.aggregation.cache.enabled", "true"));
+
+    //周期结束后多久才缓存
+    static final long LATENESS = Long.getLong("tdengine.aggregation.cache.lateness", 60_000);
+
+    //缓存的查询数量
+    static final int MAX_ENTRIES = Integer.getInteger("tdengine.aggregation.cache.max-entries", 1024);
+
+    //每个查询最多缓存的周期数量
+    static final int MAX_BUCKETS = Integer.getInteger("tdengine.aggregation.cache.max-buckets", 4096);
+
+    static final Duration TTL = Duration.ofMillis(
+        Long.getLong("tdengine.aggregation.cache.ttl", Duration.ofMinutes(10).toMillis()));
+
+    private static final Date EMPTY_TIME = new Date(0);
+
+    private static final BigDecimal MAX_INTERVAL_NUMBER = BigDecimal.valueOf(Integer.MAX_VALUE);
+
+    private final Cache<String, Segment> cache = Caffeine
+        .newBuilder()
+        .maximumSize(MAX_ENTRIES)
+        //按写入时间过期,避免频繁访问的缓存一直不过期导致延迟写入的数据无法查询到
+        .expireAfterWrite(TTL)
+        .build();
+
+    /**
+     * 执行聚合查询
+     *
+     * @param request    聚合请求
+     * @param sqlBuilder 根据时间范围(包含)构造SQL
+     * @param executor   执行SQL,返回的每一行数据中需要包含时间戳字段<code>_ts</code>
+     * @return 查询结果, 按时间倒序
+     */
+    Flux<Map<String, Object>> query(AggregationRequest request,
+                                    BiFunction<Date, Date, String> sqlBuilder,
+                                    Function<String, Flux<Map<String, Object>>> executor) {
+        long interval = getCacheableInterval(request.getInterval());
+        if (interval <= 0) {
+            return executor.apply(sqlBuilder.apply(request.getFrom(), request.getTo()));
+        }
+        long from = request.getFrom().getTime(), to = request.getTo().getTime();
+        long start = alignUp(from, interval);
+        long end = Math.min(alignDown(to + 1, interval),
+                            alignDown(System.currentTimeMillis() - LATENESS, interval));
+
+        //没有完整的周期
+        if (end <= start) {
+            return executor.apply(sqlBuilder.apply(request.getFrom(), request.getTo()));
+        }
+        //时间范围使用固定值作为缓存key
+        String key = sqlBuilder.apply(EMPTY_TIME, EMPTY_TIME);
+
+        Flux<Map<String, Object>> tail = to >= end
+            ? executor.apply(sqlBuilder.apply(new Date(end), request.getTo()))
+            : Flux.empty();
+        Flux<Map<String, Object>> head = from < start
+            ? executor.apply(sqlBuilder.apply(request.getFrom(), new Date(start - 1)))
+            : Flux.empty();
+
+        return Flux.concat(tail,
+                           queryClosed(key, interval, start, end, sqlBuilder, executor),
+                           head);
+    }
+
+    private Flux<Map<String, Object>> queryClosed(String key,
+                                                  long interval,
+                                                  long start,
+                                                  long end,
+                                                  BiFunction<Date, Date, String> sqlBuilder,
+                                                  Function<String, Flux<Map<String, Object>>> executor) {
+        Segment segment = cache.getIfPresent(key);
+        if (segment != null) {
+            List<Map<String, Object>> cached = segment.read(start, end);
+            if (cached != null) {
+                return Flux.fromIterable(cached);
+            }
+            //只查询缓存未覆盖的部分
+            long missing = segment.missingFrom(start, end);
+            if (missing > 0) {
+                return executor
+                    .apply(sqlBuilder.apply(new Date(missing), new Date(end - 1)))
+                    .collectList()
+                    .flatMapIterable(rows -> segment.append(missing, end, rows).read(start, end));
+            }
+        }
+        return executor
+            .apply(sqlBuilder.apply(new Date(start), new Date(end - 1)))
+            .collectList()
+            .flatMapIterable(rows -> {
+                Segment newSegment = new Segment(interval, start).append(start, end, rows);
+                cache.put(key, newSegment);
+                return newSegment.read(start, end);
+            });
+    }
+
+    void clear() {
+        cache.invalidateAll();
+    }
+
+    static long getCacheableInterval(Interval interval) {
+        if (!ENABLED || interval == null || interval.getNumber() == null) {
+            return -1;
+        }
+        //只缓存小时及以下的固定周期
+        if (!isFixedExpression(interval.getExpression())
+            || interval.getNumber().signum() <= 0
+            || interval.getNumber().stripTrailingZeros().scale() > 0
+            || interval.getNumber().compareTo(MAX_INTERVAL_NUMBER) > 0) {
+            return -1;
+        }
+        return interval.toMillis();
+    }
+
+    static boolean isFixedExpression(String expression) {
+        return Interval.millis.equals(expression)
+            || Interval.seconds.equals(expression)
+            || Interval.minutes.equals(expression)
+            || Interval.hours.equals(expression);
+    }
+
+    static long alignDown(long timestamp, long interval) {
+        return Math.floorDiv(timestamp, interval) * interval;
+    }
+
+    static long alignUp(long timestamp, long interval) {
+        return -Math.floorDiv(-timestamp, interval) * interval;
+    }
+
+    /**
+     * 一个查询已缓存的连续时间范围[from,to)
+     */
+    static class Segment {
+        private final long interval;
+
+        //周期开始时间 -> 数据
+        private final NavigableMap<Long, List<Map<String, Object>>> buckets = new TreeMap<>();
+
+        private long from;
+        private long to;
+
+        Segment(long interval, long from) {
+            this.interval = interval;
+            this.from = from;
+            this.to = from;
+        }
+
+        /**
+         * 读取缓存中的数据
+         *
+         * @return 未完全覆盖时返回null
+         */
+        synchronized List<Map<String, Object>> read(long start, long end) {
+            if (start < from || end > to) {
+                return null;
+            }
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (List<Map<String, Object>> rows : buckets.subMap(start, true, end, false).descendingMap().values()) {
+                for (Map<String, Object> row : rows) {
+                    //后续处理会修改数据,返回副本
+                    result.add(new HashMap<>(row));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 获取需要追加查询的开始时间
+         *
+         * @return 无法追加时返回-1
+         */
+        synchronized long missingFrom(long start, long end) {
+            if (start >= from && start <= to && end > to) {
+                return to;
+            }
+            return -1;
+        }
+
+        synchronized Segment append(long start, long end, List<Map<String, Object>> rows) {
+            if (start > to || end <= to) {
+                return this;
+            }
+            Map<Long, List<Map<String, Object>>> group = new HashMap<>();
+            for (Map<String, Object> row : rows) {
+                Object ts = row.get("_ts");
+                if (ts == null) {
+                    continue;
+                }
+                long bucket = alignDown(TDengineThingDataHelper.convertTs(ts).getTime(), interval);
+                //已经缓存的周期
+                if (bucket < to) {
+                    continue;
+                }
+                group.computeIfAbsent(bucket, ignore -> new ArrayList<>(1))
+                     .add(Collections.unmodifiableMap(new HashMap<>(row)));
+            }
+            buckets.putAll(group);
+            to = end;
+            //移除最早的数据
+            while (buckets.size() > MAX_BUCKETS) {
+                from = buckets.pollFirstEntry().getKey() + interval;
+            }
+            return this;
+        }
+    }
+}
@@ -12,6 +12,7 @@ import org.jetlinks.community.things.data.operations.DataSettings;
 import org.jetlinks.community.things.data.operations.MetricBuilder;
 import org.jetlinks.community.timeseries.TimeSeriesData;
 import org.jetlinks.community.timeseries.query.AggregationData;
+import org.springframework.util.CollectionUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -20,8 +21,10 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Map;
 import java.util.StringJoiner;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 
@@ -67,27 +70,30 @@ class TDengineColumnModeQueryOperations extends ColumnModeQueryOperationsBase {
                   .add(" `").add(property.getAlias()).add("`");
         }
 
-        joiner
-            .add(" from `").add(metric).add("` ")
-            .add(helper.buildWhere(
-                metric,
-                request.getFilter().clone().and("_ts", "btw", Arrays.asList(request.getFrom(), request.getTo())))
-            );
-
-
-        if (request.getInterval() != null) {
-            joiner.add(" ")
-                  .add(TDengineThingDataHelper.getGroupByTime(request.getInterval()));
-        }
-        joiner.add(helper.buildOrderBy(metric, request.getFilter()));
+        joiner.add(" from `").add(metric).add("` ");
+        String select = joiner.toString();
+        String groupBy = request.getInterval() == null
+            ? ""
+            : " " + TDengineThingDataHelper.getGroupByTime(request.getInterval());
+        String orderBy = helper.buildOrderBy(metric, request.getFilter());
+
+        BiFunction<Date, Date, String> sqlBuilder = (from, to) -> select
+            + helper.buildWhere(metric, request.getFilter().clone().and("_ts", "btw", Arrays.asList(from, to)))
+            + groupBy
+            + orderBy;
+
+        //自定义排序时不使用缓存
+        Flux<Map<String, Object>> rows = CollectionUtils.isEmpty(request.getFilter().getSorts())
+            ? helper.queryAggregation(request, sqlBuilder)
+            : helper
+            .operations
+            .forQuery()
+            .query(sqlBuilder.apply(request.getFrom(), request.getTo()), ResultWrappers.map());
 
         String format = request.getFormat();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
 
-        return helper
-            .operations
-            .forQuery()
-            .query(joiner.toString(), ResultWrappers.map())
+        return rows
             .map(map -> {
                 TimeSeriesData timeSeriesData = TDengineThingDataHelper.convertToTsData(map);
                 long ts = timeSeriesData.getTimestamp();
@@ -27,6 +27,7 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 class TDengineRowModeQueryOperations extends RowModeQueryOperationsBase {
@@ -86,29 +87,31 @@ class TDengineRowModeQueryOperations extends RowModeQueryOperationsBase {
             agg.add(" `").add("value_" + property.getAlias()).add("`");
         }
 
-        String sql = String.join(
+        String groupBy = request.getInterval() == null
+            ? ""
+            : " " + TDengineThingDataHelper.getGroupByTime(request.getInterval());
+        BiFunction<Date, Date, String> sqlBuilder = (from, to) -> String.join(
             "",
-            "`", metric, "` ",
+            "select ", agg.toString(), " from `", metric, "` ",
             helper.buildWhere(metric,
                               request
                                   .getFilter()
                                   .clone()
                                   .and("property", TermType.in, context.getPropertyAlias().values())
-                                  .and("_ts", TermType.btw, Arrays.asList(request.getFrom(), request.getTo()))
-            )
+                                  .and("_ts", TermType.btw, Arrays.asList(from, to))
+            ),
+            " partition by property",
+            groupBy
         );
-        String dataSql = "select " + agg + " from " + sql + " partition by property";
-        if (request.getInterval() != null) {
-            dataSql += " ";
-            dataSql += TDengineThingDataHelper.getGroupByTime(request.getInterval());
-        }
+        Flux<TimeSeriesData> dataFlux = helper
+            .queryAggregation(request, sqlBuilder)
+            .mapNotNull(TDengineThingDataHelper::convertToTsData);
         String format = request.getFormat();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format);
 
         if (properties.length == 1) {
             String key = "value_" + properties[0].getAlias();
-            return helper
-                .query(dataSql)
+            return dataFlux
                 .sort(Comparator.comparing(TimeSeriesData::getTimestamp).reversed())
                 .map(timeSeriesData -> {
                     long ts = timeSeriesData.getTimestamp();
@@ -122,8 +125,7 @@ class TDengineRowModeQueryOperations extends RowModeQueryOperationsBase {
                 .take(request.getLimit())
                 ;
         }
-        return helper
-            .query(dataSql)
+        return dataFlux
             .map(timeSeriesData -> {
                 long ts = timeSeriesData.getTimestamp();
                 Map<String, Object> newData = timeSeriesData.getData();
@@ -20,6 +20,7 @@ import org.jetlinks.core.metadata.DataType;
 import org.jetlinks.community.Interval;
 import org.jetlinks.community.tdengine.Point;
 import org.jetlinks.community.tdengine.TDengineOperations;
+import org.jetlinks.community.things.data.AggregationRequest;
 import org.jetlinks.community.things.data.MetricMetadataManager;
 import org.jetlinks.community.things.data.PropertyAggregation;
 import org.jetlinks.community.timeseries.TimeSeriesData;
@@ -37,6 +38,7 @@ import reactor.core.publisher.Mono;
 import reactor.function.Predicate3;
 
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 
@@ -52,6 +54,8 @@ class TDengineThingDataHelper implements Disposable {
 
     final MetricMetadataManager metadataManager;
 
+    final TDengineAggregationCache aggregationCache = new TDengineAggregationCache();
+
     //转换聚合函数
     public static String convertAggFunction(PropertyAggregation agg) {
         switch (agg.getAgg()) {
@@ -168,6 +172,20 @@ class TDengineThingDataHelper implements Disposable {
             .mapNotNull(TDengineThingDataHelper::convertToTsData);
     }
 
+    /**
+     * 执行按时间分组的聚合查询,已经结束的周期将使用缓存
+     *
+     * @param request    聚合请求
+     * @param sqlBuilder 根据时间范围构造SQL
+     * @return 查询结果
+     * @see TDengineAggregationCache
+     */
+    public Flux<Map<String, Object>> queryAggregation(AggregationRequest request,
+                                                      BiFunction<Date, Date, String> sqlBuilder) {
+        return aggregationCache
+            .query(request, sqlBuilder, sql -> operations.forQuery().query(sql, ResultWrappers.map()));
+    }
+
     protected Flux<TimeSeriesData> doQuery(String metric, Query<?, QueryParamEntity> query) {
         QueryParamEntity param = query.getParam();
         StringJoiner joiner = new StringJoiner("");
@@ -219,7 +237,7 @@ class TDengineThingDataHelper implements Disposable {
 
     private static final DateTimeFormatter format = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss.SSS");
 
-    private static Date convertTs(Object ts) {
+    static Date convertTs(Object ts) {
         if (ts == null) {
             throw new IllegalArgumentException();
         }
@@ -278,6 +296,7 @@ class TDengineThingDataHelper implements Disposable {
 
     @Override
     public void dispose() {
+        aggregationCache.clear();
         operations.dispose();
     }
 }
@@ -0,0 +1,263 @@
+package org.jetlinks.community.things.data;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * 以long为key的并发Map,使用分段的开放寻址哈希表存储,避免装箱以及{@link java.util.concurrent.ConcurrentHashMap}的节点对象开销.
+ * <p>
+ * 物数据的key由物ID标记和属性标记组成,直接哈希冲突严重,因此存储前会对key进行可逆的乘法混淆.
+ * <p>
+ * 读取不加锁:哈希表通过volatile发布,写入时先写key再写value,删除时只将value标记为已删除,
+ * 读取时只要读到value就能读到对应的key.修改操作按分段加锁,扩容时创建新的哈希表并清理已删除的数据.
+ *
+ * @param <V> 值类型
+ * @author zhouhao
+ * @since 2.3
+ */
+class ConcurrentLongMap<V> {
+
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+    //MIX的模逆元,用于还原key
+    private static final long UNMIX = 0xF1DE83E19937733DL;
+
+    private static final int SEGMENT_BITS = 6;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    //已删除标记
+    private static final Object REMOVED = new Object();
+
+    private final Segment<V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    ConcurrentLongMap() {
+        segments = new Segment[1 << SEGMENT_BITS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment<>();
+        }
+    }
+
+    private Segment<V> segment(long mixed) {
+        return segments[(int) (mixed >>> (64 - SEGMENT_BITS))];
+    }
+
+    public V get(long key) {
+        long mixed = key * MIX;
+        return segment(mixed).get(mixed);
+    }
+
+    public V computeIfAbsent(long key, LongFunction<V> mapping) {
+        long mixed = key * MIX;
+        Segment<V> segment = segment(mixed);
+        V value = segment.get(mixed);
+        if (value != null) {
+            return value;
+        }
+        synchronized (segment) {
+            value = segment.get(mixed);
+            if (value == null) {
+                value = mapping.apply(key);
+                segment.put(mixed, value);
+            }
+            return value;
+        }
+    }
+
+    public V remove(long key) {
+        long mixed = key * MIX;
+        Segment<V> segment = segment(mixed);
+        synchronized (segment) {
+            return segment.remove(mixed, null);
+        }
+    }
+
+    public boolean remove(long key, V value) {
+        long mixed = key * MIX;
+        Segment<V> segment = segment(mixed);
+        synchronized (segment) {
+            return segment.remove(mixed, value) != null;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * @return 分段数量
+     */
+    public int segments() {
+        return segments.length;
+    }
+
+    /**
+     * 遍历所有数据,每个分段会先复制快照,回调不会阻塞其他线程对Map的操作.
+     *
+     * @param consumer 回调
+     */
+    public void forEach(LongObjectConsumer<V> consumer) {
+        for (int i = 0; i < segments.length; i++) {
+            forEach(i, consumer);
+        }
+    }
+
+    /**
+     * 遍历指定分段的数据,可用于将全量遍历拆分为多个小任务执行.
+     *
+     * @param segmentIndex 分段序号,见{@link #segments()}
+     * @param consumer     回调
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(int segmentIndex, LongObjectConsumer<V> consumer) {
+        Segment<V> segment = segments[segmentIndex];
+        long[] keys;
+        Object[] values;
+        synchronized (segment) {
+            Table table = segment.table;
+            keys = new long[segment.size];
+            values = new Object[keys.length];
+            int i = 0;
+            for (int idx = 0, len = table.keys.length; idx < len && i < keys.length; idx++) {
+                Object value = table.values.get(idx);
+                if (value != null && value != REMOVED) {
+                    keys[i] = table.keys[idx];
+                    values[i++] = value;
+                }
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            consumer.accept(keys[i] * UNMIX, (V) values[i]);
+        }
+    }
+
+    interface LongObjectConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private static int hash(long mixed) {
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    //哈希表,value为null表示空槽,已经写入key的槽不会再写入其他的key
+    private static class Table {
+        private final long[] keys;
+        private final AtomicReferenceArray<Object> values;
+        private final int mask;
+
+        //已使用的槽数量,包含已删除的槽
+        private int used;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        //查找key所在的槽,不存在时返回-1
+        int indexOf(long mixed) {
+            int idx = hash(mixed) & mask;
+            for (int i = 0; i <= mask; i++) {
+                Object value = values.get(idx);
+                if (value == null) {
+                    return -1;
+                }
+                if (keys[idx] == mixed) {
+                    return idx;
+                }
+                idx = (idx + 1) & mask;
+            }
+            return -1;
+        }
+    }
+
+    private static class Segment<V> {
+        private volatile Table table = new Table(INITIAL_CAPACITY);
+
+        //只在持有锁时修改
+        private volatile int size;
+
+        @SuppressWarnings("unchecked")
+        V get(long mixed) {
+            Table table = this.table;
+            int idx = table.indexOf(mixed);
+            if (idx < 0) {
+                return null;
+            }
+            Object value = table.values.get(idx);
+            return value == REMOVED ? null : (V) value;
+        }
+
+        //需要持有锁
+        void put(long mixed, V value) {
+            Table table = this.table;
+            int idx = table.indexOf(mixed);
+            if (idx >= 0) {
+                if (table.values.getAndSet(idx, value) == REMOVED) {
+                    size++;
+                }
+                return;
+            }
+            //负载超过3/4时扩容,同时清理已删除的数据
+            if ((table.used + 1) * 4 > table.keys.length * 3) {
+                table = resize(table);
+            }
+            idx = hash(mixed) & table.mask;
+            while (table.values.get(idx) != null) {
+                idx = (idx + 1) & table.mask;
+            }
+            //先写key再写value,读取到value时一定能读取到key
+            table.keys[idx] = mixed;
+            table.values.set(idx, value);
+            table.used++;
+            size++;
+        }
+
+        //需要持有锁,expect为null时不判断原值
+        @SuppressWarnings("unchecked")
+        V remove(long mixed, V expect) {
+            Table table = this.table;
+            int idx = table.indexOf(mixed);
+            if (idx < 0) {
+                return null;
+            }
+            Object value = table.values.get(idx);
+            if (value == REMOVED || (expect != null && value != expect)) {
+                return null;
+            }
+            table.values.set(idx, REMOVED);
+            size--;
+            return (V) value;
+        }
+
+        private Table resize(Table old) {
+            int capacity = INITIAL_CAPACITY;
+            //扩容后的负载不超过1/2
+            while (capacity < (size + 1) * 2) {
+                capacity <<= 1;
+            }
+            Table table = new Table(capacity);
+            for (int i = 0, len = old.keys.length; i < len; i++) {
+                Object value = old.values.get(i);
+                if (value == null || value == REMOVED) {
+                    continue;
+                }
+                long mixed = old.keys[i];
+                int idx = hash(mixed) & table.mask;
+                while (table.values.get(idx) != null) {
+                    idx = (idx + 1) & table.mask;
+                }
+                table.keys[idx] = mixed;
+                table.values.lazySet(idx, value);
+                table.used++;
+            }
+            //发布新的哈希表
+            this.table = table;
+            return table;
+        }
+    }
+}
@@ -27,12 +27,17 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
 import reactor.function.Function4;
 import reactor.util.function.Tuple3;
 import reactor.util.function.Tuples;
 
 import javax.annotation.Nonnull;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -41,7 +46,8 @@ import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 @Slf4j
@@ -50,6 +56,9 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
     private static final AtomicIntegerFieldUpdater<LocalFileThingsDataManager>
         TAG_INC = AtomicIntegerFieldUpdater.newUpdater(LocalFileThingsDataManager.class, "tagInc");
 
+    private static final AtomicLongFieldUpdater<LocalFileThingsDataManager>
+        DIRTY_SIZE = AtomicLongFieldUpdater.newUpdater(LocalFileThingsDataManager.class, "dirtySize");
+
     //单个属性最大缓存数量 java -Dthings.data.store.max-size=8
     static int DEFAULT_MAX_STORE_SIZE_EACH_KEY = Integer
         .parseInt(
@@ -61,6 +70,24 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
             System.getProperty("jetlinks.things.data.store.flush-interval", "30s")
         );
 
+    //增量写入磁盘的间隔 java -Djetlinks.things.data.store.checkpoint-interval=1s
+    static Duration CHECKPOINT_INTERVAL = TimeUtils
+        .parse(
+            System.getProperty("jetlinks.things.data.store.checkpoint-interval", "1s")
+        );
+
+    //每批次最大写入数量
+    static int CHECKPOINT_CHUNK_SIZE = Integer
+        .parseInt(
+            System.getProperty("jetlinks.things.data.store.checkpoint-chunk-size", "2048")
+        );
+
+    //每批次最大执行时间,超过后让出写入线程,下一批次重新调度.
+    static Duration CHECKPOINT_TIME_BUDGET = TimeUtils
+        .parse(
+            System.getProperty("jetlinks.things.data.store.checkpoint-time-budget", "20ms")
+        );
+
     static int CACHE_SIZE = (int) Math.max(64, Runtime.getRuntime().maxMemory() / 1024 / 1024 / 64);
 
     protected final MVStore mvStore;
@@ -69,15 +96,25 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
     private final Map<String, Integer> tagCache = new ConcurrentHashMap<>();
     private final MVMap<String, Integer> tagStore;
 
-    //  历史数据缓存
-    // key为什么不直接使用Long?因为tag的生成规则会导致hash冲突严重.(同一个物实例的所有属性tag hash值一样)
-    private final Map<StoreKey, PropertyHistory> l1Cache = new ConcurrentHashMap<>();
+    //  历史数据缓存,key为物实例和属性组成的tag,见getPropertyStoreIndex.
+    private final ConcurrentLongMap<PropertyHistory> l1Cache = new ConcurrentLongMap<>();
     private final MVMap<Long, PropertyHistory> historyStore;
     private final Scheduler writerScheduler = Schedulers.newSingle("things-data-writer");
     private final Scheduler readerScheduler = Schedulers.newSingle("things-data-reader");
     private final Disposable.Composite disposable = Disposables.composite();
     private volatile int tagInc;
 
+    //等待写入磁盘的数据key,同一个key在写入前只会入队一次.
+    private final Queue<Long> dirtyQueue = Queues.<Long>unboundedMultiproducer().get();
+    private volatile long dirtySize;
+    //最近一次将脏数据全部写入磁盘的时间
+    private volatile long lastCheckpointTime = System.currentTimeMillis();
+    private final LongAdder checkpointBytes = new LongAdder();
+    private final LongAdder checkpointCount = new LongAdder();
+
+    private final String fileName;
+    private ObjectName objectName;
+
     public LocalFileThingsDataManager(String fileName) {
 
         Tuple3<MVStore,
@@ -98,23 +135,33 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
         this.tagStore = tp3.getT2();
         this.historyStore = tp3.getT3();
         this.tagInc = this.tagStore.size();
+        this.fileName = fileName;
         init();
     }
 
     public void shutdown() {
+        this.disposable.dispose();
         flushNow();
         mvStore.close(10_000);
-        this.disposable.dispose();
+        unregisterMbean();
     }
 
     private void init() {
+        //增量写入脏数据
+        disposable.add(
+            Flux.interval(CHECKPOINT_INTERVAL)
+                .onBackpressureDrop()
+                .concatMap(ignore -> checkpointAsync(), 1)
+                .subscribe());
+        //清理空闲的缓存
         disposable.add(
             Flux.interval(FLUSH_INTERVAL)
-                .onBackpressureDrop(dropped -> log.info("flush thing data too slow! in memory size:{}", l1Cache.size()))
-                .concatMap(ignore -> flushAsync(), 1)
+                .onBackpressureDrop(dropped -> log.info("evict thing data too slow! in memory size:{}", l1Cache.size()))
+                .concatMap(ignore -> evictAsync(), 1)
                 .subscribe());
         disposable.add(this.writerScheduler);
         disposable.add(this.readerScheduler);
+        registerMbean();
     }
 
     static final MVMap.DecisionMaker<PropertyHistory> MERGE = new MVMap.DecisionMaker<PropertyHistory>() {
@@ -130,35 +177,123 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
         }
     };
 
-    synchronized void flushNow() {
+    /**
+     * 将所有脏数据写入磁盘,通常在停止服务时调用.
+     */
+    void flushNow() {
         long ms = System.currentTimeMillis();
-        log.info("flushing thing data, in memory size:{}", l1Cache.size());
-        for (Map.Entry<StoreKey, PropertyHistory> entry : l1Cache.entrySet()) {
-            StoreKey key = entry.getKey();
-            PropertyHistory history = entry.getValue();
+        log.info("flushing thing data, in memory size:{},dirty size:{}", l1Cache.size(), dirtySize);
+        //noinspection StatementWithEmptyBody
+        while (!checkpoint(Integer.MAX_VALUE, 0)) {
+
+        }
+        log.info("flushing thing data complete {}ms, in memory size:{}", System.currentTimeMillis() - ms, l1Cache.size());
+    }
+
+    /**
+     * 将一批脏数据写入磁盘.
+     *
+     * @param maxSize     最大数量
+     * @param budgetNanos  最大执行时间,小于等于0时不限制
+     * @return 是否已经没有脏数据
+     */
+    synchronized boolean checkpoint(int maxSize, long budgetNanos) {
+        long deadline = budgetNanos <= 0 ? 0 : System.nanoTime() + budgetNanos;
+        int count = 0;
+        Long key;
+        while (count < maxSize && (key = dirtyQueue.poll()) != null) {
+            DIRTY_SIZE.decrementAndGet(this);
+            count++;
+            PropertyHistory history = l1Cache.get(key);
+            //已经被删除
+            if (history == null) {
+                continue;
+            }
+            //先移除标记,写入过程中发生的更新将重新入队
+            history.setQueued(false);
             if (!history.isStored()) {
-                historyStore.operate(key.toTag(), history, MERGE);
+                historyStore.operate(key, history, MERGE);
+            }
+            if (deadline > 0 && System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        checkpointCount.add(count);
+        if (dirtyQueue.isEmpty()) {
+            lastCheckpointTime = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 分批写入脏数据,每一批都重新调度到写入线程,避免长时间占用写入线程.
+     */
+    protected Mono<Void> checkpointAsync() {
+        long budget = CHECKPOINT_TIME_BUDGET.toNanos();
+        return Mono
+            .fromCallable(() -> checkpoint(CHECKPOINT_CHUNK_SIZE, budget))
+            .subscribeOn(writerScheduler)
+            .repeat()
+            .takeUntil(Boolean::booleanValue)
+            .then()
+            .onErrorResume(err -> {
+                log.warn("write thing data error. dirty size:{}", dirtySize, err);
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * 按分段清理空闲的缓存,首次标记为空闲,下一次依旧空闲并且已经写入磁盘则移除.
+     */
+    protected Mono<Void> evictAsync() {
+        return Flux
+            .range(0, l1Cache.segments())
+            .concatMap(segment -> Mono
+                .fromRunnable(() -> evict(segment))
+                .subscribeOn(writerScheduler), 1)
+            .then()
+            .onErrorResume(err -> {
+                log.warn("evict thing data error. in memory size:{}", l1Cache.size(), err);
+                return Mono.empty();
+            });
+    }
+
+    private void evict(int segment) {
+        l1Cache.forEach(segment, (key, history) -> {
+            if (!history.isStored()) {
+                //未写入磁盘并且没有在队列中,可能是从集群同步或者从磁盘加载的数据
+                markDirty(key, history);
             }
             //上一次被标记为空闲,则本次移除
-            if (history.isIdle()) {
-                l1Cache.remove(key);
+            else if (history.isIdle()) {
+                if (!history.isQueued()) {
+                    l1Cache.remove(key, history);
+                }
             }
             //标记为空闲
             else {
                 history.setIdle(true);
             }
+        });
+    }
+
+    /**
+     * 标记数据需要写入磁盘
+     */
+    private void markDirty(long key, PropertyHistory history) {
+        if (history.tryQueue()) {
+            DIRTY_SIZE.incrementAndGet(this);
+            dirtyQueue.offer(key);
         }
-        log.info("flushing thing data complete {}ms, in memory size:{}", System.currentTimeMillis() - ms, l1Cache.size());
     }
 
+    /**
+     * @deprecated 已使用增量写入代替
+     */
+    @Deprecated
     protected Mono<Void> flushAsync() {
-        return Mono
-            .<Void>fromRunnable(this::flushNow)
-            .subscribeOn(writerScheduler)
-            .onErrorResume(err -> {
-                log.warn("write thing data error. in memory size:{}", l1Cache.size(), err);
-                return Mono.empty();
-            });
+        return checkpointAsync();
     }
 
     @Override
@@ -239,7 +374,7 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
                                      String thingId,
                                      String property,
                                      Function<PropertyHistory, T> mapper) {
-        StoreKey key = getPropertyStoreKeyObj(thingType, thingId, property);
+        long key = getPropertyStoreIndex(thingType, thingId, property);
         PropertyHistory his = l1Cache.get(key);
         //fast path
         if (his != null && !his.isDirty()) {
@@ -248,7 +383,7 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
         // slow path
         return Mono
             .fromCallable(() -> {
-                PropertyHistory _his = historyStore.get(key.toTag());
+                PropertyHistory _his = historyStore.get(key);
                 if (_his != null) {
 
                     PropertyHistory l1 = l1Cache.computeIfAbsent(
@@ -256,6 +391,9 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
                     if (l1.isDirty() && _his != l1) {
                         l1.merge(_his);
                     }
+                    if (!l1.isStored()) {
+                        markDirty(key, l1);
+                    }
                     return mapper.apply(l1);
 
                 }
@@ -322,7 +460,7 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
             if (tag == thingTag) {
                 PropertyHistory propertyStore = cursor.getValue();
                 //与一级缓存进行合并
-                PropertyHistory l1 = l1Cache.get(new StoreKey(thingTag, (int) (key - (key << 32))));
+                PropertyHistory l1 = l1Cache.get(key);
                 if (l1 != null && l1.isDirty()) {
                     l1.merge(propertyStore);
                     propertyStore = l1;
@@ -401,12 +539,6 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
         return (thingTag << 32) + propertyTag;
     }
 
-    protected StoreKey getPropertyStoreKeyObj(String thingType, String thingId, String property) {
-        long thingTag = getThingIndex(thingType, thingId);
-        int propertyTag = getIndex(property);
-        return new StoreKey(thingTag, propertyTag);
-    }
-
     @Nonnull
     @Override
     public Mono<Void> updateProperty(@Nonnull String thingType,
@@ -426,27 +558,27 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
                                          String state) {
 
 
-        StoreKey key = getPropertyStoreKeyObj(thingType, thingId, property);
+        long key = getPropertyStoreIndex(thingType, thingId, property);
 
         PropertyHistory propertyStore = l1Cache.computeIfAbsent(key, k -> new PropertyHistory().setDirty(true));
-        Property p = new Property();
-        p.setTime(timestamp);
-        p.setValue(tryIntern(value));
-        p.setState(RecyclerUtils.intern(state));
-        propertyStore.update(p);
+        propertyStore.update(timestamp, value, RecyclerUtils.intern(state));
+        markDirty(key, propertyStore);
     }
 
     protected final Mono<Void> updateProperty(String thingType,
                                               String thingId,
                                               String property,
                                               PropertyHistory propertyHistory) {
-        StoreKey storeKey = getPropertyStoreKeyObj(thingType, thingId, property);
+        long storeKey = getPropertyStoreIndex(thingType, thingId, property);
 
         PropertyHistory history = l1Cache
             .computeIfAbsent(storeKey, (ignore) -> new PropertyHistory().setDirty(true));
 
         //直接合并1级缓存
         history.merge(propertyHistory);
+        if (!history.isStored()) {
+            markDirty(storeKey, history);
+        }
 
         return Mono.empty();
 
@@ -485,11 +617,8 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
                     null,
                     null,
                     (init, arg, key, value) -> {
-                        long thingTag = key >> 32;
-                        int propertyTag = (int) (key - (key << 32));
-
                         historyStore.remove(key);
-                        l1Cache.remove(new StoreKey(thingTag, propertyTag));
+                        l1Cache.remove(key);
                         return null;
                     }))
             .subscribeOn(writerScheduler);
@@ -517,12 +646,12 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
     public Mono<Void> removeProperty(@Nonnull String thingType,
                                      @Nonnull String thingId,
                                      @Nonnull String property) {
-        StoreKey key = getPropertyStoreKeyObj(thingType, thingId, property);
+        long key = getPropertyStoreIndex(thingType, thingId, property);
 
         l1Cache.remove(key);
 
         return Mono
-            .fromRunnable(() -> historyStore.remove(key.toTag()))
+            .fromRunnable(() -> historyStore.remove(key))
             .subscribeOn(writerScheduler)
             .then();
     }
@@ -591,22 +720,30 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
 
     }
 
-    @AllArgsConstructor
-    @EqualsAndHashCode(cacheStrategy = EqualsAndHashCode.CacheStrategy.LAZY)
-    protected static class StoreKey {
-        protected final long thingTag;
-        protected final int propertyTag;
-
-        public long toTag() {
-            return (thingTag << 32) + propertyTag;
-        }
-    }
-
+    /**
+     * 属性历史数据,按列存储:时间戳和数字类型的值使用原始类型数组存储,
+     * 仅在存在非数字类型的值或者状态时才分配对象数组.
+     * <p>
+     * 数据按时间倒序存储在环形缓冲区中,<code>head</code>为最新的数据,最多存储{@link #DEFAULT_MAX_STORE_SIZE_EACH_KEY}条.
+     */
     public static class PropertyHistory implements Externalizable {
         private static final byte
             STORED = 1, //已经持久化
             IDLE = 1 << 1,  //空闲的
-            DIRTY = 1 << 2; //脏数据,等待和磁盘中的数据合并
+            DIRTY = 1 << 2, //脏数据,等待和磁盘中的数据合并
+            QUEUED = 1 << 3; //已在写入队列中
+
+        //值类型
+        private static final byte
+            TYPE_OBJECT = 0,
+            TYPE_INT = 1,
+            TYPE_LONG = 2,
+            TYPE_DOUBLE = 3,
+            TYPE_FLOAT = 4,
+            TYPE_SHORT = 5,
+            TYPE_BYTE = 6,
+            TYPE_BOOLEAN = 7;
+
         private static final Property NULL = new Property();
 
         static {
@@ -614,24 +751,60 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
         }
 
         private Property first;
-        private volatile Property last;
 
-        //   private long minTime = -1;
+        private long[] times;
+        //数字类型的值,浮点数存储为bits
+        private long[] numbers;
+        private byte[] types;
+        //非数字类型的值,按需分配
+        private Object[] objects;
+        //状态,按需分配
+        private String[] states;
+
+        //最新数据的位置
+        private int head;
+        private volatile int size;
 
         private transient volatile byte state;
 
+        private static int maxSize() {
+            return Math.max(1, DEFAULT_MAX_STORE_SIZE_EACH_KEY);
+        }
+
+        private int index(int i) {
+            int idx = head + i;
+            return idx >= times.length ? idx - times.length : idx;
+        }
+
         PropertyHistory merge(PropertyHistory another) {
-            if (another == null) {
+            if (another == null || another == this) {
                 return this;
             }
+            //先复制快照,避免同时持有两个锁
+            Property anotherFirst;
+            PropertyHistory snapshot = new PropertyHistory();
+            synchronized (another) {
+                anotherFirst = another.first;
+                for (int i = another.size - 1; i >= 0; i--) {
+                    int idx = another.index(i);
+                    snapshot.insertUnsafe(another.times[idx],
+                                          another.types[idx],
+                                          another.numbers[idx],
+                                          another.objects == null ? null : another.objects[idx],
+                                          another.stateUnsafe(idx));
+                }
+            }
             synchronized (this) {
-                if (this.first == null) {
-                    this.first = another.first.copy();
-                } else if (another.first != null && another.first.time < this.first.time) {
-                    this.first = another.first.copy();
+                if (anotherFirst != null && (this.first == null || anotherFirst.time < this.first.time)) {
+                    this.first = anotherFirst.copy();
                 }
-                if (another.last != null) {
-                    another.last.forEach(pro -> updateLastUnsafe(pro.copy()));
+                for (int i = snapshot.size - 1; i >= 0; i--) {
+                    int idx = snapshot.index(i);
+                    insertUnsafe(snapshot.times[idx],
+                                 snapshot.types[idx],
+                                 snapshot.numbers[idx],
+                                 snapshot.objects == null ? null : snapshot.objects[idx],
+                                 snapshot.stateUnsafe(idx));
                 }
             }
             return this;
@@ -670,6 +843,36 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
             }
         }
 
+        boolean isQueued() {
+            synchronized (this) {
+                return (state & QUEUED) != 0;
+            }
+        }
+
+        void setQueued(boolean queued) {
+            synchronized (this) {
+                setStateUnsafe(queued, QUEUED);
+            }
+        }
+
+        /**
+         * 尝试标记为已在写入队列中
+         *
+         * @return 之前未在队列中则返回<code>true</code>,需要由调用方入队
+         */
+        boolean tryQueue() {
+            if ((state & QUEUED) != 0) {
+                return false;
+            }
+            synchronized (this) {
+                if ((state & QUEUED) != 0) {
+                    return false;
+                }
+                setStateUnsafe(true, QUEUED);
+                return true;
+            }
+        }
+
         boolean isDirty() {
             synchronized (this) {
                 return (state & DIRTY) != 0;
@@ -683,27 +886,38 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
             return this;
         }
 
+        public Property getFirst() {
+            return first;
+        }
 
         public Property getProperty(long baseTime) {
             setIdle(false);
-            if (last == null) {
+            if (size == 0) {
                 return null;
             }
             synchronized (this) {
-                return last.getProperty(baseTime);
+                for (int i = 0; i < size; i++) {
+                    int idx = index(i);
+                    if (times[idx] <= baseTime) {
+                        return toPropertyUnsafe(idx);
+                    }
+                }
             }
+            return null;
         }
 
         public Long lastKey() {
             setIdle(false);
-            if (last == null) {
+            if (size == 0) {
                 return null;
             }
-            return last.time;
+            synchronized (this) {
+                return times[head];
+            }
         }
 
         public List<ThingProperty> getProperties(String property, long from, long to) {
-            if (last == null) {
+            if (size == 0) {
                 return Collections.emptyList();
             }
             if (DEFAULT_MAX_STORE_SIZE_EACH_KEY == 0) {
@@ -712,11 +926,11 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
             List<ThingProperty> properties = new ArrayList<>(Math.min(32, DEFAULT_MAX_STORE_SIZE_EACH_KEY));
             synchronized (this) {
                 setStateUnsafe(false, IDLE);
-                Property prop = last;
-                while (prop != null) {
-                    if (prop.time >= from && prop.time < to) {
-                        properties.add(prop.toProperty(property));
-                        prop = prop.older;
+                for (int i = 0; i < size; i++) {
+                    int idx = index(i);
+                    long time = times[idx];
+                    if (time >= from && time < to) {
+                        properties.add(SimplePropertyValue.of(property, valueUnsafe(idx), time, stateUnsafe(idx)));
                     } else {
                         break;
                     }
@@ -725,68 +939,221 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
             return properties;
         }
 
+        private Property toPropertyUnsafe(int idx) {
+            return new Property(times[idx], stateUnsafe(idx), valueUnsafe(idx));
+        }
 
-        @SuppressWarnings("all")
-        public void updateLastUnsafe(Property ref) {
-            if (last == null) {
-                last = ref;
+        private String stateUnsafe(int idx) {
+            return states == null ? null : states[idx];
+        }
+
+        private Object valueUnsafe(int idx) {
+            long number = numbers[idx];
+            switch (types[idx]) {
+                case TYPE_INT:
+                    return (int) number;
+                case TYPE_LONG:
+                    return number;
+                case TYPE_DOUBLE:
+                    return Double.longBitsToDouble(number);
+                case TYPE_FLOAT:
+                    return Float.intBitsToFloat((int) number);
+                case TYPE_SHORT:
+                    return (short) number;
+                case TYPE_BYTE:
+                    return (byte) number;
+                case TYPE_BOOLEAN:
+                    return number != 0;
+                default:
+                    return objects == null ? null : objects[idx];
+            }
+        }
+
+        private static byte typeOf(Object value) {
+            if (value instanceof Integer) {
+                return TYPE_INT;
+            }
+            if (value instanceof Double) {
+                return TYPE_DOUBLE;
+            }
+            if (value instanceof Long) {
+                return TYPE_LONG;
+            }
+            if (value instanceof Float) {
+                return TYPE_FLOAT;
+            }
+            if (value instanceof Short) {
+                return TYPE_SHORT;
+            }
+            if (value instanceof Byte) {
+                return TYPE_BYTE;
+            }
+            if (value instanceof Boolean) {
+                return TYPE_BOOLEAN;
+            }
+            return TYPE_OBJECT;
+        }
+
+        private static long toNumber(byte type, Object value) {
+            switch (type) {
+                case TYPE_DOUBLE:
+                    return Double.doubleToRawLongBits((Double) value);
+                case TYPE_FLOAT:
+                    return Float.floatToRawIntBits((Float) value);
+                case TYPE_BOOLEAN:
+                    return ((Boolean) value) ? 1 : 0;
+                case TYPE_OBJECT:
+                    return 0;
+                default:
+                    return ((Number) value).longValue();
+            }
+        }
+
+        /**
+         * 写入数据,按时间倒序插入到对应的位置,相同时间则覆盖.
+         */
+        private void insertUnsafe(long time, byte type, long number, Object object, String state) {
+            int max = maxSize();
+            int pos = 0;
+            for (; pos < size; pos++) {
+                int idx = index(pos);
+                long t = times[idx];
+                //相同时间,直接更新值
+                if (t == time) {
+                    setUnsafe(idx, time, type, number, object, state);
+                    return;
+                }
+                if (t < time) {
+                    break;
+                }
+            }
+            //比已有的数据都旧,并且已经满了
+            if (pos >= max) {
+                return;
+            }
+            if (times == null || (size == times.length && size < max)) {
+                grow(max);
+            }
+            int capacity = times.length;
+            boolean full = size == capacity;
+            if (pos == 0) {
+                //最新的数据,移动head即可.满了则覆盖最旧的数据
+                head = head == 0 ? capacity - 1 : head - 1;
             } else {
-                last = last.update(ref, 1);
+                //插入到中间,后移更旧的数据
+                for (int i = full ? size - 1 : size; i > pos; i--) {
+                    copyUnsafe(index(i - 1), index(i));
+                }
+            }
+            if (!full) {
+                size++;
             }
+            setUnsafe(index(pos), time, type, number, object, state);
         }
 
-        @SuppressWarnings("all")
-        public void updateUnsafe(Property ref) {
-            //更新首次时间
-            if (first == null) {
-                first = ref;
-            } else if (first.time >= ref.time) {
-                first.time = ref.time;
-                first.state = ref.state;
-                first.value = ref.value;
+        private void grow(int max) {
+            int capacity = times == null ? 1 : Math.min(max, times.length * 2);
+            long[] newTimes = new long[capacity];
+            long[] newNumbers = new long[capacity];
+            byte[] newTypes = new byte[capacity];
+            Object[] newObjects = objects == null ? null : new Object[capacity];
+            String[] newStates = states == null ? null : new String[capacity];
+            for (int i = 0; i < size; i++) {
+                int idx = index(i);
+                newTimes[i] = times[idx];
+                newNumbers[i] = numbers[idx];
+                newTypes[i] = types[idx];
+                if (newObjects != null) {
+                    newObjects[i] = objects[idx];
+                }
+                if (newStates != null) {
+                    newStates[i] = states[idx];
+                }
             }
-            updateLastUnsafe(ref);
-            setStateUnsafe(false, IDLE);
+            times = newTimes;
+            numbers = newNumbers;
+            types = newTypes;
+            objects = newObjects;
+            states = newStates;
+            head = 0;
         }
 
-        Collection<Property> values(Collection<Property> properties) {
-            for (Property prop = last; prop != null; prop = prop.older) {
-                properties.add(prop);
+        private void copyUnsafe(int from, int to) {
+            times[to] = times[from];
+            numbers[to] = numbers[from];
+            types[to] = types[from];
+            if (objects != null) {
+                objects[to] = objects[from];
+            }
+            if (states != null) {
+                states[to] = states[from];
+            }
+        }
+
+        private void setUnsafe(int idx, long time, byte type, long number, Object object, String state) {
+            times[idx] = time;
+            types[idx] = type;
+            numbers[idx] = number;
+            if (type == TYPE_OBJECT && object != null) {
+                if (objects == null) {
+                    objects = new Object[times.length];
+                }
+                objects[idx] = object;
+            } else if (objects != null) {
+                objects[idx] = null;
+            }
+            if (state != null) {
+                if (states == null) {
+                    states = new String[times.length];
+                }
+                states[idx] = state;
+            } else if (states != null) {
+                states[idx] = null;
             }
-            return properties;
         }
 
-        Collection<Property> values() {
-            return values(new ArrayList<>(DEFAULT_MAX_STORE_SIZE_EACH_KEY));
+        private void updateUnsafe(long time, Object value, String state) {
+            //更新首次时间
+            if (first == null) {
+                first = new Property(time, state, value);
+            } else if (first.time >= time) {
+                first.time = time;
+                first.state = state;
+                first.value = value;
+            }
+            byte type = typeOf(value);
+            insertUnsafe(time, type, toNumber(type, value), type == TYPE_OBJECT ? tryIntern(value) : null, state);
+            setStateUnsafe(false, IDLE);
         }
 
         //更新
-        public void update(Property ref) {
+        public void update(long time, Object value, String state) {
             synchronized (this) {
-                updateUnsafe(ref);
+                updateUnsafe(time, value, state);
                 setStateUnsafe(false, STORED);
             }
         }
 
+        //更新
+        public void update(Property ref) {
+            update(ref.time, ref.value, ref.state);
+        }
+
         @Override
         public void writeExternal(ObjectOutput out) throws IOException {
-            Collection<Property> properties = this.values();
-            int size = Math.min(properties.size(), DEFAULT_MAX_STORE_SIZE_EACH_KEY);
-            out.writeShort(size);
-            for (Property ref : properties) {
-                if (size-- == 0) {
-                    break;
-                }
-                ref.writeExternal(out);
-            }
-            if (size > 0) {
+            synchronized (this) {
+                int size = Math.min(this.size, DEFAULT_MAX_STORE_SIZE_EACH_KEY);
+                out.writeShort(size);
                 for (int i = 0; i < size; i++) {
-                    NULL.writeExternal(out);
+                    int idx = index(i);
+                    out.writeLong(times[idx]);
+                    SerializeUtils.writeObject(stateUnsafe(idx), out);
+                    SerializeUtils.writeObject(valueUnsafe(idx), out);
+                }
+                out.writeBoolean(first != null);
+                if (first != null) {
+                    first.writeExternal(out);
                 }
-            }
-            out.writeBoolean(first != null);
-            if (first != null) {
-                first.writeExternal(out);
             }
         }
 
@@ -796,12 +1163,14 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
             int len = in.readShort();
             synchronized (this) {
                 for (int i = 0; i < len; i++) {
-                    Property property = new Property();
-                    property.readExternal(in);
-                    if (property.time == NULL.time) {
+                    long time = in.readLong();
+                    String state = (String) tryIntern(SerializeUtils.readObject(in));
+                    Object value = SerializeUtils.readObject(in);
+                    if (time == NULL.time) {
                         continue;
                     }
-                    this.updateLastUnsafe(property);
+                    byte type = typeOf(value);
+                    insertUnsafe(time, type, toNumber(type, value), type == TYPE_OBJECT ? tryIntern(value) : null, state);
                 }
                 if (in.readBoolean()) {
                     this.first = new Property();
@@ -811,10 +1180,27 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
         }
 
         public int memory() {
-            if (last != null) {
-                return last.memory();
+            // 对象固定大小
+            int i = 48;
+            if (times == null) {
+                return i;
             }
-            return 16;
+            //时间,数字值,类型
+            i += times.length * 17;
+            for (int idx = 0; idx < times.length; idx++) {
+                if (objects != null) {
+                    Object value = objects[idx];
+                    if (value instanceof String) {
+                        i += ((String) value).length() * 2;
+                    } else if (value != null) {
+                        i += 64;
+                    }
+                }
+                if (states != null && states[idx] != null) {
+                    i += states[idx].length() * 2;
+                }
+            }
+            return i;
         }
     }
 
@@ -869,92 +1255,15 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
 
     @Getter
     @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class Property implements Externalizable {
         private long time;
         private String state;
         private Object value;
-        private transient Property older;
-
-        int olderSize() {
-            int i = 0;
-            Property _o = older;
-            while (_o != null) {
-                i++;
-                _o = _o.older;
-            }
-            return i;
-        }
 
         public Property copy() {
-            Property property = new Property();
-            property.time = this.time;
-            property.state = this.state;
-            property.value = this.value;
-            return property;
-        }
-
-        protected void forEach(Consumer<Property> consumer) {
-            for (Property that = this;
-                 that != null;
-                 that = that.older) {
-                consumer.accept(that);
-            }
-        }
-
-        private Property getProperty(long baseTime) {
-            if (time <= baseTime) {
-                return this;
-            }
-            if (older != null) {
-                return older.getProperty(baseTime);
-            }
-            return null;
-        }
-
-        private void computeCapacity(int deep) {
-            int itr = DEFAULT_MAX_STORE_SIZE_EACH_KEY - deep;
-            if (itr <= 0) {
-                this.older = null;
-                return;
-            }
-            Property node = this.older;
-            while (node != null && --itr > 0) {
-                node = node.older;
-            }
-            if (node != null) {
-                node.older = null;
-            }
-        }
-
-        public Property update(Property property) {
-            return update(property, 1);
-        }
-
-        private Property update(Property property, int deep) {
-            if (this == property) {
-                return this;
-            }
-            //新的数据,更新节点
-            if (property.time > this.time) {
-                property.older = this;
-                property.computeCapacity(deep);
-                return property;
-            }
-            //旧的数据?
-            if (property.time < this.time) {
-                if (older != null) {
-                    older = older.update(property, deep + 1);
-                } else {
-                    property.older = null;
-                    older = property;
-                }
-                computeCapacity(deep);
-                return this;
-            }
-            //相同时间,直接更新值
-            this.state = property.state;
-            this.value = property.value;
-            return this;
+            return new Property(time, state, value);
         }
 
         public ThingProperty toProperty(String property) {
@@ -970,22 +1279,16 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
         public int memory() {
             // 对象固定大小 this (32) + time (8)
             int i = 40;
-
-            for (Property property = this;
-                 property != null;
-                 property = property.older) {
-                Object value = property.value;
-                //数字,固定8
-                if (value instanceof Number) {
-                    i += 8;
-                } else if (value instanceof String) {
-                    i += ((String) value).length() * 2;
-                } else {
-                    i += 64;
-                }
-                if (property.state != null) {
-                    i += property.state.length() * 2;
-                }
+            //数字,固定8
+            if (value instanceof Number) {
+                i += 8;
+            } else if (value instanceof String) {
+                i += ((String) value).length() * 2;
+            } else {
+                i += 64;
+            }
+            if (state != null) {
+                i += state.length() * 2;
             }
             return i;
         }
@@ -1010,6 +1313,83 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
         }
     }
 
+    void registerMbean() {
+        try {
+            String safeName = new File(fileName).getName().replaceAll("[\\s\\\\/:*?\"<>|]", "_");
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("org.jetlinks:type=ThingsDataManager,name=" + safeName);
+            mBeanServer.registerMBean(new StandardMBean(new ThingsDataManagerMBeanImpl(), ThingsDataManagerMBean.class), objectName);
+        } catch (Throwable error) {
+            log.warn("registerMBean {} error ", fileName, error);
+        }
+    }
+
+    void unregisterMbean() {
+        try {
+            if (objectName != null) {
+                MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Throwable ignore) {
+        }
+    }
+
+    private class ThingsDataManagerMBeanImpl implements ThingsDataManagerMBean {
+
+        @Override
+        public long getMemorySize() {
+            return l1Cache.size();
+        }
+
+        @Override
+        public long getDirtySize() {
+            return dirtySize;
+        }
+
+        @Override
+        public long getCheckpointLag() {
+            if (dirtySize <= 0) {
+                return 0;
+            }
+            return Math.max(0, System.currentTimeMillis() - lastCheckpointTime);
+        }
+
+        @Override
+        public long getCheckpointCount() {
+            return checkpointCount.sum();
+        }
+
+        @Override
+        public long getCheckpointBytes() {
+            return checkpointBytes.sum();
+        }
+
+        @Override
+        public void checkpoint() {
+            checkpointAsync().block();
+        }
+    }
+
+    public interface ThingsDataManagerMBean {
+
+        //内存中缓存的数量
+        long getMemorySize();
+
+        //等待写入磁盘的数量
+        long getDirtySize();
+
+        //距离上一次脏数据全部写入磁盘的毫秒数,没有脏数据时为0
+        long getCheckpointLag();
+
+        //累计处理的脏数据数量
+        long getCheckpointCount();
+
+        //累计写入磁盘的字节数
+        long getCheckpointBytes();
+
+        void checkpoint();
+    }
+
     private class HistoryType extends BasicDataType<PropertyHistory> {
 
         @Override
@@ -1043,6 +1423,7 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
                 data.writeExternal(output);
                 output.flush();
 
+                checkpointBytes.add(buffer.readableBytes());
                 buff.put(buffer.nioBuffer());
             } catch (Throwable err) {
                 log.warn("write thing data error", err);
@@ -1066,6 +1447,7 @@ public class LocalFileThingsDataManager implements ThingsDataManager, ThingsData
                 }
                 output.flush();
 
+                checkpointBytes.add(buffer.readableBytes());
                 buff.put(buffer.nioBuffer());
 
             } catch (Throwable err) {
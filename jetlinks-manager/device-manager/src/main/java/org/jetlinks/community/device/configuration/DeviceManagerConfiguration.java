@@ -7,6 +7,7 @@ import org.jetlinks.community.device.entity.DeviceInstanceEntity;
 import org.jetlinks.community.device.function.ReactorQLDeviceSelectorBuilder;
 import org.jetlinks.community.device.function.RelationDeviceSelectorProvider;
 import org.jetlinks.community.device.message.DeviceMessageConnector;
+import org.jetlinks.community.device.message.DeviceMessageTopicCache;
 import org.jetlinks.community.device.message.writer.TimeSeriesMessageWriterConnector;
 import org.jetlinks.community.device.service.data.*;
 import org.jetlinks.community.rule.engine.executor.DeviceSelectorBuilder;
@@ -33,12 +34,18 @@ import java.time.Duration;
 @EnableConfigurationProperties({DeviceDataStorageProperties.class, DeviceEventProperties.class})
 public class DeviceManagerConfiguration {
 
+    @Bean(initMethod = "registerMbean", destroyMethod = "unregisterMbean")
+    public DeviceMessageTopicCache deviceMessageTopicCache() {
+        return new DeviceMessageTopicCache();
+    }
+
     @Bean
     public DeviceMessageConnector deviceMessageConnector(EventBus eventBus,
                                                          MessageHandler messageHandler,
                                                          DeviceSessionManager sessionManager,
-                                                         DeviceRegistry registry) {
-        return new DeviceMessageConnector(eventBus, registry, messageHandler, sessionManager);
+                                                         DeviceRegistry registry,
+                                                         DeviceMessageTopicCache topicCache) {
+        return new DeviceMessageConnector(eventBus, registry, messageHandler, sessionManager, topicCache);
     }
 
     @Bean
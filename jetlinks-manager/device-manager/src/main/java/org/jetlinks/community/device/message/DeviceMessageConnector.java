@@ -157,14 +157,17 @@ public class DeviceMessageConnector implements DecodedClientMessageHandler {
     private final DeviceRegistry registry;
     private final EventBus eventBus;
     private final MessageHandler messageHandler;
+    private final DeviceMessageTopicCache topicCache;
 
     public DeviceMessageConnector(EventBus eventBus,
                                   DeviceRegistry registry,
                                   MessageHandler messageHandler,
-                                  DeviceSessionManager sessionManager) {
+                                  DeviceSessionManager sessionManager,
+                                  DeviceMessageTopicCache topicCache) {
         this.registry = registry;
         this.eventBus = eventBus;
         this.messageHandler = messageHandler;
+        this.topicCache = topicCache;
         sessionManager.listenEvent(event -> {
             if (event.isClusterExists()) {
                 return Mono.empty();
@@ -240,6 +243,45 @@ public class DeviceMessageConnector implements DecodedClientMessageHandler {
         });
     }
 
+    /**
+     * 创建设备消息的topic,优先使用缓存的设备配置,缓存不存在时从注册中心获取.
+     *
+     * @param deviceRegistry 设备注册中心
+     * @param topicCache     topic缓存
+     * @param message        消息
+     * @return topic
+     */
+    public static Flux<String> createDeviceMessageTopic(DeviceRegistry deviceRegistry,
+                                                        DeviceMessageTopicCache topicCache,
+                                                        Message message) {
+        if (!(message instanceof DeviceMessage)) {
+            return createDeviceMessageTopic(deviceRegistry, message);
+        }
+        //订阅时才读取缓存以及设置消息头,保证在子设备消息等之前的处理完成之后执行
+        return Flux.defer(() -> {
+            DeviceMessage deviceMessage = ((DeviceMessage) message);
+            String deviceId = deviceMessage.getDeviceId();
+            if (deviceId == null) {
+                return createDeviceMessageTopic(deviceRegistry, message);
+            }
+            MessageType type = message.getMessageType();
+            //注册,注销可能修改设备配置
+            if (type == MessageType.REGISTER || type == MessageType.UN_REGISTER) {
+                topicCache.invalidate(deviceId);
+            }
+            DeviceMessageTopicCache.TopicInfo info = topicCache.get(deviceId);
+            if (info != null) {
+                return Flux.fromIterable(info.apply(deviceMessage));
+            }
+            return deviceRegistry
+                .getDevice(deviceId)
+                .flatMap(configGetter)
+                .map(configs -> topicCache.create(deviceId, configs, true))
+                .switchIfEmpty(Mono.fromSupplier(() -> topicCache.create(deviceId, emptyValues, false)))
+                .flatMapIterable(topicInfo -> topicInfo.apply(deviceMessage));
+        });
+    }
+
     public static String createDeviceMessageTopic(String productId, String deviceId, DeviceMessage message) {
         StringBuilder builder = new StringBuilder(64)
                 .append("/device/")
@@ -284,7 +326,7 @@ public class DeviceMessageConnector implements DecodedClientMessageHandler {
     }
 
     private Flux<String> getTopic(Message message) {
-        Flux<String> topicsStream = createDeviceMessageTopic(registry, message);
+        Flux<String> topicsStream = createDeviceMessageTopic(registry, topicCache, message);
         if (message instanceof ChildDeviceMessage) { //子设备消息
             return this
                     .onMessage(((ChildDeviceMessage) message).getChildDeviceMessage())
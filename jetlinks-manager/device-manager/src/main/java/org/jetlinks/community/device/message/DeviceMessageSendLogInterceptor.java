@@ -46,10 +46,12 @@ public class DeviceMessageSendLogInterceptor implements DeviceMessageSenderInter
 
     private final DeviceRegistry registry;
 
+    private final DeviceMessageTopicCache topicCache;
+
     public Mono<Void> doPublish(Message message) {
         message.addHeader(PropertyConstants.uid, IDGenerator.RANDOM.generate());
         return DeviceMessageConnector
-            .createDeviceMessageTopic(registry, message)
+            .createDeviceMessageTopic(registry, topicCache, message)
             .flatMap(topic -> eventBus.publish(topic, message))
             .then()
             ;
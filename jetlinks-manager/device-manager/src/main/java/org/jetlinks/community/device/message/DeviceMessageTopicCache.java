@@ -0,0 +1,224 @@
+package org.jetlinks.community.device.message;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.hswebframework.web.crud.events.EntityDeletedEvent;
+import org.hswebframework.web.crud.events.EntityModifyEvent;
+import org.hswebframework.web.crud.events.EntitySavedEvent;
+import org.jetlinks.community.PropertyConstants;
+import org.jetlinks.community.device.entity.DeviceInstanceEntity;
+import org.jetlinks.community.device.entity.DeviceProductEntity;
+import org.jetlinks.community.device.events.DeviceDeployedEvent;
+import org.jetlinks.community.device.events.DeviceProductDeployEvent;
+import org.jetlinks.community.device.events.DeviceUnregisterEvent;
+import org.jetlinks.core.Values;
+import org.jetlinks.core.message.DeviceMessage;
+import org.springframework.context.event.EventListener;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备消息topic缓存,缓存设备的配置header以及topic前缀,避免每条消息都从注册中心获取配置.
+ * <p>
+ * 在设备激活,注销,修改,删除以及产品发布时失效.由于集群其他节点的修改无法感知,缓存会在写入后一段时间后过期.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+public class DeviceMessageTopicCache {
+
+    private final Cache<String, TopicInfo> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private ObjectName objectName;
+
+    public DeviceMessageTopicCache() {
+        this(Duration.ofMinutes(1), 500_000);
+    }
+
+    public DeviceMessageTopicCache(Duration expires, long maximumSize) {
+        this.cache = Caffeine
+            .newBuilder()
+            .expireAfterWrite(expires)
+            .maximumSize(maximumSize)
+            .build();
+    }
+
+    TopicInfo get(String deviceId) {
+        TopicInfo info = cache.getIfPresent(deviceId);
+        if (info == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return info;
+    }
+
+    /**
+     * 根据设备配置创建topic信息,配置中没有产品ID时不缓存.
+     *
+     * @param deviceId 设备ID
+     * @param configs  设备配置
+     * @return topic信息
+     */
+    TopicInfo create(String deviceId, Values configs, boolean cacheable) {
+        TopicInfo info = new TopicInfo(deviceId, configs.getAllValues());
+        if (cacheable && info.prefix != null) {
+            cache.put(deviceId, info);
+        }
+        return info;
+    }
+
+    public void invalidate(String deviceId) {
+        cache.invalidate(deviceId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private void invalidate(Collection<DeviceInstanceEntity> devices) {
+        for (DeviceInstanceEntity device : devices) {
+            invalidate(device.getId());
+        }
+    }
+
+    @EventListener
+    public void handleDeviceEvent(DeviceDeployedEvent event) {
+        invalidate(event.getDevices());
+    }
+
+    @EventListener
+    public void handleDeviceEvent(DeviceUnregisterEvent event) {
+        invalidate(event.getDevices());
+    }
+
+    @EventListener
+    public void handleDeviceEvent(EntityModifyEvent<DeviceInstanceEntity> event) {
+        invalidate(event.getAfter());
+    }
+
+    @EventListener
+    public void handleDeviceEvent(EntitySavedEvent<DeviceInstanceEntity> event) {
+        invalidate(event.getEntity());
+    }
+
+    @EventListener
+    public void handleDeviceEvent(EntityDeletedEvent<DeviceInstanceEntity> event) {
+        invalidate(event.getEntity());
+    }
+
+    //产品名称等信息变更,设备数量可能较多,直接清空缓存.
+    @EventListener
+    public void handleProductEvent(EntityModifyEvent<DeviceProductEntity> event) {
+        invalidateAll();
+    }
+
+    @EventListener
+    public void handleProductEvent(EntitySavedEvent<DeviceProductEntity> event) {
+        invalidateAll();
+    }
+
+    @EventListener
+    public void handleProductEvent(DeviceProductDeployEvent event) {
+        invalidateAll();
+    }
+
+    public void registerMbean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("org.jetlinks:type=DeviceMessageTopicCache,name=default");
+            mBeanServer.registerMBean(new StandardMBean(new TopicCacheMBeanImpl(), TopicCacheMBean.class), objectName);
+        } catch (Throwable error) {
+            log.warn("registerMBean DeviceMessageTopicCache error ", error);
+        }
+    }
+
+    public void unregisterMbean() {
+        try {
+            if (objectName != null) {
+                MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Throwable ignore) {
+        }
+    }
+
+    static class TopicInfo {
+        //注册中心中的配置,将追加到消息header中
+        private final Map<String, Object> headers;
+        // /device/{productId}/{deviceId}
+        private final String prefix;
+        // /org/{orgId}
+        private final String orgPrefix;
+
+        private TopicInfo(String deviceId, Map<String, Object> headers) {
+            this.headers = headers;
+            Object productId = headers.get(PropertyConstants.productId.getKey());
+            this.prefix = productId == null ? null : "/device/" + productId + "/" + deviceId;
+            Object orgId = headers.get(PropertyConstants.orgId.getKey());
+            this.orgPrefix = orgId == null ? null : "/org/" + orgId;
+        }
+
+        List<String> apply(DeviceMessage message) {
+            headers.forEach(message::addHeader);
+            String topic;
+            if (prefix != null) {
+                StringBuilder builder = new StringBuilder(prefix.length() + 32).append(prefix);
+                DeviceMessageConnector.appendDeviceMessageTopic(message, builder);
+                topic = builder.toString();
+            } else {
+                String productId = message.getHeader(PropertyConstants.productId).orElse("null");
+                topic = DeviceMessageConnector.createDeviceMessageTopic(productId, message.getDeviceId(), message);
+            }
+            if (orgPrefix == null) {
+                return Collections.singletonList(topic);
+            }
+            return Arrays.asList(topic, orgPrefix + topic);
+        }
+    }
+
+    private class TopicCacheMBeanImpl implements TopicCacheMBean {
+
+        @Override
+        public long getSize() {
+            return cache.estimatedSize();
+        }
+
+        @Override
+        public long getHits() {
+            return hits.sum();
+        }
+
+        @Override
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        @Override
+        public void invalidateAll() {
+            DeviceMessageTopicCache.this.invalidateAll();
+        }
+    }
+
+    public interface TopicCacheMBean {
+
+        long getSize();
+
+        long getHits();
+
+        long getMisses();
+
+        void invalidateAll();
+    }
+}
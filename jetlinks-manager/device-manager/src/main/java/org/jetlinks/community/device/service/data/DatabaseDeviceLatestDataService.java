@@ -43,6 +43,7 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
@@ -50,13 +51,19 @@ import reactor.math.MathFlux;
 import reactor.util.function.Tuple2;
 import reactor.util.function.Tuples;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.lang.management.ManagementFactory;
 import java.sql.JDBCType;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -75,9 +82,23 @@ public class DatabaseDeviceLatestDataService implements DeviceLatestDataService,
 
     private PersistenceBuffer<Buffer> writer;
 
+    //合并中的数据,key为设备ID.同一个设备在一个周期内的数据只会合并为一条写入缓冲区.
+    private final Map<String, Buffer> coalescing = new ConcurrentHashMap<>();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    private Disposable coalescingFlusher;
+
+    private final LatestDataBulkWriter bulkWriter;
+
+    private ObjectName objectName;
+
     public DatabaseDeviceLatestDataService(DatabaseOperator databaseOperator, BufferProperties properties) {
         this.databaseOperator = databaseOperator;
         this.buffer = properties;
+        this.bulkWriter = new LatestDataBulkWriter(databaseOperator, this::doUpdateLatestData);
         init();
     }
 
@@ -101,22 +122,22 @@ public class DatabaseDeviceLatestDataService implements DeviceLatestDataService,
     private Mono<Boolean> doWrite(Flux<Buffer> flux) {
         return flux
             .groupBy(Buffer::getTable, Integer.MAX_VALUE)
-            .concatMap(group -> group
+            .flatMap(group -> group
                 .groupBy(Buffer::getDeviceId, Integer.MAX_VALUE)
                 .flatMap(sameDevice -> sameDevice.reduce(Buffer::merge))
-                .buffer(200)
+                .collectList()
                 //批量更新
                 .flatMap(sameTableData -> {
-                    Buffer first = sameTableData.get(0);
                     List<Map<String, Object>> data = Lists.transform(sameTableData, Buffer::getProperties);
-                    return this
-                        .doUpdateLatestData(first.table, data)
+                    return bulkWriter
+                        .write(group.key(), data)
+                        //只统计实际写入的行数
+                        .doOnNext(count -> written.add(count))
                         .onErrorResume((err) -> {
                             log.error("save device latest data error", err);
                             return Mono.empty();
                         });
-                }, 8, 8)
-            )
+                }), 8)
             .then(Reactors.ALWAYS_FALSE);
 
     }
@@ -131,10 +152,62 @@ public class DatabaseDeviceLatestDataService implements DeviceLatestDataService,
 
         writer.init();
 
+        registerMbean();
     }
 
     public void destroy() {
+        stopCoalescing();
         writer.stop();
+        unregisterMbean();
+    }
+
+    /**
+     * 定时将合并后的数据写入缓冲区
+     */
+    private void startCoalescing() {
+        if (coalescingFlusher != null) {
+            return;
+        }
+        coalescingFlusher = Flux
+            .interval(buffer.getTimeout())
+            .onBackpressureDrop()
+            .subscribe(ignore -> flushCoalescing());
+    }
+
+    private void stopCoalescing() {
+        if (coalescingFlusher != null) {
+            coalescingFlusher.dispose();
+        }
+        flushCoalescing();
+    }
+
+    private void flushCoalescing() {
+        for (String deviceId : coalescing.keySet()) {
+            Buffer data = coalescing.remove(deviceId);
+            if (data != null) {
+                writer.write(data);
+            }
+        }
+    }
+
+    private void coalesce(Buffer data) {
+        received.increment();
+        Buffer[] evicted = new Buffer[1];
+        coalescing.compute(data.deviceId, (deviceId, old) -> {
+            if (old == null) {
+                return data;
+            }
+            //产品发生了变化,表不同无法合并,在compute之外写入旧的数据.
+            if (!Objects.equals(old.table, data.table)) {
+                evicted[0] = old;
+                return data;
+            }
+            merged.increment();
+            return old.merge(data);
+        });
+        if (evicted[0] != null) {
+            writer.write(evicted[0]);
+        }
     }
 
     public Mono<Void> reloadMetadata(String productId, DeviceMetadata metadata) {
@@ -179,7 +252,8 @@ public class DatabaseDeviceLatestDataService implements DeviceLatestDataService,
                     .getTableReactive(tableName, false)
                     .doOnNext(oldTable -> oldTable.replace(table))
                     .switchIfEmpty(Mono.fromRunnable(() -> schema.addTable(table)))
-                    .then();
+                    .then()
+                    .doFinally(ignore -> bulkWriter.invalidate(tableName));
             });
     }
 
@@ -213,7 +287,8 @@ public class DatabaseDeviceLatestDataService implements DeviceLatestDataService,
                     .commit()
                     .reactive()
                     .subscribeOn(Schedulers.boundedElastic())
-                    .then();
+                    .then()
+                    .doFinally(ignore -> bulkWriter.invalidate(tableName));
             });
     }
 
@@ -254,7 +329,7 @@ public class DatabaseDeviceLatestDataService implements DeviceLatestDataService,
             prob.put("deviceName", deviceName);
 
             Buffer buffer = Buffer.of(tableName, message.getDeviceId(), deviceName, prob, message.getTimestamp());
-            writer.write(buffer);
+            coalesce(buffer);
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         }
@@ -268,9 +343,88 @@ public class DatabaseDeviceLatestDataService implements DeviceLatestDataService,
     @Override
     public void run(String... args) throws Exception {
         writer.start();
+        startCoalescing();
         SpringApplication
             .getShutdownHandlers()
-            .add(writer::dispose);
+            .add(() -> {
+                stopCoalescing();
+                writer.dispose();
+            });
+    }
+
+    void registerMbean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("org.jetlinks:type=DeviceLatestData,name=device-latest-data");
+            mBeanServer.registerMBean(new StandardMBean(new DeviceLatestDataMBeanImpl(), DeviceLatestDataMBean.class), objectName);
+        } catch (Throwable error) {
+            log.warn("registerMBean device-latest-data error ", error);
+        }
+    }
+
+    void unregisterMbean() {
+        try {
+            if (objectName != null) {
+                MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Throwable ignore) {
+        }
+    }
+
+    private class DeviceLatestDataMBeanImpl implements DeviceLatestDataMBean {
+
+        @Override
+        public long getReceived() {
+            return received.sum();
+        }
+
+        @Override
+        public long getMerged() {
+            return merged.sum();
+        }
+
+        @Override
+        public long getWritten() {
+            return written.sum();
+        }
+
+        @Override
+        public long getCoalescing() {
+            return coalescing.size();
+        }
+
+        @Override
+        public int getBatchSize() {
+            return bulkWriter.getBatchSize();
+        }
+
+        @Override
+        public double getCompressionRatio() {
+            long written = getWritten();
+            return written == 0 ? 0 : (double) getReceived() / written;
+        }
+    }
+
+    public interface DeviceLatestDataMBean {
+
+        //接收到的数据条数
+        long getReceived();
+
+        //在内存中被合并的数据条数
+        long getMerged();
+
+        //写入数据库的数据行数
+        long getWritten();
+
+        //等待合并写入缓冲区的设备数量
+        long getCoalescing();
+
+        //当前每批写入数据库的行数
+        int getBatchSize();
+
+        //接收条数与写入行数的比例
+        double getCompressionRatio();
     }
 
     @Getter
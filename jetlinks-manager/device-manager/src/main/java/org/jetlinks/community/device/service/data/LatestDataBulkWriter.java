@@ -0,0 +1,306 @@
+package org.jetlinks.community.device.service.data;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hswebframework.ezorm.rdb.executor.SqlRequest;
+import org.hswebframework.ezorm.rdb.executor.SqlRequests;
+import org.hswebframework.ezorm.rdb.executor.reactive.ReactiveSqlExecutor;
+import org.hswebframework.ezorm.rdb.metadata.RDBColumnMetadata;
+import org.hswebframework.ezorm.rdb.metadata.RDBSchemaMetadata;
+import org.hswebframework.ezorm.rdb.metadata.RDBTableMetadata;
+import org.hswebframework.ezorm.rdb.operator.DatabaseOperator;
+import org.hswebframework.ezorm.rdb.supports.mysql.MysqlSchemaMetadata;
+import org.hswebframework.ezorm.rdb.supports.postgres.PostgresqlSchemaMetadata;
+import org.jetlinks.core.utils.Reactors;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * 设备最新数据批量写入器.
+ * <p>
+ * 针对PostgreSQL和MySQL,将一批数据构造为一条多行的<code>INSERT ... ON CONFLICT</code>
+ * 或<code>INSERT ... ON DUPLICATE KEY UPDATE</code>语句执行,其他数据库则使用通用的upsert方式.
+ * <p>
+ * 同一批数据中的列可能不同,未上报的列在更新时保留数据库中原有的值.
+ * 每批的数量根据执行耗时自动调整:耗时低于目标值时逐步增加,超过目标值时减半.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+class LatestDataBulkWriter {
+
+    //单条语句最大参数数量,PostgreSQL限制为32767
+    static final int MAX_PARAMETERS = 30000;
+
+    static final int MIN_BATCH_SIZE = 16;
+
+    static final int MAX_BATCH_SIZE = 2000;
+
+    //单次写入的目标耗时
+    static final long TARGET_LATENCY_MILLIS = 200;
+
+    private final DatabaseOperator databaseOperator;
+
+    //通用upsert方式,不支持批量语句的数据库使用
+    private final BiFunction<String, List<Map<String, Object>>, Mono<Void>> fallback;
+
+    //表结构缓存,表结构变更时需要调用invalidate
+    private final Map<String, RDBTableMetadata> tables = new ConcurrentHashMap<>();
+
+    private volatile int batchSize = 200;
+
+    LatestDataBulkWriter(DatabaseOperator databaseOperator,
+                         BiFunction<String, List<Map<String, Object>>, Mono<Void>> fallback) {
+        this.databaseOperator = databaseOperator;
+        this.fallback = fallback;
+    }
+
+    void invalidate(String table) {
+        tables.remove(table);
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 写入同一个表的数据
+     *
+     * @param table 表名
+     * @param rows  数据,每一行必须包含id
+     * @return 实际写入的行数, 表不存在或者结构错误时为0
+     */
+    Mono<Integer> write(String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return Reactors.ALWAYS_ZERO;
+        }
+        return getTable(table)
+            .flatMap(metadata -> {
+                //没有deviceName,说明可能在同步表结构的时候发生了错误。
+                if (!metadata.getColumn("deviceName").isPresent()) {
+                    log.warn("设备最新数据表[{}]结构错误", table);
+                    return Reactors.ALWAYS_ZERO;
+                }
+                Mode mode = Mode.of(metadata.getSchema());
+                //不支持批量语句的数据库,使用通用的upsert方式
+                if (mode == null) {
+                    return Flux
+                        .fromIterable(partition(rows, batchSize))
+                        .concatMap(batch -> fallback
+                            .apply(table, batch)
+                            .thenReturn(batch.size()))
+                        .reduce(0, Integer::sum);
+                }
+                return Flux
+                    .fromIterable(partition(rows, batchSize))
+                    .concatMap(batch -> execute(metadata, mode, batch))
+                    .reduce(0, Integer::sum);
+            })
+            .defaultIfEmpty(0);
+    }
+
+    private Mono<RDBTableMetadata> getTable(String table) {
+        RDBTableMetadata cached = tables.get(table);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return databaseOperator
+            .getMetadata()
+            .getCurrentSchema()
+            .getTableReactive(table, false)
+            .doOnNext(metadata -> tables.put(table, metadata));
+    }
+
+    private Mono<Integer> execute(RDBTableMetadata table, Mode mode, List<Map<String, Object>> batch) {
+        SqlRequest request = createRequest(table, mode, batch);
+        if (request == null) {
+            return Reactors.ALWAYS_ZERO;
+        }
+        ReactiveSqlExecutor executor = table.getSchema().findFeatureNow(ReactiveSqlExecutor.ID);
+        return Mono
+            .defer(() -> {
+                long time = System.currentTimeMillis();
+                return executor
+                    .update(Mono.just(request))
+                    .doOnSuccess(ignore -> adjustBatchSize(System.currentTimeMillis() - time));
+            })
+            .thenReturn(batch.size());
+    }
+
+    private void adjustBatchSize(long latency) {
+        int size = batchSize;
+        if (latency > TARGET_LATENCY_MILLIS) {
+            batchSize = Math.max(MIN_BATCH_SIZE, size / 2);
+        } else if (latency < TARGET_LATENCY_MILLIS / 2) {
+            batchSize = Math.min(MAX_BATCH_SIZE, size + MIN_BATCH_SIZE);
+        }
+    }
+
+    SqlRequest createRequest(RDBTableMetadata table, Mode mode, List<Map<String, Object>> batch) {
+        RDBColumnMetadata idColumn = table.getColumn("id").orElse(null);
+        if (idColumn == null) {
+            return null;
+        }
+        //同一批次中的id不能重复,否则ON CONFLICT会报错.
+        Map<Object, Map<String, Object>> distinct = new LinkedHashMap<>();
+        //所有行中出现过的列
+        Map<String, RDBColumnMetadata> columns = new LinkedHashMap<>();
+        columns.put("id", idColumn);
+        for (Map<String, Object> row : batch) {
+            Object id = row.get("id");
+            if (id == null) {
+                continue;
+            }
+            distinct.merge(id, row, (older, newer) -> {
+                Map<String, Object> merged = new HashMap<>(older);
+                merged.putAll(newer);
+                return merged;
+            });
+            for (String key : row.keySet()) {
+                if (!columns.containsKey(key)) {
+                    table.getColumn(key).ifPresent(column -> columns.put(key, column));
+                }
+            }
+        }
+        if (distinct.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder sql = new StringBuilder(128 + distinct.size() * columns.size() * 4);
+        sql.append("insert into ").append(table.getFullName());
+        mode.appendAlias(sql);
+        sql.append(" (");
+        int index = 0;
+        for (RDBColumnMetadata column : columns.values()) {
+            if (index++ > 0) {
+                sql.append(',');
+            }
+            sql.append(column.getQuoteName());
+        }
+        sql.append(") values ");
+
+        List<Object> parameters = new ArrayList<>(distinct.size() * columns.size());
+        int row = 0;
+        for (Map<String, Object> data : distinct.values()) {
+            if (row++ > 0) {
+                sql.append(',');
+            }
+            sql.append('(');
+            index = 0;
+            for (Map.Entry<String, RDBColumnMetadata> column : columns.entrySet()) {
+                if (index++ > 0) {
+                    sql.append(',');
+                }
+                sql.append('?');
+                Object value = data.get(column.getKey());
+                parameters.add(value == null ? null : column.getValue().encode(value));
+            }
+            sql.append(')');
+        }
+        mode.appendUpdate(sql, table, idColumn, columns.values());
+        return SqlRequests.prepare(sql.toString(), parameters.toArray());
+    }
+
+    private List<List<Map<String, Object>>> partition(List<Map<String, Object>> rows, int size) {
+        //根据列数量限制每批次的行数,避免超过数据库的参数数量限制
+        Set<String> columns = new HashSet<>();
+        for (Map<String, Object> row : rows) {
+            columns.addAll(row.keySet());
+        }
+        int batch = Math.max(1, Math.min(size, MAX_PARAMETERS / Math.max(1, columns.size())));
+        if (rows.size() <= batch) {
+            return Collections.singletonList(rows);
+        }
+        List<List<Map<String, Object>>> partitions = new ArrayList<>(rows.size() / batch + 1);
+        for (int i = 0; i < rows.size(); i += batch) {
+            partitions.add(rows.subList(i, Math.min(rows.size(), i + batch)));
+        }
+        return partitions;
+    }
+
+    enum Mode {
+        postgres {
+            @Override
+            void appendAlias(StringBuilder sql) {
+                sql.append(" as t");
+            }
+
+            @Override
+            void appendUpdate(StringBuilder sql,
+                              RDBTableMetadata table,
+                              RDBColumnMetadata id,
+                              Collection<RDBColumnMetadata> columns) {
+                sql.append(" on conflict (").append(id.getQuoteName()).append(") do update set ");
+                int index = 0;
+                for (RDBColumnMetadata column : columns) {
+                    if (column == id) {
+                        continue;
+                    }
+                    if (index++ > 0) {
+                        sql.append(',');
+                    }
+                    String name = column.getQuoteName();
+                    sql.append(name)
+                       .append("=coalesce(excluded.").append(name)
+                       .append(",t.").append(name)
+                       .append(')');
+                }
+                if (index == 0) {
+                    sql.append(id.getQuoteName()).append("=excluded.").append(id.getQuoteName());
+                }
+            }
+        },
+        mysql {
+            @Override
+            void appendUpdate(StringBuilder sql,
+                              RDBTableMetadata table,
+                              RDBColumnMetadata id,
+                              Collection<RDBColumnMetadata> columns) {
+                sql.append(" on duplicate key update ");
+                int index = 0;
+                for (RDBColumnMetadata column : columns) {
+                    if (column == id) {
+                        continue;
+                    }
+                    if (index++ > 0) {
+                        sql.append(',');
+                    }
+                    String name = column.getQuoteName();
+                    sql.append(name)
+                       .append("=coalesce(values(").append(name).append("),").append(name).append(')');
+                }
+                if (index == 0) {
+                    sql.append(id.getQuoteName()).append('=').append(id.getQuoteName());
+                }
+            }
+        };
+
+        void appendAlias(StringBuilder sql) {
+        }
+
+        abstract void appendUpdate(StringBuilder sql,
+                                   RDBTableMetadata table,
+                                   RDBColumnMetadata id,
+                                   Collection<RDBColumnMetadata> columns);
+
+        /**
+         * 根据数据库类型获取批量写入方式
+         *
+         * @param schema 表所在的schema
+         * @return 不支持时返回null
+         */
+        static Mode of(RDBSchemaMetadata schema) {
+            if (schema instanceof PostgresqlSchemaMetadata) {
+                return postgres;
+            }
+            if (schema instanceof MysqlSchemaMetadata) {
+                return mysql;
+            }
+            return null;
+        }
+    }
+}
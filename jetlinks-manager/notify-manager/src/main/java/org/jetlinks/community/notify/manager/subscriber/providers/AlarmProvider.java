@@ -30,12 +30,16 @@ import java.time.Duration;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 public class AlarmProvider implements SubscriberProvider {
 
     private final EventBus eventBus;
 
+    //相同topic的订阅者共享的订阅,key为topic
+    private final Map<String, Flux<AlarmNotify>> shared = new ConcurrentHashMap<>();
+
     public AlarmProvider(EventBus eventBus) {
         this.eventBus = eventBus;
     }
@@ -76,39 +80,73 @@ public class AlarmProvider implements SubscriberProvider {
     protected Mono<Subscriber> doCreateSubscriber(String id,
                                                   Authentication authentication,
                                                   String topic) {
-        return Mono.just(locale -> createSubscribe(locale, id, new String[]{topic})
+        return Mono.just(locale -> createSubscribe(locale, topic)
             //有效期内去重,防止同一个用户所在多个部门推送同一个告警
             .as(FluxUtils.distinct(Notify::getDataId, Duration.ofSeconds(10))));
     }
 
-    private Flux<Notify> createSubscribe(Locale locale,
-                                         String id,
-                                         String[] topic) {
-        return this
+    private Flux<Notify> createSubscribe(Locale locale, String topic) {
+        return subscribeShared(topic)
+            .mapNotNull(alarm -> {
+                try {
+                    return Notify.of(
+                        alarm.getMessage(locale),
+                        //告警记录ID
+                        alarm.json.getString("id"),
+                        System.currentTimeMillis(),
+                        "alarm",
+                        alarm.json
+                    );
+                } catch (Throwable error) {
+                    log.warn("handle alarm notify error", error);
+                }
+                return null;
+            });
+    }
+
+    /**
+     * 订阅相同topic的用户共享同一个事件总线订阅,告警数据只解析一次,
+     * 每种语言的通知消息只生成一次,然后分发给订阅了此topic的用户.
+     * 没有用户订阅时会自动取消事件总线订阅,有新的用户订阅时重新订阅.
+     *
+     * @param topic topic
+     * @return 告警数据
+     */
+    private Flux<AlarmNotify> subscribeShared(String topic) {
+        return shared.computeIfAbsent(topic, _topic -> this
             .eventBus
             .subscribe(
                 Subscription
                     .builder()
                     .justLocal()
-                    .subscriberId("alarm:" + id)
-                    .topics(topic)
+                    .subscriberId("alarm:" + getId() + ":" + _topic)
+                    .topics(_topic)
                     .build())
             .mapNotNull(payload -> {
                 try {
-                    JSONObject json = payload.bodyToJson();
-                    return Notify.of(
-                        getNotifyMessage(locale, json),
-                        //告警记录ID
-                        json.getString("id"),
-                        System.currentTimeMillis(),
-                        "alarm",
-                        json
-                    );
+                    return new AlarmNotify(payload.bodyToJson());
                 } catch (Throwable error) {
                     log.warn("handle alarm notify error", error);
                 }
                 return null;
-            });
+            })
+            .share());
+    }
+
+    //告警数据,多个订阅者共享,不能修改
+    private static class AlarmNotify {
+        private final JSONObject json;
+
+        //不同语言的通知消息
+        private final Map<Locale, String> messages = new ConcurrentHashMap<>(2);
+
+        private AlarmNotify(JSONObject json) {
+            this.json = json;
+        }
+
+        String getMessage(Locale locale) {
+            return messages.computeIfAbsent(locale, _locale -> getNotifyMessage(_locale, json));
+        }
     }
 
     private static String getNotifyMessage(Locale locale, JSONObject json) {
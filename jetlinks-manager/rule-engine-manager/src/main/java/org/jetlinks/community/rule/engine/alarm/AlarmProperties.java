@@ -14,6 +14,8 @@ public class AlarmProperties {
 
     private AlarmHandleHistory handleHistory = new AlarmHandleHistory();
 
+    private AlarmRecord record = new AlarmRecord();
+
 
     @Getter
     @Setter
@@ -22,4 +24,15 @@ public class AlarmProperties {
         //创建默认告警记录
         private boolean createWhenAlarm;
     }
+
+    @Getter
+    @Setter
+    public static class AlarmRecord {
+
+        //每批最多写入的告警记录数量
+        private int batchSize = 500;
+
+        //每批并行更新的告警记录数量
+        private int parallelism = 8;
+    }
 }
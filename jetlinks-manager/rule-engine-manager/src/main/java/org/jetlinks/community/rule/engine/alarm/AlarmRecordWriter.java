@@ -0,0 +1,214 @@
+package org.jetlinks.community.rule.engine.alarm;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.community.rule.engine.entity.AlarmRecordEntity;
+import org.jetlinks.community.rule.engine.enums.AlarmRecordState;
+import org.jetlinks.community.rule.engine.service.AlarmRecordService;
+import org.jetlinks.core.utils.Reactors;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 告警记录批量写入器.
+ * <p>
+ * 写入请求先进入队列,同一时间只有一个批次在写入,写入期间到达的请求会合并到下一个批次中(组提交).
+ * 空闲时请求会立即写入,每个批次先一次查询告警记录的状态,同一个告警记录只写入最新的一条:
+ * <ul>
+ *     <li>告警中的记录以状态为告警中作为条件更新,更新失败时视为新产生的告警.</li>
+ *     <li>新产生的告警(包括解除告警或者处理告警后再次触发)清空处理信息后批量保存(upsert).</li>
+ * </ul>
+ * <p>
+ * 每个请求在所在批次写入完成后才返回,因此不会改变告警的触发顺序以及解除告警的逻辑.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+class AlarmRecordWriter {
+
+    private final AlarmRecordService recordService;
+
+    private final int batchSize;
+
+    private final int parallelism;
+
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    AlarmRecordWriter(AlarmRecordService recordService, int batchSize, int parallelism) {
+        this.recordService = recordService;
+        this.batchSize = Math.max(1, batchSize);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 写入告警记录,如果告警记录不存在或者不是告警中,则认为是新产生的告警,
+     * 此时会将告警时间设置为<code>alarmTime</code>并清空处理信息.
+     *
+     * @param record    告警记录
+     * @param alarmTime 本次告警时间
+     * @return 是否为新产生的告警
+     */
+    Mono<Boolean> write(AlarmRecordEntity record, long alarmTime) {
+        return Mono.create(sink -> {
+            queue.add(new Pending(record, alarmTime, sink));
+            drain();
+        });
+    }
+
+    private void drain() {
+        if (!writing.compareAndSet(false, true)) {
+            return;
+        }
+        List<Pending> batch = new ArrayList<>(Math.min(batchSize, 64));
+        Pending pending;
+        while (batch.size() < batchSize && (pending = queue.poll()) != null) {
+            batch.add(pending);
+        }
+        if (batch.isEmpty()) {
+            writing.set(false);
+            //释放后可能有新的请求进入
+            if (!queue.isEmpty()) {
+                drain();
+            }
+            return;
+        }
+        write(batch)
+            .doFinally(ignore -> {
+                writing.set(false);
+                drain();
+            })
+            .subscribe();
+    }
+
+    private Mono<Void> write(List<Pending> batch) {
+        //按告警记录分组,同一个告警记录只写入最新的一条
+        Map<String, List<Pending>> groups = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            groups
+                .computeIfAbsent(pending.record.getId(), ignore -> new ArrayList<>(1))
+                .add(pending);
+        }
+        return recordService
+            .createQuery()
+            .select(AlarmRecordEntity::getId, AlarmRecordEntity::getState)
+            .in(AlarmRecordEntity::getId, groups.keySet())
+            .fetch()
+            .collectMap(AlarmRecordEntity::getId, AlarmRecordEntity::getState)
+            //查询数据库报错,依然尝试触发告警!
+            .onErrorResume(err -> {
+                log.error("trigger alarm error", err);
+                return Mono.just(Collections.<String, AlarmRecordState>emptyMap());
+            })
+            .flatMap(states -> {
+                List<List<Pending>> warnings = new ArrayList<>();
+                Map<String, List<Pending>> alarms = new ConcurrentHashMap<>();
+                for (Map.Entry<String, List<Pending>> entry : groups.entrySet()) {
+                    if (states.get(entry.getKey()) == AlarmRecordState.warning) {
+                        warnings.add(entry.getValue());
+                    } else {
+                        alarms.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                return Flux
+                    .fromIterable(warnings)
+                    .flatMap(group -> update(group, alarms), parallelism)
+                    .then(Mono.defer(() -> writeAlarms(alarms, states.keySet())));
+            });
+    }
+
+    //告警中的记录,依然以状态为告警中作为条件更新
+    private Mono<Void> update(List<Pending> group, Map<String, List<Pending>> alarms) {
+        AlarmRecordEntity record = group.get(group.size() - 1).record;
+        return recordService
+            .createUpdate()
+            .set(record)
+            .where(AlarmRecordEntity::getId, record.getId())
+            .and(AlarmRecordEntity::getState, AlarmRecordState.warning)
+            .execute()
+            //更新数据库报错,依然尝试触发告警!
+            .onErrorResume(err -> {
+                log.error("trigger alarm error", err);
+                return Reactors.ALWAYS_ZERO;
+            })
+            .doOnNext(total -> {
+                //更新结果返回0 说明告警已经被解除或者处理,是新产生的告警
+                if (total == 0) {
+                    alarms.put(record.getId(), group);
+                    return;
+                }
+                for (Pending pending : group) {
+                    pending.sink.success(false);
+                }
+            })
+            .then();
+    }
+
+    //新产生的告警,重置告警时间以及处理信息后批量保存
+    private Mono<Void> writeAlarms(Map<String, List<Pending>> alarms, Set<String> exists) {
+        if (alarms.isEmpty()) {
+            return Mono.empty();
+        }
+        List<AlarmRecordEntity> records = new ArrayList<>(alarms.size());
+        List<String> reset = new ArrayList<>();
+        for (List<Pending> group : alarms.values()) {
+            Pending first = group.get(0);
+            //只有第一条是新产生的告警,之后的告警在此基础上更新
+            first.firstAlarm = true;
+            for (Pending pending : group) {
+                pending.record.setAlarmTime(first.alarmTime);
+                pending.record.setHandleTime(null);
+                pending.record.setHandleType(null);
+            }
+            AlarmRecordEntity record = group.get(group.size() - 1).record;
+            records.add(record);
+            if (exists.contains(record.getId())) {
+                reset.add(record.getId());
+            }
+        }
+        //已经存在的记录需要清空处理信息,保存时不会更新为null的字段
+        Mono<Void> resetHandle = reset.isEmpty()
+            ? Mono.empty()
+            : recordService
+            .createUpdate()
+            .setNull(AlarmRecordEntity::getHandleTime)
+            .setNull(AlarmRecordEntity::getHandleType)
+            .where()
+            .in(AlarmRecordEntity::getId, reset)
+            .execute()
+            .then();
+        return resetHandle
+            .then(recordService.save(Flux.fromIterable(records)))
+            .then(Mono.<Void>fromRunnable(() -> {
+                for (List<Pending> group : alarms.values()) {
+                    for (Pending pending : group) {
+                        pending.sink.success(pending.firstAlarm);
+                    }
+                }
+            }))
+            .onErrorResume(err -> {
+                for (List<Pending> group : alarms.values()) {
+                    for (Pending pending : group) {
+                        pending.sink.error(err);
+                    }
+                }
+                return Mono.empty();
+            });
+    }
+
+    @RequiredArgsConstructor
+    private static class Pending {
+        private final AlarmRecordEntity record;
+        private final long alarmTime;
+        private final MonoSink<Boolean> sink;
+        private boolean firstAlarm;
+    }
+}
@@ -8,6 +8,7 @@ import org.hswebframework.web.bean.FastBeanCopier;
 import org.hswebframework.web.i18n.LocaleUtils;
 import org.hswebframework.web.id.IDGenerator;
 import org.jetlinks.community.PropertyConstants;
+import org.jetlinks.community.codec.BinarySerializer;
 import org.jetlinks.community.command.rule.data.AlarmInfo;
 import org.jetlinks.community.command.rule.data.AlarmResult;
 import org.jetlinks.community.command.rule.data.RelieveInfo;
@@ -29,7 +30,6 @@ import org.jetlinks.community.utils.TopicUtils;
 import org.jetlinks.core.config.ConfigStorage;
 import org.jetlinks.core.config.ConfigStorageManager;
 import org.jetlinks.core.event.EventBus;
-import org.jetlinks.core.utils.Reactors;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
@@ -52,6 +52,12 @@ public class DefaultAlarmHandler implements AlarmHandler {
 
     static final String CACHE_ID = "alarm-records";
 
+    //告警缓存在读取前注册,序列化时只写出类型ID
+    static {
+        BinarySerializer.register(3, TriggerCache.class, TriggerCache::new);
+        BinarySerializer.register(4, RelieveCache.class, RelieveCache::new);
+    }
+
     private final AlarmRecordService alarmRecordService;
 
     private final AlarmHistoryService historyService;
@@ -66,6 +72,8 @@ public class DefaultAlarmHandler implements AlarmHandler {
 
     private final AlarmProperties alarmProperties;
 
+    private final AlarmRecordWriter recordWriter;
+
     public DefaultAlarmHandler(AlarmRecordService alarmRecordService,
                                AlarmHistoryService historyService,
                                AlarmHandleHistoryService alarmHandleHistoryService,
@@ -80,6 +88,9 @@ public class DefaultAlarmHandler implements AlarmHandler {
         this.storageManager = storageManager;
         this.eventPublisher = eventPublisher;
         this.alarmProperties = alarmProperties;
+        this.recordWriter = new AlarmRecordWriter(alarmRecordService,
+                                                  alarmProperties.getRecord().getBatchSize(),
+                                                  alarmProperties.getRecord().getParallelism());
     }
 
     @Override
@@ -103,29 +114,16 @@ public class DefaultAlarmHandler implements AlarmHandler {
                         .thenReturn(result);
                 }
                 //更新告警状态.
-                return alarmRecordService
-                    .createUpdate()
-                    .set(record)
-                    .where(AlarmRecordEntity::getId, record.getId())
-                    .and(AlarmRecordEntity::getState, AlarmRecordState.warning)
-                    .execute()
-                    //更新数据库报错,依然尝试触发告警!
-                    .onErrorResume(err -> {
-                        log.error("trigger alarm error", err);
-                        return Reactors.ALWAYS_ZERO;
-                    })
-                    .flatMap(total -> {
-                        //更新结果返回0 说明是新产生的告警数据
-                        if (total == 0) {
+                return recordWriter
+                    .write(record, historyInfo.getAlarmTime())
+                    .flatMap(firstAlarm -> {
+                        //新产生的告警数据,告警时间以及处理信息已在写入告警记录时重置
+                        if (firstAlarm) {
                             result.setFirstAlarm(true);
                             result.setAlarming(false);
                             result.setAlarmTime(historyInfo.getAlarmTime());
-                            record.setAlarmTime(historyInfo.getAlarmTime());
-                            record.setHandleTime(null);
-                            record.setHandleType(null);
-                            return this
-                                .saveAlarmRecord(record)
-                                .then(historyService.save(historyInfo))
+                            return historyService
+                                .save(historyInfo)
                                 .then(publishAlarmRecord(historyInfo, alarmInfo))
                                 //初始化告警处理记录
                                 .then(Mono.defer(() -> {
@@ -277,23 +275,6 @@ public class DefaultAlarmHandler implements AlarmHandler {
         return relieveResult;
     }
 
-    private Mono<Void> saveAlarmRecord(AlarmRecordEntity record) {
-        return alarmRecordService
-            .createUpdate()
-            .set(record)
-            .setNull(AlarmRecordEntity::getHandleTime)
-            .setNull(AlarmRecordEntity::getHandleType)
-            .where(AlarmRecordEntity::getId, record.getId())
-            .execute()
-            .flatMap(update -> {
-                // 如果是首次告警需要手动保存
-                if (update == 0) {
-                    return alarmRecordService.save(record).then();
-                }
-                return Mono.empty();
-            });
-    }
-
     private AlarmRecordEntity ofRecord(RecordCache cache, AlarmInfo alarmData) {
         AlarmRecordEntity entity = new AlarmRecordEntity();
         entity.setAlarmConfigId(alarmData.getAlarmConfigId());
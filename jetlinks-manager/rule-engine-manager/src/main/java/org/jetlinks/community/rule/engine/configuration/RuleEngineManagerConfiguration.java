@@ -6,6 +6,9 @@ import org.jetlinks.community.elastic.search.service.AggregationService;
 import org.jetlinks.community.elastic.search.service.ElasticSearchService;
 import org.jetlinks.community.rule.engine.alarm.AlarmHandler;
 import org.jetlinks.community.rule.engine.cmd.*;
+import org.jetlinks.community.rule.engine.commons.ShakeLimitProvider;
+import org.jetlinks.community.rule.engine.commons.impl.SimpleShakeLimitProvider;
+import org.jetlinks.community.rule.engine.commons.impl.TimingWheelShakeLimitProvider;
 import org.jetlinks.community.rule.engine.entity.AlarmLevelEntity;
 import org.jetlinks.community.rule.engine.entity.AlarmRuleBindEntity;
 import org.jetlinks.community.rule.engine.scene.*;
@@ -27,6 +30,8 @@ public class RuleEngineManagerConfiguration {
                                                                ObjectProvider<SceneTriggerProvider<?>> triggerProviders) {
         providers.forEach(SceneProviders::register);
         triggerProviders.forEach(SceneProviders::register);
+        ShakeLimitProvider.supports.registerIfAbsent(SimpleShakeLimitProvider.PROVIDER, SimpleShakeLimitProvider.GLOBAL);
+        ShakeLimitProvider.supports.registerIfAbsent(TimingWheelShakeLimitProvider.PROVIDER, TimingWheelShakeLimitProvider.GLOBAL);
         return new SceneTaskExecutorProvider(eventBus,
                                              SceneFilter.composite(filters));
     }
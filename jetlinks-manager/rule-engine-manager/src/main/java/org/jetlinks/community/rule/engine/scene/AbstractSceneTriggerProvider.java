@@ -7,6 +7,7 @@ import org.jetlinks.community.rule.engine.commons.ShakeLimitProvider;
 import org.jetlinks.community.rule.engine.commons.ShakeLimitResult;
 import org.jetlinks.community.rule.engine.commons.impl.SimpleShakeLimitProvider;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.Map;
 
@@ -18,7 +19,8 @@ public abstract class AbstractSceneTriggerProvider<E extends SceneTriggerProvide
     implements SceneTriggerProvider<E> {
 
 
-    private String shakeLimitProvider = SimpleShakeLimitProvider.PROVIDER;
+    //可通过-Dscene.shake-limit.provider=timing-wheel 切换为时间轮实现
+    private String shakeLimitProvider = System.getProperty("scene.shake-limit.provider", SimpleShakeLimitProvider.PROVIDER);
 
     protected String getShakeLimitKey(Map<String, Object> data) {
         return String.valueOf(data.get(SOURCE_ID_KEY));
@@ -33,7 +35,9 @@ public abstract class AbstractSceneTriggerProvider<E extends SceneTriggerProvide
             .get(shakeLimitProvider)
             .orElse(SimpleShakeLimitProvider.GLOBAL)
             .shakeLimit(key,
-                        source.groupBy(this::getShakeLimitKey, Integer.MAX_VALUE),
-                        limit);
+                        source,
+                        this::getShakeLimitKey,
+                        limit,
+                        ignore -> Mono.never());
     }
 }
@@ -0,0 +1,37 @@
+package org.jetlinks.community.rule.engine.scene;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * 编译后的场景触发器,直接处理事件总线中的数据,不再通过{@link org.jetlinks.reactor.ql.ReactorQL}执行SQL.
+ *
+ * @author zhouhao
+ * @see SceneTriggerProvider#compile(SceneTriggerProvider.TriggerConfig, java.util.List, boolean)
+ * @since 2.3
+ */
+public interface CompiledSceneTrigger {
+
+    /**
+     * @return 订阅的topic
+     */
+    String getTopic();
+
+    /**
+     * 转换事件数据为场景输出数据,相当于SQL中的select.
+     *
+     * @param data 事件数据
+     * @return 场景输出数据
+     */
+    Map<String, Object> project(Map<String, Object> data);
+
+    /**
+     * 判断场景输出数据是否满足触发条件,相当于SQL中的where.
+     *
+     * @param row 场景输出数据
+     * @return 是否满足条件
+     */
+    Mono<Boolean> test(Map<String, Object> row);
+
+}
@@ -0,0 +1,215 @@
+package org.jetlinks.community.rule.engine.scene;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hswebframework.web.id.IDGenerator;
+import org.jetlinks.community.PropertyConstants;
+import org.jetlinks.core.event.EventBus;
+import org.jetlinks.core.event.Subscription;
+import org.jetlinks.core.utils.FluxUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 场景事件分发器,相同topic的场景共享同一个事件总线订阅.
+ * <p>
+ * 每条消息只解码和去重一次,再分发给订阅了此topic的所有场景.当最后一个场景取消订阅时,取消事件总线的订阅.
+ * 使用编译后的触发器订阅时,先在共享的数据上执行触发条件,只复制满足条件的数据.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+class SceneEventDispatcher {
+
+    private final EventBus eventBus;
+
+    private final Map<String, TopicDispatcher> dispatchers = new ConcurrentHashMap<>();
+
+    SceneEventDispatcher(EventBus eventBus) {
+        this.eventBus = eventBus;
+    }
+
+    /**
+     * 订阅事件总线中的数据
+     *
+     * @param topic topic
+     * @return 解码后的数据, 每个订阅者获取到的是独立的Map, 嵌套的Map和List也是独立的
+     */
+    Flux<Map<String, Object>> subscribe(String topic) {
+        return subscribe(topic, null);
+    }
+
+    /**
+     * 订阅事件总线中的数据,并使用编译后的触发器进行转换和过滤.
+     *
+     * @param topic   topic
+     * @param trigger 编译后的触发器,为null时不转换和过滤
+     * @return 满足触发条件的数据, 每个订阅者获取到的是独立的Map, 嵌套的Map和List也是独立的
+     * @see CompiledSceneTrigger#project(Map)
+     * @see CompiledSceneTrigger#test(Map)
+     */
+    Flux<Map<String, Object>> subscribe(String topic, CompiledSceneTrigger trigger) {
+        return Flux
+            .<Map<String, Object>>create(sink -> {
+                Subscriber subscriber = new Subscriber(sink, trigger);
+                dispatchers.compute(topic, (key, dispatcher) -> {
+                    if (dispatcher == null) {
+                        dispatcher = new TopicDispatcher(key);
+                    }
+                    dispatcher.subscribers.add(subscriber);
+                    return dispatcher;
+                });
+                sink.onDispose(() -> dispatchers.computeIfPresent(topic, (key, dispatcher) -> {
+                    dispatcher.subscribers.remove(subscriber);
+                    if (dispatcher.subscribers.isEmpty()) {
+                        dispatcher.dispose();
+                        return null;
+                    }
+                    return dispatcher;
+                }));
+            }, FluxSink.OverflowStrategy.BUFFER);
+    }
+
+    int getTopicSize() {
+        return dispatchers.size();
+    }
+
+    private static Object getDataId(Map<String, Object> data) {
+        Object id;
+        Object header = data.get("headers");
+        if (header instanceof Map) {
+            id = ((Map<?, ?>) header).get(PropertyConstants.uid.getKey());
+        } else {
+            id = data.get(PropertyConstants.uid.getKey());
+        }
+        if (null == id) {
+            id = IDGenerator.RANDOM.generate();
+        }
+        return id;
+    }
+
+    /**
+     * 复制数据,嵌套的Map(如headers,properties)和List也会复制,避免多个场景修改同一个对象
+     *
+     * @param data 数据
+     * @return 新的数据
+     */
+    static Map<String, Object> copy(Map<String, Object> data) {
+        Map<String, Object> copy = new HashMap<>(data.size() * 2);
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof Map) {
+            return copy((Map<String, Object>) value);
+        }
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object item : list) {
+                copy.add(copyValue(item));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static class Subscriber {
+        private final FluxSink<Map<String, Object>> sink;
+        private final CompiledSceneTrigger trigger;
+
+        private Subscriber(FluxSink<Map<String, Object>> sink, CompiledSceneTrigger trigger) {
+            this.sink = sink;
+            this.trigger = trigger;
+        }
+
+        /**
+         * @param data   解码后的数据
+         * @param shared 数据是否被多个订阅者共享,共享时需要复制后再发送
+         */
+        private void next(Map<String, Object> data, boolean shared) {
+            if (trigger == null) {
+                sink.next(shared ? copy(data) : data);
+                return;
+            }
+            //转换后的数据中嵌套的Map和List仍然是共享的,满足条件后再复制
+            Map<String, Object> row = trigger.project(data);
+            trigger
+                .test(row)
+                .subscribe(
+                    matched -> {
+                        if (matched) {
+                            sink.next(shared ? copy(row) : row);
+                        }
+                    },
+                    err -> log.warn("test scene trigger [{}] error", trigger.getTopic(), err));
+        }
+    }
+
+    private class TopicDispatcher implements Disposable {
+
+        private final String topic;
+
+        private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+        private final Disposable disposable;
+
+        private TopicDispatcher(String topic) {
+            this.topic = topic;
+            this.disposable = eventBus
+                .subscribe(
+                    Subscription
+                        .builder()
+                        .justLocal()
+                        .topics(topic)
+                        .subscriberId("scene-dispatcher:" + topic)
+                        .build())
+                .<Map<String, Object>>handle((topicPayload, synchronousSink) -> {
+                    try {
+                        synchronousSink.next(topicPayload.bodyToJson(true));
+                    } catch (Throwable err) {
+                        log.warn("decode payload error {}", topicPayload.getTopic(), err);
+                    }
+                })
+                //有效期去重,同一个设备在多个部门的场景下,可能收到2条相同的数据问题
+                .as(FluxUtils.distinct(SceneEventDispatcher::getDataId, Duration.ofSeconds(1)))
+                .subscribe(this::dispatch,
+                           err -> log.error("dispatch scene event [{}] error", topic, err));
+        }
+
+        private void dispatch(Map<String, Object> data) {
+            //只有一个订阅者时无需复制
+            boolean shared = subscribers.size() > 1;
+            for (Subscriber subscriber : subscribers) {
+                try {
+                    subscriber.next(data, shared);
+                } catch (Throwable err) {
+                    log.warn("dispatch scene event [{}] error", topic, err);
+                }
+            }
+        }
+
+        @Override
+        public void dispose() {
+            disposable.dispose();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return disposable.isDisposed();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.jetlinks.community.rule.engine.scene;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetlinks.reactor.ql.utils.CastUtils;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 场景数据分区执行器.
+ * <p>
+ * 根据数据来源(如设备ID)将数据分配到固定数量的分区中,同一个分区内的数据按顺序串行执行,不同分区之间并行执行.
+ * 以保证同一个设备的数据(如告警触发与解除)按顺序处理,同时不同设备之间不会互相影响.
+ * <p>
+ * 每个分区的缓冲区满时丢弃最早的数据,可通过场景配置<code>options.partitions</code>设置分区数量.
+ * 执行期间可通过JMX(org.jetlinks:type=ScenePartition)查看缓冲中的数据数量以及丢弃的数据数量.
+ *
+ * @author zhouhao
+ * @since 2.3
+ */
+@Slf4j
+class ScenePartitionExecutor {
+
+    static final String OPTION_PARTITIONS = "partitions";
+
+    //默认分区数量
+    static final int DEFAULT_PARTITIONS = Integer.getInteger(
+        "scene.partitions", Math.max(8, Runtime.getRuntime().availableProcessors() * 2));
+
+    //每个分区缓冲的数据数量
+    static final int DEFAULT_BUFFER_SIZE = Integer.getInteger("scene.partition.buffer-size", 10_000);
+
+    private final String sceneId;
+
+    //执行器名称,同一个场景可能有多个执行器
+    private final String name;
+
+    private final int partitions;
+
+    private final LongAdder overflow = new LongAdder();
+
+    //在缓冲区中等待执行的数据数量
+    private final LongAdder buffered = new LongAdder();
+
+    private ObjectName objectName;
+
+    ScenePartitionExecutor(String sceneId, String name, Map<String, Object> options) {
+        this.sceneId = sceneId;
+        this.name = name;
+        this.partitions = getPartitions(options);
+    }
+
+    static int getPartitions(Map<String, Object> options) {
+        Object partitions = options == null ? null : options.get(OPTION_PARTITIONS);
+        if (partitions != null) {
+            try {
+                int val = CastUtils.castNumber(partitions).intValue();
+                if (val > 0) {
+                    return val;
+                }
+            } catch (Throwable ignore) {
+            }
+        }
+        return Math.max(1, DEFAULT_PARTITIONS);
+    }
+
+    /**
+     * 分区执行
+     *
+     * @param source      数据源
+     * @param keySelector 分区key,相同key的数据按顺序执行
+     * @param handler     处理器
+     * @param <T>         数据类型
+     * @return 执行结果
+     */
+    <T> Flux<Void> execute(Flux<T> source,
+                           Function<T, Object> keySelector,
+                           Function<T, ? extends Mono<?>> handler) {
+        Flux<Void> flux;
+        if (partitions == 1) {
+            flux = source
+                .doOnNext(ignore -> buffered.increment())
+                .onBackpressureBuffer(DEFAULT_BUFFER_SIZE, this::onOverflow, BufferOverflowStrategy.DROP_OLDEST)
+                .concatMap(data -> handle(handler, data), 0);
+        } else {
+            flux = source
+                .groupBy(data -> partition(keySelector.apply(data)))
+                .flatMap(group -> group
+                             .doOnNext(ignore -> buffered.increment())
+                             .onBackpressureBuffer(DEFAULT_BUFFER_SIZE, this::onOverflow, BufferOverflowStrategy.DROP_OLDEST)
+                             .concatMap(data -> handle(handler, data), 0),
+                         partitions,
+                         1);
+        }
+        return flux
+            .doOnSubscribe(ignore -> registerMbean())
+            .doFinally(ignore -> unregisterMbean());
+    }
+
+    private <T> Mono<Void> handle(Function<T, ? extends Mono<?>> handler, T data) {
+        buffered.decrement();
+        return handler
+            .apply(data)
+            .onErrorResume(err -> {
+                log.warn("execute scene [{}] error", sceneId, err);
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private int partition(Object key) {
+        if (key == null) {
+            return ThreadLocalRandom.current().nextInt(partitions);
+        }
+        return (key.hashCode() & Integer.MAX_VALUE) % partitions;
+    }
+
+    private void onOverflow(Object dropped) {
+        buffered.decrement();
+        overflow.increment();
+        long total = overflow.sum();
+        if (total == 1 || total % 1000 == 0) {
+            log.warn("scene [{}] partition buffer overflow, dropped {} data, last:{}", sceneId, total, dropped);
+        }
+    }
+
+    void registerMbean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("org.jetlinks:type=ScenePartition,scene="
+                                            + ObjectName.quote(sceneId) + ",name=" + name);
+            mBeanServer.registerMBean(new StandardMBean(new ScenePartitionMBeanImpl(), ScenePartitionMBean.class), objectName);
+        } catch (Throwable error) {
+            log.warn("registerMBean scene [{}] {} error ", sceneId, name, error);
+        }
+    }
+
+    void unregisterMbean() {
+        try {
+            if (objectName != null) {
+                MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                mBeanServer.unregisterMBean(objectName);
+                objectName = null;
+            }
+        } catch (Throwable ignore) {
+        }
+    }
+
+    private class ScenePartitionMBeanImpl implements ScenePartitionMBean {
+
+        @Override
+        public int getPartitions() {
+            return partitions;
+        }
+
+        @Override
+        public int getBufferSize() {
+            return DEFAULT_BUFFER_SIZE;
+        }
+
+        @Override
+        public long getBuffered() {
+            return buffered.sum();
+        }
+
+        @Override
+        public long getDropped() {
+            return overflow.sum();
+        }
+    }
+
+    public interface ScenePartitionMBean {
+
+        //分区数量
+        int getPartitions();
+
+        //每个分区的缓冲区大小
+        int getBufferSize();
+
+        //缓冲区中等待执行的数据数量
+        long getBuffered();
+
+        //缓冲区满时丢弃的数据数量
+        long getDropped();
+    }
+
+    /**
+     * 获取数据分区的key,默认使用触发源ID(如设备ID)
+     *
+     * @param data 数据
+     * @return key
+     */
+    static Object getPartitionKey(Map<String, Object> data) {
+        Object key = data.get(SceneRule.SOURCE_ID_KEY);
+        if (key == null) {
+            key = data.get("deviceId");
+        }
+        return key;
+    }
+}
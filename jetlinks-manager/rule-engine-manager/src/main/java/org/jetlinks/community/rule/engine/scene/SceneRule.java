@@ -123,6 +123,25 @@ public class SceneRule implements Serializable {
         return EmptySqlRequest.INSTANCE;
     }
 
+    /**
+     * 尝试编译触发器,不支持时返回<code>null</code>,此时应该使用{@link #createSql(boolean)}.
+     *
+     * @param hasWhere 是否包含过滤条件
+     * @return 编译后的触发器
+     * @since 2.3
+     */
+    public CompiledSceneTrigger compile(boolean hasWhere) {
+        if (trigger == null) {
+            return null;
+        }
+        try {
+            return trigger.compile(getTermList(), hasWhere);
+        } catch (Throwable error) {
+            log.warn("compile scene [{}:{}] trigger error, fallback to sql", id, name, error);
+            return null;
+        }
+    }
+
     public Function<Map<String, Object>, Mono<Boolean>> createDefaultFilter(List<Term> terms) {
         if (trigger != null) {
             return createDefaultFilter(trigger.createFilter(terms));
@@ -394,21 +413,26 @@ public class SceneRule implements Serializable {
             "/rule-runtime/scene/" + id,
             builder -> builder.setAttribute(RuleConstants.Trace.name, name));
 
+        //按触发源分区执行,同一个设备的数据按顺序处理
         disposable.add(
-            sourceData
-                .flatMap(
+            createPartitionExecutor("branch")
+                .execute(
+                    sourceData,
+                    ScenePartitionExecutor::getPartitionKey,
                     data -> fLast
                         .apply(data)
                         .as(tracer)
-                        .contextWrite(ctx -> TraceHolder.readToContext(ctx, data)),
-                    8,
-                    8)
+                        .contextWrite(ctx -> TraceHolder.readToContext(ctx, data)))
                 .subscribe()
         );
 
         return disposable;
     }
 
+    ScenePartitionExecutor createPartitionExecutor(String name) {
+        return new ScenePartitionExecutor(id, name, options);
+    }
+
     public List<Variable> createDefaultVariable() {
         return trigger != null
             ? trigger.createDefaultVariable()
@@ -1,16 +1,12 @@
 package org.jetlinks.community.rule.engine.scene;
 
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.hswebframework.ezorm.rdb.executor.SqlRequest;
 import org.hswebframework.web.bean.FastBeanCopier;
 import org.hswebframework.web.id.IDGenerator;
-import org.jetlinks.community.PropertyConstants;
 import org.jetlinks.core.event.EventBus;
-import org.jetlinks.core.event.Subscription;
 import org.jetlinks.core.trace.TraceHolder;
-import org.jetlinks.core.utils.FluxUtils;
 import org.jetlinks.reactor.ql.ReactorQL;
 import org.jetlinks.reactor.ql.ReactorQLContext;
 import org.jetlinks.rule.engine.api.RuleData;
@@ -20,16 +16,15 @@ import org.jetlinks.rule.engine.api.task.TaskExecutor;
 import org.jetlinks.rule.engine.api.task.TaskExecutorProvider;
 import org.jetlinks.rule.engine.defaults.AbstractTaskExecutor;
 import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.Duration;
 import java.util.Map;
 
 import static org.jetlinks.community.rule.engine.scene.SceneRule.TRIGGER_TYPE;
 
 @Slf4j
-@AllArgsConstructor
 public class SceneTaskExecutorProvider implements TaskExecutorProvider {
 
     private static final int BACKPRESSURE_BUFFER_MAX_SIZE =
@@ -41,6 +36,15 @@ public class SceneTaskExecutorProvider implements TaskExecutorProvider {
 
     private final SceneFilter filter;
 
+    //相同topic的场景共享订阅
+    private final SceneEventDispatcher dispatcher;
+
+    public SceneTaskExecutorProvider(EventBus eventBus, SceneFilter filter) {
+        this.eventBus = eventBus;
+        this.filter = filter;
+        this.dispatcher = new SceneEventDispatcher(eventBus);
+    }
+
     @Override
     public String getExecutor() {
         return "scene";
@@ -99,29 +103,11 @@ public class SceneTaskExecutorProvider implements TaskExecutorProvider {
             return FastBeanCopier.copy(context.getJob().getConfiguration(), new SceneRule());
         }
 
-        private Object getDataId(Map<String, Object> data) {
-            Object id;
-            Object header = data.get("headers");
-            if (header instanceof Map) {
-                id = ((Map<?, ?>) header).get(PropertyConstants.uid.getKey());
-            } else {
-                id = data.get(PropertyConstants.uid.getKey());
-            }
-            if (null == id) {
-                id = IDGenerator.RANDOM.generate();
-            }
-            return id;
-        }
-
         private ReactorQLContext createReactorQLContext() {
             return ReactorQLContext
                 .ofDatasource(table -> {
                     if (table.startsWith("/")) {
-                        //来自事件总线
-                        return this
-                            .subscribe(table)
-                            //有效期去重,同一个设备在多个部门的场景下,可能收到2条相同的数据问题
-                            .as(FluxUtils.distinct(this::getDataId, Duration.ofSeconds(1)));
+                        return subscribe(table, null);
                     } else {
                         //来自上游(定时等)
                         return context
@@ -132,6 +118,16 @@ public class SceneTaskExecutorProvider implements TaskExecutorProvider {
                 });
         }
 
+        //来自事件总线,由分发器统一解码和去重,指定了编译后的触发器时由分发器进行过滤
+        private Flux<Map<String, Object>> subscribe(String topic, CompiledSceneTrigger trigger) {
+            return dispatcher
+                .subscribe(topic, trigger)
+                .onBackpressureBuffer(
+                    BACKPRESSURE_BUFFER_MAX_SIZE,
+                    dropped -> log.warn("scene [{}:{}] backpressure buffer overflow,drop data:{}", ruleId, ruleName, dropped),
+                    BufferOverflowStrategy.DROP_OLDEST);
+        }
+
         private Disposable init() {
             if (disposable != null) {
                 disposable.dispose();
@@ -140,11 +136,21 @@ public class SceneTaskExecutorProvider implements TaskExecutorProvider {
             ruleName = rule.getName();
             useBranch = CollectionUtils.isNotEmpty(rule.getBranches());
 
-            SqlRequest request = rule.createSql(!useBranch);
+            //优先使用编译后的触发器,不支持时使用SQL
+            CompiledSceneTrigger compiled = rule.compile(!useBranch);
+            SqlRequest request = compiled == null ? rule.createSql(!useBranch) : null;
             Flux<Map<String, Object>> source;
 
+            if (compiled != null) {
+                if (log.isInfoEnabled()) {
+                    log.info("init scene [{}:{}], compiled trigger:{}", ruleId, ruleName, compiled.getTopic());
+                }
+                source = subscribe(compiled.getTopic(), compiled)
+                    .map(record -> RuleDataHelper.toContextMap(context.newRuleData(record)))
+                    .onErrorContinue(this::onSourceError);
+            }
             //不是通过SQL来处理数据
-            if (request.isEmpty()) {
+            else if (request.isEmpty()) {
                 source = context
                     .getInput()
                     .accept()
@@ -166,15 +172,7 @@ public class SceneTaskExecutorProvider implements TaskExecutorProvider {
                     .build()
                     .start(qlContext)
                     .map(record -> RuleDataHelper.toContextMap(context.newRuleData(record.asMap())))
-                    .onErrorContinue((err, val) -> {
-                        context
-                            .logger()
-                            .error("reactor ql execute failed", err);
-                        @SuppressWarnings("all")
-                        Disposable disp = context
-                            .onError(err, null)
-                            .subscribe();
-                    });
+                    .onErrorContinue(this::onSourceError);
             }
 
             // 分支条件
@@ -213,27 +211,21 @@ public class SceneTaskExecutorProvider implements TaskExecutorProvider {
                     });
             }
 
-            return source
-                .flatMap(this::handleOutput)
+            //按触发源分区执行,同一个设备的数据按顺序处理
+            return rule
+                .createPartitionExecutor("output")
+                .execute(source, ScenePartitionExecutor::getPartitionKey, this::handleOutput)
                 .subscribe();
         }
 
-        private Flux<Map<String, Object>> subscribe(String topic) {
-            return eventBus
-                .subscribe(
-                    Subscription
-                        .builder()
-                        .justLocal()
-                        .topics(topic)
-                        .subscriberId("scene:" + rule.getId())
-                        .build())
-                .handle((topicPayload, synchronousSink) -> {
-                    try {
-                        synchronousSink.next(topicPayload.bodyToJson(true));
-                    } catch (Throwable err) {
-                        log.warn("decode payload error {}", topicPayload.getTopic(), err);
-                    }
-                });
+        private void onSourceError(Throwable err, Object val) {
+            context
+                .logger()
+                .error("reactor ql execute failed", err);
+            @SuppressWarnings("all")
+            Disposable disp = context
+                .onError(err, null)
+                .subscribe();
         }
 
         private Mono<Void> handleOutput(RuleData data) {
@@ -65,6 +65,20 @@ public interface SceneTriggerProvider<E extends SceneTriggerProvider.TriggerConf
      */
     SqlRequest createSql(E config, List<Term> terms, boolean hasFilter);
 
+    /**
+     * 尝试将配置以及条件编译为不依赖SQL的触发器,编译后的触发器与{@link #createSql(TriggerConfig, List, boolean)}的执行结果一致.
+     * 包含不支持的函数或者条件时返回<code>null</code>,将继续使用SQL执行.
+     *
+     * @param config    配置
+     * @param terms     条件
+     * @param hasFilter 是否包含过滤条件
+     * @return 编译后的触发器
+     * @since 2.3
+     */
+    default CompiledSceneTrigger compile(E config, List<Term> terms, boolean hasFilter) {
+        return null;
+    }
+
     /**
      * 订阅触发场景的原始数据流
      *
@@ -99,6 +99,12 @@ public class Trigger implements Serializable {
         return config == null ? EmptySqlRequest.INSTANCE : provider().createSql(config, terms, hasWhere);
     }
 
+    public CompiledSceneTrigger compile(List<Term> terms, boolean hasWhere) {
+        SceneTriggerProvider.TriggerConfig config = triggerConfig();
+
+        return config == null ? null : provider().compile(config, terms, hasWhere);
+    }
+
     public SqlFragments createFilter(List<Term> terms) {
         SceneTriggerProvider.TriggerConfig config = triggerConfig();
 
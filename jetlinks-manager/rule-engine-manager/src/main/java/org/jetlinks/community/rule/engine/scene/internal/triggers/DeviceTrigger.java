@@ -178,7 +178,7 @@ public class DeviceTrigger extends DeviceSelectorSpec implements SceneTriggerPro
         return CollectionUtils.isEmpty(terms) ? EmptySqlFragments.INSTANCE : termBuilder.createTermFragments(this, terms);
     }
 
-    private String createFromTable() {
+    String createFromTable() {
         String topic = null;
 
         switch (operation.getOperator()) {
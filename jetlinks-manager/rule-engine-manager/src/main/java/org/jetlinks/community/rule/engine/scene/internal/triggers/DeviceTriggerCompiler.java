@@ -0,0 +1,509 @@
+package org.jetlinks.community.rule.engine.scene.internal.triggers;
+
+import org.hswebframework.ezorm.core.param.Term;
+import org.hswebframework.ezorm.rdb.executor.SqlRequest;
+import org.hswebframework.ezorm.rdb.operator.builder.fragments.NativeSql;
+import org.hswebframework.ezorm.rdb.operator.builder.fragments.SqlFragments;
+import org.jetlinks.community.reactorql.term.FixedTermTypeSupport;
+import org.jetlinks.community.reactorql.term.TermTypeSupport;
+import org.jetlinks.community.reactorql.term.TermTypes;
+import org.jetlinks.community.reactorql.term.TermUtils;
+import org.jetlinks.community.reactorql.term.TermValue;
+import org.jetlinks.community.rule.engine.scene.CompiledSceneTrigger;
+import org.jetlinks.community.rule.engine.scene.DeviceOperation;
+import org.jetlinks.community.rule.engine.scene.SceneRule;
+import org.jetlinks.reactor.ql.DefaultReactorQLContext;
+import org.jetlinks.reactor.ql.ReactorQL;
+import org.jetlinks.reactor.ql.ReactorQLContext;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.jetlinks.community.rule.engine.scene.SceneRule.DEFAULT_FILTER_TABLE;
+
+/**
+ * 将设备触发器编译为直接处理设备消息的{@link CompiledSceneTrigger},与{@link DeviceTrigger#createSql(List, Set, boolean)}生成的SQL执行结果一致.
+ * <p>
+ * 只支持实时消息(属性上报,事件上报,上下线)以及常用的固定值条件,使用了函数(如:获取上一次属性值,指标)时不进行编译.
+ * 与ReactorQL一致,值为空时所有比较条件(包括不等于,不在...之间,不在...之中)均不满足.
+ * 条件中的值无法确定比较方式时(如:类型不一致),将使用ReactorQL进行判断.
+ *
+ * @author zhouhao
+ * @see DeviceTrigger#createSql(List, Set, boolean)
+ * @since 2.3
+ */
+class DeviceTriggerCompiler {
+
+    static final boolean ENABLED = Boolean.parseBoolean(
+        System.getProperty("rule.scene.trigger.device.compile", "true"));
+
+    private static final Pattern COLUMN_PATTERN = Pattern.compile("^" + DEFAULT_FILTER_TABLE + "\\['([^'.]+)']$");
+
+    private static final Mono<Boolean> TRUE = Mono.just(true);
+    private static final Mono<Boolean> FALSE = Mono.just(false);
+
+    /**
+     * 编译触发器
+     *
+     * @return 不支持编译时返回null
+     */
+    static CompiledSceneTrigger compile(DeviceTrigger trigger,
+                                        List<Term> terms,
+                                        Set<String> headers,
+                                        boolean hasWhere) {
+        if (!ENABLED || trigger.getOperation() == null) {
+            return null;
+        }
+        String table = trigger.createFromTable();
+        if (!table.startsWith("\"")) {
+            return null;
+        }
+        String topic = table.substring(1, table.length() - 1);
+
+        Map<String, Function<Map<String, Object>, Object>> columns = createColumns(trigger, terms, headers);
+        if (columns == null) {
+            return null;
+        }
+        if (!hasWhere || CollectionUtils.isEmpty(terms)) {
+            return new Compiled(topic, columns, null, null);
+        }
+        SqlFragments fragments = trigger.createFragments(terms);
+        if (fragments.isEmpty()) {
+            return new Compiled(topic, columns, null, null);
+        }
+        Condition condition = compileTerms(terms);
+        if (condition == null) {
+            return null;
+        }
+        return new Compiled(topic, columns, condition, createFallbackFilter(fragments));
+    }
+
+    //对应select的列
+    private static Map<String, Function<Map<String, Object>, Object>> createColumns(DeviceTrigger trigger,
+                                                                                   List<Term> terms,
+                                                                                   Set<String> headers) {
+        Map<String, Function<Map<String, Object>, Object>> columns = new LinkedHashMap<>();
+        columns.put("_now", ignore -> System.currentTimeMillis());
+        columns.put("timestamp", data -> data.get("timestamp"));
+        columns.put("deviceId", data -> data.get("deviceId"));
+        columns.put("deviceName", header("deviceName"));
+        columns.put("productId", header("productId"));
+        columns.put("productName", header("productName"));
+        //触发源信息
+        columns.put(SceneRule.SOURCE_TYPE_KEY, ignore -> "device");
+        columns.put(SceneRule.SOURCE_ID_KEY, data -> data.get("deviceId"));
+        columns.put(SceneRule.SOURCE_NAME_KEY, data -> data.get("deviceName"));
+        //消息唯一ID
+        columns.put("_uid", header("_uid"));
+        //维度绑定信息,如部门等
+        columns.put("_bindings", header("bindings"));
+        //链路追踪ID
+        columns.put("traceparent", header("traceparent"));
+        //自定义填充header
+        for (String header : headers) {
+            columns.put(header, header(header));
+        }
+        switch (trigger.getOperation().getOperator()) {
+            case reportProperty:
+                columns.put("properties", data -> data.get("properties"));
+                break;
+            case reportEvent:
+                columns.put("data", data -> data.get("data"));
+                break;
+            case online:
+            case offline:
+                break;
+            default:
+                return null;
+        }
+        for (Term term : TermUtils.expandTermToList(terms)) {
+            String column = term.getColumn();
+            if (!StringUtils.hasText(column) || !column.contains(".")) {
+                continue;
+            }
+            for (TermValue value : TermValue.of(term)) {
+                //指标需要查询
+                if (value != null && value.getSource() == TermValue.Source.metric) {
+                    return null;
+                }
+            }
+            String path = createSelectPath(column);
+            if (path == null) {
+                return null;
+            }
+            String[] nestPath = path.split("[.]");
+            columns.put(DeviceTrigger.createColumnAlias(column, false), data -> getValue(data, path, nestPath));
+        }
+        return columns;
+    }
+
+    //对应DeviceTrigger.createSelectColumn
+    private static String createSelectPath(String column) {
+        String[] arr = column.split("[.]");
+        if ("properties".equals(arr[0]) || "scene".equals(arr[0])) {
+            try {
+                DeviceOperation.PropertyValueType valueType = DeviceOperation.PropertyValueType.valueOf(arr[arr.length - 1]);
+                //只有当前值可以直接从消息中获取
+                if (valueType != DeviceOperation.PropertyValueType.current) {
+                    return null;
+                }
+                return "properties." + arr[1];
+            } catch (IllegalArgumentException ignore) {
+
+            }
+        }
+        return String.join(".", Arrays.copyOfRange(arr, 1, arr.length));
+    }
+
+    private static Function<Map<String, Object>, Object> header(String key) {
+        return data -> {
+            Object headers = data.get("headers");
+            return headers instanceof Map ? ((Map<?, ?>) headers).get(key) : null;
+        };
+    }
+
+    //this['a.b']
+    private static Object getValue(Map<String, Object> data, String key, String[] nestPath) {
+        Object value = data.get(key);
+        if (value != null || nestPath.length == 1) {
+            return value;
+        }
+        Object current = data;
+        for (String _key : nestPath) {
+            if (!(current instanceof Map)) {
+                return null;
+            }
+            current = ((Map<?, ?>) current).get(_key);
+        }
+        return current;
+    }
+
+    private static Function<Map<String, Object>, Mono<Boolean>> createFallbackFilter(SqlFragments fragments) {
+        SqlRequest request = fragments.toRequest();
+        ReactorQL ql = ReactorQL
+            .builder()
+            .sql("select 1 from " + DEFAULT_FILTER_TABLE + " where " + request.getSql())
+            .build();
+        List<Object> args = Arrays.asList(request.getParameters());
+        return row -> {
+            ReactorQLContext context = new DefaultReactorQLContext(ignore -> Flux.just(row), args);
+            return ql.start(context).hasElements();
+        };
+    }
+
+    /**
+     * 编译条件,and优先于or,与SQL一致.
+     *
+     * @return 不支持编译时返回null
+     */
+    private static Condition compileTerms(List<Term> terms) {
+        List<List<Condition>> or = new ArrayList<>();
+        List<Condition> and = new ArrayList<>();
+        for (Term term : terms) {
+            Condition condition;
+            if (StringUtils.hasText(term.getColumn())) {
+                if (!CollectionUtils.isEmpty(term.getTerms())) {
+                    return null;
+                }
+                condition = compileTerm(term);
+            } else if (!CollectionUtils.isEmpty(term.getTerms())) {
+                condition = compileTerms(term.getTerms());
+            } else {
+                continue;
+            }
+            if (condition == null) {
+                return null;
+            }
+            if (!and.isEmpty() && term.getType() == Term.Type.or) {
+                or.add(and);
+                and = new ArrayList<>();
+            }
+            and.add(condition);
+        }
+        if (and.isEmpty()) {
+            return null;
+        }
+        or.add(and);
+        return row -> {
+            Boolean result = false;
+            for (List<Condition> group : or) {
+                Boolean groupResult = true;
+                for (Condition condition : group) {
+                    Boolean value = condition.test(row);
+                    if (value == null) {
+                        groupResult = null;
+                    } else if (!value) {
+                        groupResult = false;
+                        break;
+                    }
+                }
+                if (groupResult == null) {
+                    result = null;
+                } else if (groupResult) {
+                    return true;
+                }
+            }
+            return result;
+        };
+    }
+
+    private static Condition compileTerm(Term term) {
+        String termType = StringUtils.hasText(term.getTermType()) ? term.getTermType() : "is";
+        TermTypeSupport support = TermTypes.lookupSupport(termType).orElse(null);
+        if (!(support instanceof FixedTermTypeSupport)) {
+            return null;
+        }
+        //与DeviceTrigger.TermBuilder一致
+        Term copy = support.refactorTerm(DEFAULT_FILTER_TABLE, term.clone(), DeviceTrigger::refactorTermValue);
+        Matcher matcher = COLUMN_PATTERN.matcher(copy.getColumn());
+        if (!matcher.matches()) {
+            return null;
+        }
+        String key = matcher.group(1);
+        Object value = copy.getValue();
+        if (value instanceof NativeSql) {
+            return null;
+        }
+        switch (((FixedTermTypeSupport) support)) {
+            case notnull:
+                return row -> row.get(key) != null;
+            case isnull:
+                return row -> row.get(key) == null;
+            case eq:
+                return createEquals(key, value, false);
+            case neq:
+                return createEquals(key, value, true);
+            case gt:
+                return createCompare(key, value, c -> c > 0);
+            case gte:
+                return createCompare(key, value, c -> c >= 0);
+            case lt:
+                return createCompare(key, value, c -> c < 0);
+            case lte:
+                return createCompare(key, value, c -> c <= 0);
+            case btw:
+                return createBetween(key, value, false);
+            case nbtw:
+                return createBetween(key, value, true);
+            case in:
+                return createIn(key, value, false);
+            case nin:
+                return createIn(key, value, true);
+            default:
+                return null;
+        }
+    }
+
+    private static Object singleValue(Object value) {
+        if (value instanceof Collection) {
+            Collection<?> collection = ((Collection<?>) value);
+            return collection.size() == 1 ? collection.iterator().next() : null;
+        }
+        return value;
+    }
+
+    private static Condition createEquals(String key, Object value, boolean not) {
+        Expect expect = Expect.of(singleValue(value));
+        if (expect == null) {
+            return null;
+        }
+        return row -> {
+            Object actual = row.get(key);
+            //值为空时ReactorQL返回false
+            if (actual == null) {
+                return false;
+            }
+            Boolean result = expect.equalsTo(actual);
+            return result == null ? null : result != not;
+        };
+    }
+
+    private static Condition createCompare(String key, Object value, CompareResult predicate) {
+        Expect expect = Expect.of(singleValue(value));
+        if (expect == null || expect.number == null) {
+            return null;
+        }
+        return row -> {
+            Object actual = row.get(key);
+            if (actual == null) {
+                return false;
+            }
+            if (!(actual instanceof Number)) {
+                return null;
+            }
+            return predicate.test(Double.compare(((Number) actual).doubleValue(), expect.number));
+        };
+    }
+
+    private static Condition createBetween(String key, Object value, boolean not) {
+        if (!(value instanceof List) || ((List<?>) value).size() != 2) {
+            return null;
+        }
+        Expect min = Expect.of(((List<?>) value).get(0));
+        Expect max = Expect.of(((List<?>) value).get(1));
+        if (min == null || max == null || min.number == null || max.number == null) {
+            return null;
+        }
+        return row -> {
+            Object actual = row.get(key);
+            if (actual == null) {
+                return false;
+            }
+            if (!(actual instanceof Number)) {
+                return null;
+            }
+            double val = ((Number) actual).doubleValue();
+            return (val >= min.number && val <= max.number) != not;
+        };
+    }
+
+    private static Condition createIn(String key, Object value, boolean not) {
+        if (!(value instanceof Collection)) {
+            return null;
+        }
+        List<Expect> expects = new ArrayList<>();
+        for (Object val : ((Collection<?>) value)) {
+            Expect expect = Expect.of(val);
+            if (expect == null) {
+                return null;
+            }
+            expects.add(expect);
+        }
+        if (expects.isEmpty()) {
+            return null;
+        }
+        return row -> {
+            Object actual = row.get(key);
+            if (actual == null) {
+                return false;
+            }
+            for (Expect expect : expects) {
+                Boolean result = expect.equalsTo(actual);
+                if (result == null) {
+                    return null;
+                }
+                if (result) {
+                    return !not;
+                }
+            }
+            return not;
+        };
+    }
+
+    /**
+     * 条件,返回null表示无法判断.
+     */
+    private interface Condition {
+        Boolean test(Map<String, Object> row);
+    }
+
+    private interface CompareResult {
+        boolean test(int result);
+    }
+
+    /**
+     * 条件中的期望值
+     */
+    private static class Expect {
+        private final Object value;
+        private final Double number;
+
+        private Expect(Object value, Double number) {
+            this.value = value;
+            this.number = number;
+        }
+
+        static Expect of(Object value) {
+            if (value instanceof Number) {
+                return new Expect(value, ((Number) value).doubleValue());
+            }
+            if (value instanceof String) {
+                Double number = null;
+                try {
+                    number = new BigDecimal(((String) value).trim()).doubleValue();
+                } catch (NumberFormatException ignore) {
+                }
+                return new Expect(value, number);
+            }
+            if (value instanceof Boolean) {
+                return new Expect(value, null);
+            }
+            return null;
+        }
+
+        Boolean equalsTo(Object actual) {
+            if (actual == null) {
+                return false;
+            }
+            if (actual instanceof Number) {
+                return number == null ? null : ((Number) actual).doubleValue() == number;
+            }
+            if (actual instanceof String && value instanceof String) {
+                return actual.equals(value);
+            }
+            if (actual instanceof Boolean && value instanceof Boolean) {
+                return actual.equals(value);
+            }
+            return null;
+        }
+    }
+
+    private static class Compiled implements CompiledSceneTrigger {
+        private final String topic;
+        private final Map<String, Function<Map<String, Object>, Object>> columns;
+        private final Condition condition;
+        private final Function<Map<String, Object>, Mono<Boolean>> fallback;
+
+        private Compiled(String topic,
+                         Map<String, Function<Map<String, Object>, Object>> columns,
+                         Condition condition,
+                         Function<Map<String, Object>, Mono<Boolean>> fallback) {
+            this.topic = topic;
+            this.columns = columns;
+            this.condition = condition;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public String getTopic() {
+            return topic;
+        }
+
+        @Override
+        public Map<String, Object> project(Map<String, Object> data) {
+            Map<String, Object> row = new HashMap<>((int) (columns.size() / 0.75F) + 1);
+            for (Map.Entry<String, Function<Map<String, Object>, Object>> entry : columns.entrySet()) {
+                Object value = entry.getValue().apply(data);
+                if (value != null) {
+                    row.put(entry.getKey(), value);
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public Mono<Boolean> test(Map<String, Object> row) {
+            if (condition == null) {
+                return TRUE;
+            }
+            Boolean result = condition.test(row);
+            if (result == null) {
+                //无法判断时使用ReactorQL
+                return fallback.apply(row);
+            }
+            return result ? TRUE : FALSE;
+        }
+
+        @Override
+        public String toString() {
+            return topic;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.hswebframework.ezorm.rdb.operator.builder.fragments.SqlFragments;
 import org.hswebframework.web.i18n.LocaleUtils;
 import org.jetlinks.community.command.CommandSupportManagerProvider;
 import org.jetlinks.community.rule.engine.scene.AbstractSceneTriggerProvider;
+import org.jetlinks.community.rule.engine.scene.CompiledSceneTrigger;
 import org.jetlinks.community.rule.engine.scene.Variable;
 import org.jetlinks.community.rule.engine.scene.term.TermColumn;
 import org.jetlinks.core.things.ThingsRegistry;
@@ -74,6 +75,11 @@ public class DeviceTriggerProvider extends AbstractSceneTriggerProvider<DeviceTr
         return config.createSql(terms, customHeaders, hasFilter);
     }
 
+    @Override
+    public CompiledSceneTrigger compile(DeviceTrigger config, List<Term> terms, boolean hasFilter) {
+        return DeviceTriggerCompiler.compile(config, terms, customHeaders, hasFilter);
+    }
+
     @Override
     public SqlFragments createFilter(DeviceTrigger config, List<Term> terms) {
         return config.createFragments(terms);
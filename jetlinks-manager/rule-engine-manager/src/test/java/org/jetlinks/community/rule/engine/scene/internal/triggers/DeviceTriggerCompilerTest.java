@@ -0,0 +1,129 @@
+package org.jetlinks.community.rule.engine.scene.internal.triggers;
+
+import org.hswebframework.ezorm.core.param.Term;
+import org.hswebframework.ezorm.rdb.executor.SqlRequest;
+import org.jetlinks.community.reactorql.term.TermValue;
+import org.jetlinks.community.rule.engine.scene.CompiledSceneTrigger;
+import org.jetlinks.community.rule.engine.scene.DeviceOperation;
+import org.jetlinks.reactor.ql.DefaultReactorQLContext;
+import org.jetlinks.reactor.ql.ReactorQL;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceTriggerCompilerTest {
+
+    @Test
+    void testCompare() {
+        for (Object actual : Arrays.asList(null, 5, 10, 15, 10.5D, "10", "abc", true)) {
+            assertParity(term("eq", 10), actual);
+            assertParity(term("neq", 10), actual);
+            assertParity(term("gt", 10), actual);
+            assertParity(term("gte", 10), actual);
+            assertParity(term("lt", 10), actual);
+            assertParity(term("lte", 10), actual);
+            assertParity(term("eq", "10"), actual);
+            assertParity(term("eq", "abc"), actual);
+            assertParity(term("neq", "abc"), actual);
+        }
+    }
+
+    @Test
+    void testBetween() {
+        for (Object actual : Arrays.asList(null, 5, 10, 15, 20, 25, "15")) {
+            assertParity(term("btw", Arrays.asList(10, 20)), actual);
+            assertParity(term("nbtw", Arrays.asList(10, 20)), actual);
+        }
+    }
+
+    @Test
+    void testIn() {
+        for (Object actual : Arrays.asList(null, 1, 2, 3, "1", "a")) {
+            assertParity(term("in", Arrays.asList(1, 2)), actual);
+            assertParity(term("nin", Arrays.asList(1, 2)), actual);
+            assertParity(term("in", Arrays.asList("a", "b")), actual);
+        }
+    }
+
+    @Test
+    void testNull() {
+        for (Object actual : Arrays.asList(null, 10)) {
+            assertParity(term("isnull", 1), actual);
+            assertParity(term("notnull", 1), actual);
+        }
+    }
+
+    @Test
+    void testAndOr() {
+        Term gt = term("gt", 10);
+        Term lt = term("lt", 20);
+        Term eq = term("eq", 1);
+        eq.setType(Term.Type.or);
+        List<Term> terms = Arrays.asList(gt, lt, eq);
+        for (Object actual : Arrays.asList(null, 1, 5, 15, 25)) {
+            assertParity(terms, actual);
+        }
+    }
+
+    private static Term term(String termType, Object value) {
+        Term term = new Term();
+        term.setColumn("properties.temp.current");
+        term.setTermType(termType);
+        term.setValue(TermValue.manual(value));
+        return term;
+    }
+
+    private static DeviceTrigger createTrigger() {
+        DeviceTrigger trigger = new DeviceTrigger();
+        trigger.setProductId("test");
+        trigger.setOperation(DeviceOperation.reportProperty());
+        return trigger;
+    }
+
+    private static Map<String, Object> createMessage(Object temp) {
+        Map<String, Object> properties = new HashMap<>();
+        if (temp != null) {
+            properties.put("temp", temp);
+        }
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("productId", "test");
+        headers.put("deviceName", "test");
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("deviceId", "device-1");
+        message.put("timestamp", System.currentTimeMillis());
+        message.put("headers", headers);
+        message.put("properties", properties);
+        return message;
+    }
+
+    private static void assertParity(Term term, Object actual) {
+        assertParity(Collections.singletonList(term), actual);
+    }
+
+    private static void assertParity(List<Term> terms, Object actual) {
+        DeviceTrigger trigger = createTrigger();
+        CompiledSceneTrigger compiled = DeviceTriggerCompiler.compile(trigger, terms, Collections.emptySet(), true);
+        assertNotNull(compiled);
+
+        Map<String, Object> message = createMessage(actual);
+
+        SqlRequest request = trigger.createSql(terms);
+        Boolean expect = ReactorQL
+            .builder()
+            .sql(request.getSql())
+            .build()
+            .start(new DefaultReactorQLContext(ignore -> Flux.just(message), Arrays.asList(request.getParameters())))
+            .hasElements()
+            .block();
+
+        Boolean result = compiled
+            .test(compiled.project(message))
+            .block();
+
+        assertEquals(expect, result, () -> request.toNativeSql() + " with temp=" + actual);
+    }
+}